@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor.benchmark;
+
+import com.heliosdecompiler.hexeditor.ByteHelper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting a full row of bytes, its ASCII column and its offset label, and
+ * parsing a byte back. None of these should allocate per byte.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ByteHelperBenchmark {
+    private final byte[] row = new byte[16];
+    private long offset;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < row.length; i++) {
+            row[i] = (byte) (i * 17);
+        }
+    }
+
+    @Benchmark
+    public void toStringRow(Blackhole blackhole) {
+        for (byte b : row) {
+            blackhole.consume(ByteHelper.toString(b));
+        }
+    }
+
+    @Benchmark
+    public void toPrintableRow(Blackhole blackhole) {
+        for (byte b : row) {
+            blackhole.consume(ByteHelper.toPrintable(b));
+        }
+    }
+
+    @Benchmark
+    public String toOffsetString() {
+        offset += 16;
+        return ByteHelper.toOffsetString(offset);
+    }
+
+    @Benchmark
+    public byte fromString() {
+        return ByteHelper.fromString("7F");
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor.benchmark;
+
+import com.heliosdecompiler.hexeditor.HexArea;
+import com.heliosdecompiler.hexeditor.ObservableByteArrayImpl;
+import com.sun.javafx.application.PlatformImpl;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Changes to the data of a visible {@link HexArea}, measured through the
+ * area's change listener and the grid refresh it triggers. JavaFX runs
+ * headless on Monocle, and every change is made on the FX thread, so the
+ * score includes one round trip to it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {
+        "-Dglass.platform=Monocle",
+        "-Dmonocle.platform=Headless",
+        "-Dprism.order=sw",
+        "-Xmx2g"
+})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HexAreaListenerBenchmark {
+    @Param({"1024", "1048576", "67108864"})
+    public int size;
+
+    private ObservableByteArrayImpl data;
+    private byte[] content;
+    private int[] indices;
+    private int next;
+    private Stage stage;
+
+    @Setup
+    public void setup() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        try {
+            PlatformImpl.startup(started::countDown);
+        } catch (IllegalStateException alreadyStarted) {
+            started.countDown();
+        }
+        started.await();
+
+        content = new byte[size];
+        new Random(0).nextBytes(content);
+        Random random = new Random(1);
+        indices = new int[1024];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = random.nextInt(size);
+        }
+
+        onFxThread(() -> {
+            data = new ObservableByteArrayImpl(content);
+            HexArea area = new HexArea();
+            area.setData(data);
+            stage = new Stage();
+            stage.setScene(new Scene(area, 800, 600));
+            stage.show();
+        });
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        onFxThread(() -> stage.hide());
+    }
+
+    /**
+     * Overwrites one byte, which should refresh a single row.
+     */
+    @Benchmark
+    public void setByte() throws Exception {
+        next = (next + 1) & (indices.length - 1);
+        int index = indices[next];
+        onFxThread(() -> data.set(index, (byte) index));
+    }
+
+    /**
+     * Replaces the whole content, which refreshes every materialized row.
+     */
+    @Benchmark
+    public void setAll() throws Exception {
+        onFxThread(() -> data.setAll(content));
+    }
+
+    /**
+     * Appends and removes a byte, which resizes the grid as well.
+     */
+    @Benchmark
+    public void appendAndTruncate() throws Exception {
+        onFxThread(() -> {
+            data.addAll((byte) 0);
+            data.resize(size);
+        });
+    }
+
+    private static void onFxThread(Runnable runnable) throws InterruptedException, ExecutionException {
+        FutureTask<Void> task = new FutureTask<>(runnable, null);
+        Platform.runLater(task);
+        task.get();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor.benchmark;
+
+import com.heliosdecompiler.hexeditor.HexGrid;
+import com.heliosdecompiler.hexeditor.ObservableByteArrayImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resizing the virtual row list of a {@link HexGrid}, which happens on every
+ * change to the size of the data.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HexGridBenchmark {
+    @Param({"64", "65536", "67108864"})
+    public int rows;
+
+    private HexGrid grid;
+    private boolean grown;
+
+    @Setup
+    public void setup() {
+        grid = new HexGrid(new ObservableByteArrayImpl(new byte[16 * 64]));
+        grid.resize(rows);
+    }
+
+    /**
+     * Alternates between growing and shrinking by one row, as typing and
+     * deleting at the end of the data does.
+     */
+    @Benchmark
+    public void resizeByOne() {
+        grown = !grown;
+        grid.resize(grown ? rows + 1 : rows);
+    }
+
+    /**
+     * Alternates between {@link #rows} and half of it.
+     */
+    @Benchmark
+    public void resizeByHalf() {
+        grown = !grown;
+        grid.resize(grown ? rows : rows / 2);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor.benchmark;
+
+import com.heliosdecompiler.hexeditor.ObservableByteArrayImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The storage operations of {@link ObservableByteArrayImpl}, from 1 KiB to
+ * 1 GiB. The largest size needs a heap of a few gigabytes, which the forks
+ * are given.
+ */
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ObservableByteArrayBenchmark {
+    /**
+     * Bytes added per call while growing the array
+     */
+    private static final int GROWTH_CHUNK = 64 * 1024;
+
+    /**
+     * Bytes copied out per call to copyTo
+     */
+    private static final int COPY_LENGTH = 4096;
+
+    @Param({"1024", "1048576", "67108864", "1073741824"})
+    public int size;
+
+    private ObservableByteArrayImpl array;
+    private byte[] source;
+    private byte[] chunk;
+    private byte[] destination;
+    private int[] indices;
+    private int next;
+
+    @Setup
+    public void setup() {
+        source = new byte[size];
+        new Random(0).nextBytes(source);
+        array = new ObservableByteArrayImpl(source);
+        chunk = new byte[Math.min(GROWTH_CHUNK, size)];
+        destination = new byte[size];
+
+        Random random = new Random(1);
+        indices = new int[1024];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = random.nextInt(size - Math.min(COPY_LENGTH, size) + 1);
+        }
+    }
+
+    private int nextIndex() {
+        next = (next + 1) & (indices.length - 1);
+        return indices[next];
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void set() {
+        int index = nextIndex();
+        array.set(index, (byte) index);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void setAll() {
+        array.setAll(source);
+    }
+
+    /**
+     * Builds an array of {@link #size} bytes from empty, which is dominated by
+     * how the capacity grows.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public ObservableByteArrayImpl addAllGrowth() {
+        ObservableByteArrayImpl grown = new ObservableByteArrayImpl();
+        for (int added = 0; added < size; added += chunk.length) {
+            grown.addAll(chunk, 0, Math.min(chunk.length, size - added));
+        }
+        return grown;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public byte[] copyTo() {
+        int length = Math.min(COPY_LENGTH, size);
+        array.copyTo(nextIndex(), destination, 0, length);
+        return destination;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public byte[] toArray() {
+        return array.toArray(destination);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * The {@link FlightRecorderEvents.Recorder} backed by {@code jdk.jfr}. It
+ * lives in its own source set, which the {@code jfr} profile compiles, so
+ * that building the editor doesn't need a JDK with Flight Recorder. An
+ * event is only allocated while its type is enabled in a recording.
+ */
+final class JfrRecorder implements FlightRecorderEvents.Recorder {
+    private final EventType changeDispatch = EventType.getEventType(ChangeDispatchEvent.class);
+    private final EventType gridResize = EventType.getEventType(GridResizeEvent.class);
+    private final EventType loadBatch = EventType.getEventType(LoadBatchEvent.class);
+
+    @Name("com.heliosdecompiler.hexeditor.ChangeDispatch")
+    @Label("Change Dispatch")
+    @Description("Listeners notified of a change to an ObservableByteArray")
+    @Category({"Helios", "Hex Editor"})
+    @Threshold("10 ms")
+    static class ChangeDispatchEvent extends Event {
+        @Label("Array Class")
+        String arrayClass;
+
+        @Label("From")
+        long from;
+
+        @Label("To")
+        long to;
+
+        @Label("Size Changed")
+        boolean sizeChanged;
+    }
+
+    @Name("com.heliosdecompiler.hexeditor.GridResize")
+    @Label("Grid Resize")
+    @Description("The row count of a HexGrid changed")
+    @Category({"Helios", "Hex Editor"})
+    @Threshold("10 ms")
+    static class GridResizeEvent extends Event {
+        @Label("Old Rows")
+        int oldRows;
+
+        @Label("New Rows")
+        int newRows;
+    }
+
+    @Name("com.heliosdecompiler.hexeditor.LoadBatch")
+    @Label("Load Batch")
+    @Description("A batch of a file loaded by HexArea.openAsync was shown")
+    @Category({"Helios", "Hex Editor"})
+    @Threshold("10 ms")
+    static class LoadBatchEvent extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Offset")
+        long offset;
+
+        @Label("Length")
+        int length;
+    }
+
+    @Override
+    public Object beginChangeDispatch() {
+        if (!changeDispatch.isEnabled()) {
+            return null;
+        }
+        ChangeDispatchEvent event = new ChangeDispatchEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endChangeDispatch(Object started, ObservableByteArray array, boolean sizeChanged, long from, long to) {
+        ChangeDispatchEvent event = (ChangeDispatchEvent) started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.arrayClass = array.getClass().getName();
+            event.sizeChanged = sizeChanged;
+            event.from = from;
+            event.to = to;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginGridResize() {
+        if (!gridResize.isEnabled()) {
+            return null;
+        }
+        GridResizeEvent event = new GridResizeEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endGridResize(Object started, int oldRows, int newRows) {
+        GridResizeEvent event = (GridResizeEvent) started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.oldRows = oldRows;
+            event.newRows = newRows;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginLoadBatch() {
+        if (!loadBatch.isEnabled()) {
+            return null;
+        }
+        LoadBatchEvent event = new LoadBatchEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endLoadBatch(Object started, Object path, long offset, int length) {
+        LoadBatchEvent event = (LoadBatchEvent) started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = String.valueOf(path);
+            event.offset = offset;
+            event.length = length;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+import javafx.collections.ObservableArrayBase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Base class for {@link ObservableByteArray} implementations. It dispatches
+ * change notifications to both the standard {@code ArrayChangeListener}s and
+ * the 64-bit {@link LongArrayChangeListener}s, and implements update
+ * transactions.
+ * <p>
+ * Implementations call {@link #willReplace(long, long, long)} before every
+ * mutation and {@link #fireRangeChange(boolean, long, long)} after it.
+ */
+public abstract class AbstractObservableByteArray extends ObservableArrayBase<ObservableByteArray> implements ObservableByteArray {
+
+    private static final LongArrayChangeListener[] NO_LISTENERS = new LongArrayChangeListener[0];
+    private static final EditListener[] NO_EDIT_LISTENERS = new EditListener[0];
+    private static final ByteChangeListener[] NO_BYTE_CHANGE_LISTENERS = new ByteChangeListener[0];
+
+    /**
+     * The largest change which is captured for an edit by copying it
+     */
+    private static final int MAX_CAPTURE_SIZE = Integer.MAX_VALUE - 8;
+    /**
+     * Changes up to this size are always copied. Larger ones are captured
+     * through snapshots when {@link #snapshotsShareStorage()}.
+     */
+    private static final int COPY_CAPTURE_SIZE = 64 * 1024;
+
+    private LongArrayChangeListener[] longListeners = NO_LISTENERS;
+    private EditListener[] editListeners = NO_EDIT_LISTENERS;
+    private ByteChangeListener[] byteChangeListeners = NO_BYTE_CHANGE_LISTENERS;
+
+    private int updateDepth;
+    private boolean pending;
+    private boolean pendingSizeChanged;
+    private long pendingFrom;
+    private long pendingTo;
+
+    /**
+     * Changes made by the current transaction, or null if they aren't recorded
+     */
+    private List<DeltaState> journal;
+    /**
+     * Whether the current transaction made a change too large to journal
+     */
+    private boolean journalDropped;
+    /**
+     * Changes for the byte change listeners, delivered when the transaction commits
+     */
+    private List<ByteChange> pendingByteChanges;
+    private boolean replacing;
+    private long replaceFrom;
+    private long replaceRemoved;
+    private long replaceAdded;
+    /**
+     * The bytes about to be replaced, or null if the change isn't captured
+     */
+    private ObservableByteArray replaceBefore;
+
+    @Override
+    public void addLongListener(LongArrayChangeListener listener) {
+        if (listener == null) throw new NullPointerException();
+        LongArrayChangeListener[] listeners = Arrays.copyOf(longListeners, longListeners.length + 1);
+        listeners[longListeners.length] = listener;
+        longListeners = listeners;
+    }
+
+    @Override
+    public void removeLongListener(LongArrayChangeListener listener) {
+        for (int i = 0; i < longListeners.length; i++) {
+            if (longListeners[i].equals(listener)) {
+                LongArrayChangeListener[] listeners = new LongArrayChangeListener[longListeners.length - 1];
+                System.arraycopy(longListeners, 0, listeners, 0, i);
+                System.arraycopy(longListeners, i + 1, listeners, i, listeners.length - i);
+                longListeners = listeners;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void addEditListener(EditListener listener) {
+        if (listener == null) throw new NullPointerException();
+        EditListener[] listeners = Arrays.copyOf(editListeners, editListeners.length + 1);
+        listeners[editListeners.length] = listener;
+        editListeners = listeners;
+    }
+
+    @Override
+    public void removeEditListener(EditListener listener) {
+        for (int i = 0; i < editListeners.length; i++) {
+            if (editListeners[i].equals(listener)) {
+                EditListener[] listeners = new EditListener[editListeners.length - 1];
+                System.arraycopy(editListeners, 0, listeners, 0, i);
+                System.arraycopy(editListeners, i + 1, listeners, i, listeners.length - i);
+                editListeners = listeners;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void addByteChangeListener(ByteChangeListener listener) {
+        if (listener == null) throw new NullPointerException();
+        ByteChangeListener[] listeners = Arrays.copyOf(byteChangeListeners, byteChangeListeners.length + 1);
+        listeners[byteChangeListeners.length] = listener;
+        byteChangeListeners = listeners;
+    }
+
+    @Override
+    public void removeByteChangeListener(ByteChangeListener listener) {
+        for (int i = 0; i < byteChangeListeners.length; i++) {
+            if (byteChangeListeners[i].equals(listener)) {
+                ByteChangeListener[] listeners = new ByteChangeListener[byteChangeListeners.length - 1];
+                System.arraycopy(byteChangeListeners, 0, listeners, 0, i);
+                System.arraycopy(byteChangeListeners, i + 1, listeners, i, listeners.length - i);
+                byteChangeListeners = listeners;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return whether any {@link ByteChangeListener} is registered, so that
+     * changes are captured
+     */
+    protected boolean hasByteChangeListeners() {
+        return byteChangeListeners.length > 0;
+    }
+
+    /**
+     * @return whether any {@link ByteChangeListener} reads the bytes of the
+     * changes, rather than just their ranges
+     */
+    protected boolean byteChangeListenersNeedBytes() {
+        for (ByteChangeListener listener : byteChangeListeners) {
+            if (listener.needsBytes()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void beginUpdate() {
+        if (updateDepth++ == 0) {
+            pending = false;
+            pendingSizeChanged = false;
+            pendingFrom = Long.MAX_VALUE;
+            pendingTo = Long.MIN_VALUE;
+            // Only pay for capturing the replaced bytes if someone wants the edit
+            journal = editListeners.length > 0 ? new ArrayList<>() : null;
+            journalDropped = false;
+        }
+    }
+
+    @Override
+    public void endUpdate() {
+        if (updateDepth == 0) {
+            throw new IllegalStateException("endUpdate() without matching beginUpdate()");
+        }
+        if (--updateDepth == 0) {
+            List<DeltaState> changes = journal;
+            List<ByteChange> byteChanges = pendingByteChanges;
+            boolean dropped = journalDropped;
+            journal = null;
+            journalDropped = false;
+            pendingByteChanges = null;
+            if (pending) {
+                pending = false;
+                dispatchChange(pendingSizeChanged, pendingFrom, pendingTo);
+            }
+            if (byteChanges != null) {
+                for (ByteChange change : byteChanges) {
+                    dispatchByteChange(change);
+                }
+            }
+            if (dropped) {
+                dispatchHistoryInvalidated();
+            } else if (changes != null && !changes.isEmpty()) {
+                dispatchEdit(changes.size() == 1 ? changes.get(0) : new BatchDeltaState(changes));
+            }
+        }
+    }
+
+    @Override
+    public boolean isUpdating() {
+        return updateDepth > 0;
+    }
+
+    /**
+     * Whether {@link #snapshot()} returns a {@link ByteArraySnapshot} which
+     * shares the storage of this array instead of copying it. Large changes
+     * are then captured through snapshots rather than copied.
+     *
+     * @return false unless overridden
+     */
+    protected boolean snapshotsShareStorage() {
+        return false;
+    }
+
+    /**
+     * Must be called before {@code removed} bytes at {@code from} are replaced
+     * by {@code added} bytes, while the old content is still readable. Inside
+     * an update transaction with edit listeners, the replaced bytes are
+     * captured so the transaction can be undone. They are also captured for
+     * the {@link ByteChangeListener}s which need them, sharing the same
+     * capture. A change too large to capture is given to them without its
+     * bytes, and its transaction invalidates the history of the edit
+     * listeners instead of producing an edit.
+     *
+     * @param from    the first byte to be replaced
+     * @param removed the number of bytes which will be replaced
+     * @param added   the number of bytes which will replace them
+     */
+    protected final void willReplace(long from, long removed, long added) {
+        if (journal == null && byteChangeListeners.length == 0) {
+            return;
+        }
+        replaceFrom = from;
+        replaceRemoved = removed;
+        replaceAdded = added;
+        replacing = true;
+        boolean capture = journal != null || byteChangeListenersNeedBytes();
+        if (!snapshotsShareStorage() && (removed > MAX_CAPTURE_SIZE || added > MAX_CAPTURE_SIZE)) {
+            // Too large to be undone, so the transaction can't produce an edit
+            if (journal != null) {
+                journal = null;
+                journalDropped = true;
+            }
+            capture = false;
+        }
+        if (capture) {
+            replaceBefore = capture(from, removed);
+        }
+    }
+
+    /**
+     * @return a read-only view of the current content of a range, copied if
+     * it is small or this array can't share its storage
+     */
+    private ObservableByteArray capture(long from, long length) {
+        if (length > COPY_CAPTURE_SIZE && snapshotsShareStorage()) {
+            return ((ByteArraySnapshot) snapshot()).slice(from, length);
+        }
+        byte[] bytes = new byte[(int) length];
+        copyTo(from, bytes, 0, (int) length);
+        return ByteArraySnapshot.wrap(bytes);
+    }
+
+    /**
+     * Notifies all listeners of a change. {@code ArrayChangeListener}s see
+     * the range clamped to the int addressable part of the array. Inside an
+     * update transaction the change is merged into a single notification
+     * which is sent when the transaction commits.
+     *
+     * @param sizeChanged whether the size of the array changed
+     * @param from        the first changed offset
+     * @param to          the end of the changed range, exclusive
+     */
+    protected void fireRangeChange(boolean sizeChanged, long from, long to) {
+        ByteChange change = null;
+        if (replacing) {
+            replacing = false;
+            if (replaceBefore != null) {
+                change = new ByteChange(replaceFrom, replaceBefore, capture(replaceFrom, replaceAdded));
+                if (journal != null) {
+                    journal.add(change.toDeltaState());
+                }
+                replaceBefore = null;
+            } else {
+                change = new ByteChange(replaceFrom, replaceRemoved, replaceAdded);
+            }
+        }
+
+        if (updateDepth > 0) {
+            pending = true;
+            pendingSizeChanged |= sizeChanged;
+            pendingFrom = Math.min(pendingFrom, from);
+            pendingTo = Math.max(pendingTo, to);
+            if (change != null && byteChangeListeners.length > 0) {
+                if (pendingByteChanges == null) {
+                    pendingByteChanges = new ArrayList<>();
+                }
+                pendingByteChanges.add(change);
+            }
+            return;
+        }
+        dispatchChange(sizeChanged, from, to);
+        if (change != null) {
+            dispatchByteChange(change);
+        }
+    }
+
+    /**
+     * Notifies the change listeners right away, bypassing transactions.
+     *
+     * @param sizeChanged whether the size of the array changed
+     * @param from        the first changed offset
+     * @param to          the end of the changed range, exclusive
+     */
+    protected void dispatchChange(boolean sizeChanged, long from, long to) {
+        Object event = FlightRecorderEvents.beginChangeDispatch();
+        long start = System.nanoTime();
+        fireChange(sizeChanged, (int) Math.min(from, Integer.MAX_VALUE), (int) Math.min(to, Integer.MAX_VALUE));
+        for (LongArrayChangeListener listener : longListeners) {
+            listener.onChanged(this, sizeChanged, from, to);
+        }
+        EditorMetrics.getInstance().changeDispatched(System.nanoTime() - start);
+        FlightRecorderEvents.endChangeDispatch(event, this, sizeChanged, from, to);
+    }
+
+    /**
+     * Gives {@code change} to the byte change listeners right away.
+     *
+     * @param change a change to this array
+     */
+    protected void dispatchByteChange(ByteChange change) {
+        for (ByteChangeListener listener : byteChangeListeners) {
+            listener.onChanged(this, change);
+        }
+    }
+
+    /**
+     * Gives {@code edit} to the edit listeners right away.
+     *
+     * @param edit a committed transaction
+     */
+    protected void dispatchEdit(DeltaState edit) {
+        for (EditListener listener : editListeners) {
+            listener.onEdit(this, edit);
+        }
+    }
+
+    /**
+     * Tells the edit listeners right away that a transaction couldn't be
+     * captured.
+     */
+    protected void dispatchHistoryInvalidated() {
+        for (EditListener listener : editListeners) {
+            listener.onHistoryInvalidated(this);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+import java.util.List;
+
+/**
+ * A {@link DeltaState} made of several changes which are reverted and
+ * reapplied together, such as the changes made in one update transaction.
+ */
+public class BatchDeltaState extends DeltaState {
+    private static final byte[] EMPTY = new byte[0];
+
+    private final DeltaState[] changes;
+
+    /**
+     * @param changes the changes in the order they were made
+     */
+    public BatchDeltaState(List<DeltaState> changes) {
+        super(changes.stream().mapToLong(DeltaState::getFrom).min().orElse(0),
+                changes.stream().mapToLong(DeltaState::getTo).max().orElse(0), EMPTY, EMPTY);
+        this.changes = changes.toArray(new DeltaState[changes.size()]);
+    }
+
+    /**
+     * @return the number of changes in this batch
+     */
+    public int getChangeCount() {
+        return changes.length;
+    }
+
+    @Override
+    public long getSize() {
+        long size = 0;
+        for (DeltaState change : changes) {
+            size += change.getSize();
+        }
+        return size;
+    }
+
+    @Override
+    public void revert(ObservableByteArray data) {
+        data.beginUpdate();
+        try {
+            for (int i = changes.length - 1; i >= 0; i--) {
+                changes[i].revert(data);
+            }
+        } finally {
+            data.endUpdate();
+        }
+    }
+
+    @Override
+    public void apply(ObservableByteArray data) {
+        data.beginUpdate();
+        try {
+            for (DeltaState change : changes) {
+                change.apply(data);
+            }
+        } finally {
+            data.endUpdate();
+        }
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Keeps a result for every fixed size block of an {@link ObservableByteArray}
+ * up to date as it is edited, recomputing only the blocks which changed.
+ * <p>
+ * A change marks the blocks it touched as dirty. The dirty blocks are read
+ * and computed in rounds on background threads, split into one group per
+ * worker of the executor, and each result is handed to
+ * {@link #update(int, Object)} once the round is over. Subclasses combine
+ * the results of the blocks into whatever they maintain.
+ * <p>
+ * Blocks are read while the array may be edited on another thread, without
+ * locking it. A block is versioned when it is marked dirty, and a result
+ * read from a block which changed meanwhile is thrown away; the change
+ * marked the block dirty again, so the next round computes it again.
+ *
+ * @param <R> the result computed from the content of a block
+ * @param <V> what waiters receive once no block is dirty
+ */
+public abstract class BlockIndex<R, V> implements Closeable {
+    /**
+     * Rounds in a row which may fail to read an unchanged block before the
+     * waiters fail. A read can fail before the change which caused it has
+     * been reported, so a failure is retried first.
+     */
+    private static final int MAX_FAILED_ROUNDS = 3;
+
+    private final ObservableByteArray data;
+    private final int blockSize;
+    private final Executor executor;
+    private final int parallelism;
+    private final LongArrayChangeListener listener = (array, sizeChanged, from, to) -> onChanged(sizeChanged, from, to);
+
+    private long size;
+    private int blockCount;
+
+    /**
+     * Incremented every time a block is marked dirty
+     */
+    private int[] versions = new int[0];
+    private final BitSet dirty = new BitSet();
+
+    private boolean running;
+    private boolean closed;
+
+    /**
+     * The last exception thrown while reading a block
+     */
+    private volatile RuntimeException readError;
+    private int failedRounds;
+    private final List<CompletableFuture<V>> waiters = new ArrayList<>();
+
+    /**
+     * Subclasses call {@link #start()} once they are ready to receive results.
+     *
+     * @param data      the array to index
+     * @param blockSize the number of bytes in each block
+     * @param executor  reads and computes the blocks
+     */
+    protected BlockIndex(ObservableByteArray data, int blockSize, Executor executor) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.data = data;
+        this.blockSize = blockSize;
+        this.executor = executor;
+        this.parallelism = executor instanceof ForkJoinPool ? ((ForkJoinPool) executor).getParallelism() : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Computes the result of a single block.
+     */
+    protected interface BlockFunction<R> {
+        /**
+         * @param bytes  the content of the block
+         * @param length the number of bytes of the block, which is shorter
+         *               than the block size only at the end of the array
+         * @return the result of the block
+         */
+        R apply(byte[] bytes, int length);
+    }
+
+    /**
+     * @return a function for one group of blocks, which only calls it from
+     * one thread at a time
+     */
+    protected abstract BlockFunction<R> newFunction();
+
+    /**
+     * Called with the index locked when the array was resized, before the
+     * blocks past {@code newCount} are forgotten.
+     *
+     * @param newSize  the size of the array
+     * @param oldCount the number of blocks before
+     * @param newCount the number of blocks now, at least one
+     */
+    protected abstract void resized(long newSize, int oldCount, int newCount);
+
+    /**
+     * Called with the index locked with the new result of a block which
+     * didn't change while it was read.
+     */
+    protected abstract void update(int block, R result);
+
+    /**
+     * Called with the index locked once no block is dirty.
+     *
+     * @return the value to complete the waiters with
+     */
+    protected abstract V current();
+
+    /**
+     * Marks the whole array dirty and starts tracking it.
+     */
+    protected final synchronized void start() {
+        resize(data.sizeLong());
+        markDirty(0, blockCount);
+        data.addLongListener(listener);
+        schedule();
+    }
+
+    /**
+     * @return a future completed with {@link #current()} once every dirty
+     * block has been computed
+     */
+    protected final synchronized CompletableFuture<V> await() {
+        if (closed) {
+            throw new IllegalStateException("Index is closed");
+        }
+        if (isUpToDate()) {
+            return CompletableFuture.completedFuture(current());
+        }
+        CompletableFuture<V> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        schedule();
+        return waiter;
+    }
+
+    /**
+     * @return whether the results reflect the current content of the array
+     */
+    public synchronized boolean isUpToDate() {
+        return !running && dirty.isEmpty();
+    }
+
+    /**
+     * @return whether {@code block} changed since it was last computed
+     */
+    public synchronized boolean isDirty(int block) {
+        return dirty.get(block);
+    }
+
+    public synchronized int getDirtyBlockCount() {
+        return dirty.cardinality();
+    }
+
+    public synchronized int getBlockCount() {
+        return blockCount;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public ObservableByteArray getData() {
+        return data;
+    }
+
+    /**
+     * @return the size of the array as last reported
+     */
+    protected final synchronized long getKnownSize() {
+        return size;
+    }
+
+    /**
+     * Stops tracking the array. Pending waiters are cancelled.
+     */
+    @Override
+    public void close() {
+        data.removeLongListener(listener);
+        synchronized (this) {
+            closed = true;
+            for (CompletableFuture<V> waiter : waiters) {
+                waiter.completeExceptionally(new CancellationException("Index closed"));
+            }
+            waiters.clear();
+        }
+    }
+
+    private synchronized void onChanged(boolean sizeChanged, long from, long to) {
+        if (sizeChanged) {
+            resize(data.sizeLong());
+            to = Long.MAX_VALUE;
+        }
+        from = Math.min(from, size);
+        to = Math.min(to, size);
+        int first = (int) Math.min(from / blockSize, blockCount - 1);
+        int last = Math.max(first + 1, (int) ((to + blockSize - 1) / blockSize));
+        markDirty(first, Math.min(last, blockCount));
+        schedule();
+    }
+
+    private void markDirty(int from, int to) {
+        for (int block = from; block < to; block++) {
+            versions[block]++;
+        }
+        dirty.set(from, to);
+    }
+
+    private void resize(long newSize) {
+        long count = Math.max(1, (newSize + blockSize - 1) / blockSize);
+        if (count > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Too many blocks, use a larger block size");
+        }
+        int oldCount = blockCount;
+        size = newSize;
+        blockCount = (int) count;
+        if (versions.length < blockCount) {
+            versions = Arrays.copyOf(versions, Math.max(blockCount, versions.length * 2));
+        }
+        dirty.clear(blockCount, Math.max(blockCount, dirty.length()));
+        resized(newSize, oldCount, blockCount);
+    }
+
+    private void schedule() {
+        if (running || closed) {
+            return;
+        }
+        if (dirty.isEmpty()) {
+            complete();
+            return;
+        }
+
+        running = true;
+        int count = dirty.cardinality();
+        int[] blocks = new int[count];
+        int[] snapshot = new int[count];
+        int i = 0;
+        for (int block = dirty.nextSetBit(0); block >= 0; block = dirty.nextSetBit(block + 1)) {
+            blocks[i] = block;
+            snapshot[i] = versions[block];
+            i++;
+        }
+        dirty.clear();
+
+        long knownSize = size;
+        int groups = Math.max(1, Math.min(parallelism, count));
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        CompletableFuture<Object[]>[] futures = new CompletableFuture[groups];
+        for (int group = 0; group < groups; group++) {
+            int from = (int) ((long) count * group / groups);
+            int to = (int) ((long) count * (group + 1) / groups);
+            futures[group] = CompletableFuture.supplyAsync(() -> compute(blocks, from, to, knownSize), executor);
+        }
+        CompletableFuture.allOf(futures).whenComplete((ignored, failure) -> finishRound(blocks, snapshot, futures));
+    }
+
+    /**
+     * @return the results of {@code blocks} from {@code from} to {@code to},
+     * null for those which couldn't be read
+     */
+    private Object[] compute(int[] blocks, int from, int to, long knownSize) {
+        BlockFunction<R> function = newFunction();
+        byte[] buffer = new byte[(int) Math.min(blockSize, Math.max(0, knownSize))];
+        Object[] results = new Object[to - from];
+        for (int i = from; i < to; i++) {
+            long start = (long) blocks[i] * blockSize;
+            int length = (int) Math.max(0, Math.min(blockSize, knownSize - start));
+            try {
+                data.copyTo(start, buffer, 0, length);
+            } catch (RuntimeException ex) {
+                // Most likely the array shrank while it was read, which finishRound checks
+                readError = ex;
+                continue;
+            }
+            results[i - from] = function.apply(buffer, length);
+        }
+        return results;
+    }
+
+    private synchronized void finishRound(int[] blocks, int[] snapshot, CompletableFuture<Object[]>[] futures) {
+        running = false;
+        Throwable error = null;
+        boolean unreadable = false;
+        int count = blocks.length;
+        for (int group = 0; group < futures.length; group++) {
+            int from = (int) ((long) count * group / futures.length);
+            int to = (int) ((long) count * (group + 1) / futures.length);
+            Object[] results;
+            try {
+                results = futures[group].join();
+            } catch (CompletionException | CancellationException ex) {
+                results = null;
+                error = ex.getCause() != null ? ex.getCause() : ex;
+            }
+            for (int i = from; i < to; i++) {
+                int block = blocks[i];
+                if (block >= blockCount || versions[block] != snapshot[i]) {
+                    // Changed while it was read, and already marked dirty again
+                    continue;
+                }
+                if (results == null || results[i - from] == null) {
+                    if (error == null) {
+                        error = readError;
+                    }
+                    dirty.set(block);
+                    unreadable = true;
+                    continue;
+                }
+                @SuppressWarnings("unchecked")
+                R result = (R) results[i - from];
+                update(block, result);
+            }
+        }
+
+        if (!unreadable) {
+            failedRounds = 0;
+        } else if (++failedRounds >= MAX_FAILED_ROUNDS) {
+            // The array can't be read even though it didn't change, so retrying won't help
+            failedRounds = 0;
+            Throwable cause = error != null ? error : new IllegalStateException("Couldn't read " + data);
+            for (CompletableFuture<V> waiter : waiters) {
+                waiter.completeExceptionally(cause);
+            }
+            waiters.clear();
+            return;
+        }
+        schedule();
+    }
+
+    private void complete() {
+        if (waiters.isEmpty()) {
+            return;
+        }
+        V value = current();
+        for (CompletableFuture<V> waiter : waiters) {
+            waiter.complete(value);
+        }
+        waiters.clear();
+    }
+}
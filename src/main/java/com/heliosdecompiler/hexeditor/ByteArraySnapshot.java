@@ -0,0 +1,341 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A read-only {@link ObservableByteArray} returned by
+ * {@link ObservableByteArray#snapshot()}. The content is usually a sequence of
+ * pages which may be shared with the array it was taken from; that array
+ * copies a shared page before it writes to it, so the snapshot never changes
+ * and may be read from any thread. A page is collected once neither the array
+ * nor any snapshot refers to it. Arrays with other storage provide their own
+ * {@link Content} under the same rules.
+ * <p>
+ * Every method which would modify the snapshot throws
+ * {@link UnsupportedOperationException}, and listeners are never notified.
+ */
+public final class ByteArraySnapshot extends AbstractObservableByteArray {
+
+    private static final int COPY_PAGE_SHIFT = 16;
+
+    private final Content content;
+    private final long size;
+
+    /**
+     * @param pages     the pages holding the content, which must not be written to anymore
+     * @param pageShift the base 2 logarithm of the page size, up to 31
+     * @param size      the number of bytes in the snapshot
+     */
+    ByteArraySnapshot(ByteBuffer[] pages, int pageShift, long size) {
+        this(new Pages(pages, pageShift), size);
+    }
+
+    /**
+     * @param content reads the bytes of the snapshot
+     * @param size    the number of bytes in the snapshot
+     */
+    ByteArraySnapshot(Content content, long size) {
+        this.content = content;
+        this.size = size;
+    }
+
+    /**
+     * @param bytes the content, which must not be written to anymore
+     * @return a snapshot over {@code bytes}, without copying them
+     */
+    static ByteArraySnapshot wrap(byte[] bytes) {
+        return new ByteArraySnapshot(new ByteBuffer[]{ByteBuffer.wrap(bytes)}, 31, bytes.length);
+    }
+
+    /**
+     * Takes a snapshot of an array which can't share its storage, by copying
+     * its content into new pages.
+     *
+     * @param src the array to copy
+     * @return a snapshot of the current content of {@code src}
+     */
+    static ByteArraySnapshot copyOf(ObservableByteArray src) {
+        long size = src.sizeLong();
+        Runtime runtime = Runtime.getRuntime();
+        long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        if (size > free) {
+            // Fail before filling the heap rather than after
+            throw new OutOfMemoryError(src.getClass().getName() + " can't share its storage, and a copy of "
+                    + size + " bytes doesn't fit in the " + free + " bytes of free heap");
+        }
+        int pageSize = 1 << COPY_PAGE_SHIFT;
+        long count = (size + pageSize - 1) >>> COPY_PAGE_SHIFT;
+        if (count > Integer.MAX_VALUE - 8) {
+            throw new OutOfMemoryError("Array of " + size + " bytes needs too many pages");
+        }
+        ByteBuffer[] pages = new ByteBuffer[(int) count];
+        for (int i = 0; i < pages.length; i++) {
+            long start = (long) i << COPY_PAGE_SHIFT;
+            byte[] page = new byte[(int) Math.min(pageSize, size - start)];
+            src.copyTo(start, page, 0, page.length);
+            pages[i] = ByteBuffer.wrap(page);
+        }
+        return new ByteArraySnapshot(pages, COPY_PAGE_SHIFT, size);
+    }
+
+    /**
+     * @return this snapshot, which is already immutable
+     */
+    @Override
+    public ObservableByteArray snapshot() {
+        return this;
+    }
+
+    /**
+     * @param from   the first byte of the range
+     * @param length the number of bytes in the range
+     * @return a snapshot of a range of this one, sharing its content
+     */
+    ByteArraySnapshot slice(long from, long length) {
+        if (from < 0 || length < 0 || from + length > size) throw new ArrayIndexOutOfBoundsException("Range out of bounds: " + from + "+" + length);
+        if (from == 0) {
+            return length == size ? this : new ByteArraySnapshot(content, length);
+        }
+        return new ByteArraySnapshot(new Slice(content, from), length);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Snapshots larger than 2 GiB report {@link Integer#MAX_VALUE}; use {@link #sizeLong()}.
+     */
+    @Override
+    public int size() {
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long sizeLong() {
+        return size;
+    }
+
+    @Override
+    public byte get(int index) {
+        return get((long) index);
+    }
+
+    @Override
+    public byte get(long index) {
+        if (index < 0 || index >= size) throw new ArrayIndexOutOfBoundsException("Index out of range: " + index);
+        return content.get(index);
+    }
+
+    @Override
+    public void copyTo(int srcIndex, byte[] dest, int destIndex, int length) {
+        copyTo((long) srcIndex, dest, destIndex, length);
+    }
+
+    @Override
+    public void copyTo(long srcIndex, byte[] dest, int destIndex, int length) {
+        if (srcIndex < 0 || length < 0 || srcIndex + length > size) throw new ArrayIndexOutOfBoundsException("Index out of range: " + size);
+        if (destIndex < 0 || destIndex + length > dest.length) throw new ArrayIndexOutOfBoundsException(destIndex);
+        content.read(srcIndex, dest, destIndex, length);
+    }
+
+    @Override
+    public void copyTo(int srcIndex, ObservableByteArray dest, int destIndex, int length) {
+        dest.set(destIndex, toArray(srcIndex, null, length), 0, length);
+    }
+
+    @Override
+    public byte[] toArray(byte[] dest) {
+        if (size > Integer.MAX_VALUE) {
+            throw new OutOfMemoryError("Array of " + size + " bytes can't be copied to a byte[]");
+        }
+        if ((dest == null) || (size() > dest.length)) {
+            dest = new byte[size()];
+        }
+        copyTo(0L, dest, 0, size());
+        return dest;
+    }
+
+    @Override
+    public byte[] toArray(int index, byte[] dest, int length) {
+        if ((dest == null) || (length > dest.length)) {
+            dest = new byte[length];
+        }
+        copyTo((long) index, dest, 0, length);
+        return dest;
+    }
+
+    @Override
+    public void clear() {
+        throw readOnly();
+    }
+
+    @Override
+    public void addAll(ObservableByteArray src) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addAll(byte... elements) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addAll(ObservableByteArray src, int srcIndex, int length) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addAll(byte[] src, int srcIndex, int length) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setAll(ObservableByteArray src) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setAll(ObservableByteArray src, int srcIndex, int length) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setAll(byte... elements) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setAll(byte[] src, int srcIndex, int length) {
+        throw readOnly();
+    }
+
+    @Override
+    public void set(int destIndex, byte[] src, int srcIndex, int length) {
+        throw readOnly();
+    }
+
+    @Override
+    public void set(int destIndex, ObservableByteArray src, int srcIndex, int length) {
+        throw readOnly();
+    }
+
+    @Override
+    public void set(int index, byte value) {
+        throw readOnly();
+    }
+
+    @Override
+    public void resize(int size) {
+        throw readOnly();
+    }
+
+    @Override
+    public void resize(long size) {
+        throw readOnly();
+    }
+
+    @Override
+    public void ensureCapacity(int capacity) {
+        // Nothing can be added
+    }
+
+    @Override
+    public void trimToSize() {
+        // The pages may be shared, so they are kept as they are
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Snapshots can't be modified");
+    }
+
+    @Override
+    public String toString() {
+        return "ByteArraySnapshot[size=" + size + "]";
+    }
+
+    /**
+     * The bytes of a snapshot. They must never change, and must be readable
+     * from any thread. Indexes are checked by the snapshot.
+     */
+    interface Content {
+        byte get(long index);
+
+        void read(long pos, byte[] dest, int destIndex, int length);
+    }
+
+    private static final class Slice implements Content {
+        private final Content content;
+        private final long offset;
+
+        Slice(Content content, long offset) {
+            if (content instanceof Slice) {
+                // Keep a single level of indirection however often it is sliced
+                offset += ((Slice) content).offset;
+                content = ((Slice) content).content;
+            }
+            this.content = content;
+            this.offset = offset;
+        }
+
+        @Override
+        public byte get(long index) {
+            return content.get(offset + index);
+        }
+
+        @Override
+        public void read(long pos, byte[] dest, int destIndex, int length) {
+            content.read(offset + pos, dest, destIndex, length);
+        }
+    }
+
+    private static final class Pages implements Content {
+        private final ByteBuffer[] pages;
+        private final int pageShift;
+        private final long pageMask;
+
+        Pages(ByteBuffer[] pages, int pageShift) {
+            this.pages = pages;
+            this.pageShift = pageShift;
+            this.pageMask = (1L << pageShift) - 1;
+        }
+
+        @Override
+        public byte get(long index) {
+            return pages[(int) (index >>> pageShift)].get((int) (index & pageMask));
+        }
+
+        @Override
+        public void read(long pos, byte[] dest, int destIndex, int length) {
+            while (length > 0) {
+                int offset = (int) (pos & pageMask);
+                int count = (int) Math.min(length, pageMask + 1 - offset);
+                ByteBuffer page = pages[(int) (pos >>> pageShift)];
+                if (page.hasArray()) {
+                    System.arraycopy(page.array(), page.arrayOffset() + offset, dest, destIndex, count);
+                } else {
+                    ByteBuffer view = page.duplicate();
+                    view.position(offset);
+                    view.get(dest, destIndex, count);
+                }
+
+                pos += count;
+                destIndex += count;
+                length -= count;
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+/**
+ * A change which replaced {@link #getRemovedLength()} bytes at
+ * {@link #getFrom()} with {@link #getAddedLength()} new bytes, as given to
+ * a {@link ByteChangeListener}.
+ * <p>
+ * Both sides are read-only views of the bytes captured when the change was
+ * made. They are never copied for a listener, and they stay valid after the
+ * notification. A small change is copied when it is made. A larger change
+ * to an array whose snapshots share its storage is a view of a snapshot
+ * taken before the change and one taken after it, so its bytes are only
+ * read when the view is. The same capture backs the {@link DeltaState}
+ * recorded for undo when the change is part of a transaction.
+ * <p>
+ * A change is not captured when it would have to be copied and is too large
+ * to be held in a byte array, or when none of the listeners
+ * {@linkplain ByteChangeListener#needsBytes() needs the bytes}. It then only
+ * describes the range, and {@link #isCaptured()} is false.
+ */
+public final class ByteChange {
+    private final long from;
+    private final long removed;
+    private final long added;
+    private final ObservableByteArray before;
+    private final ObservableByteArray after;
+
+    /**
+     * @param from   the first byte which was replaced
+     * @param before a read-only view of the replaced bytes
+     * @param after  a read-only view of the bytes which replaced them
+     */
+    ByteChange(long from, ObservableByteArray before, ObservableByteArray after) {
+        this.from = from;
+        this.removed = before.sizeLong();
+        this.added = after.sizeLong();
+        this.before = before;
+        this.after = after;
+    }
+
+    /**
+     * Creates a change without its bytes.
+     */
+    ByteChange(long from, long removed, long added) {
+        this.from = from;
+        this.removed = removed;
+        this.added = added;
+        this.before = null;
+        this.after = null;
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    /**
+     * @return the number of bytes which were replaced
+     */
+    public long getRemovedLength() {
+        return removed;
+    }
+
+    /**
+     * @return the number of bytes which replaced them
+     */
+    public long getAddedLength() {
+        return added;
+    }
+
+    /**
+     * @return whether the change moved the bytes after it, changing the size of the array
+     */
+    public boolean isResizing() {
+        return removed != added;
+    }
+
+    /**
+     * @return whether the bytes of the change are available. If not, only
+     * the range is known and the methods returning bytes throw
+     * {@link IllegalStateException}.
+     */
+    public boolean isCaptured() {
+        return before != null;
+    }
+
+    /**
+     * @return a read-only view of the bytes which were replaced
+     */
+    public ObservableByteArray getBefore() {
+        checkCaptured();
+        return before;
+    }
+
+    /**
+     * @return a read-only view of the bytes which replaced them
+     */
+    public ObservableByteArray getAfter() {
+        checkCaptured();
+        return after;
+    }
+
+    /**
+     * @param index an index into the replaced bytes
+     * @return the replaced byte at {@code from + index}
+     */
+    public byte getBefore(long index) {
+        checkCaptured();
+        return before.get(index);
+    }
+
+    /**
+     * @param index an index into the new bytes
+     * @return the new byte at {@code from + index}
+     */
+    public byte getAfter(long index) {
+        checkCaptured();
+        return after.get(index);
+    }
+
+    /**
+     * @return the change as an undoable edit, sharing the captured bytes
+     */
+    public DeltaState toDeltaState() {
+        checkCaptured();
+        return new DeltaState(from, from + Math.max(removed, added), before, after);
+    }
+
+    private void checkCaptured() {
+        if (before == null) {
+            throw new IllegalStateException("The bytes of " + this + " weren't captured");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ByteChange[from=" + from + ", removed=" + removed + ", added=" + added + "]";
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+/**
+ * Receives every change to an {@link ObservableByteArray} together with the
+ * bytes it replaced and the bytes which replaced them. The bytes are
+ * captured once per change and shared by all listeners, so a listener
+ * doesn't need to read the array before it is modified.
+ * <p>
+ * Outside of an update transaction a listener is called right after each
+ * change. Inside one, the changes are delivered in order when the outermost
+ * transaction commits, after the merged change notification. Unlike the
+ * merged notification, every change is delivered with its own range.
+ *
+ * @see ObservableByteArray#addByteChangeListener(ByteChangeListener)
+ */
+@FunctionalInterface
+public interface ByteChangeListener {
+
+    /**
+     * Called after a change has been made to an {@link ObservableByteArray}.
+     *
+     * @param array  the array which changed
+     * @param change the bytes which were replaced and their replacement
+     */
+    void onChanged(ObservableByteArray array, ByteChange change);
+
+    /**
+     * A listener which only needs the range of each change returns false, so
+     * that the array doesn't capture the bytes for it.
+     *
+     * @return whether the listener reads the bytes of the changes
+     * @see ByteChange#isCaptured()
+     */
+    default boolean needsBytes() {
+        return true;
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Computes the differences between two {@link ObservableByteArray}s.
+ * <p>
+ * Both arrays are walked in step while they are equal. At a mismatch the
+ * revision is scanned with a rolling hash for the next block which also
+ * appears in the rest of the original, as rsync does, so inserted, removed
+ * and shifted regions resynchronize instead of turning everything after them
+ * into a difference. The match is then extended backwards to find exactly
+ * where the difference ends.
+ * <p>
+ * The blocks of the original are indexed the first time a mismatch needs
+ * them, and the differences are produced lazily as the revision is read.
+ * The arrays aren't locked, so they must not be modified while a diff is
+ * read; diff {@link ObservableByteArray#snapshot() snapshots} of arrays
+ * which are still being edited.
+ */
+public class ByteDiff {
+    public static final int DEFAULT_BLOCK_SIZE = 32;
+
+    /**
+     * The most blocks indexed in the original, the block size grows for
+     * larger arrays to stay under it
+     */
+    private static final long MAX_BLOCKS = 1 << 22;
+
+    /**
+     * Multiplier of the rolling hash
+     */
+    private static final int PRIME = 0x01000193;
+
+    /**
+     * Number of hash bits used by the filter checked before the index
+     */
+    private static final int FILTER_BITS = 24;
+
+    /**
+     * Candidate blocks compared before giving up on a hash, which bounds
+     * the cost of hash collisions
+     */
+    private static final int MAX_CANDIDATES = 16;
+
+    private final ObservableByteArray original;
+    private final ObservableByteArray revised;
+    private final int blockSize;
+
+    /**
+     * Each entry is a block hash in the high and a block index in the low
+     * 32 bits, sorted by hash and then by block
+     */
+    private long[] index;
+    private BitSet filter;
+
+    public ByteDiff(ObservableByteArray original, ObservableByteArray revised) {
+        this(original, revised, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param original  the array before the changes
+     * @param revised   the array after the changes
+     * @param blockSize the shortest common run which can resynchronize the
+     *                  arrays after a difference
+     */
+    public ByteDiff(ObservableByteArray original, ObservableByteArray revised, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.original = original;
+        this.revised = revised;
+        this.blockSize = (int) Math.max(blockSize, (original.sizeLong() + MAX_BLOCKS - 1) / MAX_BLOCKS);
+    }
+
+    public ObservableByteArray getOriginal() {
+        return original;
+    }
+
+    public ObservableByteArray getRevised() {
+        return revised;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return the differences in the order they appear in both arrays
+     */
+    public Iterator<DiffRange> iterator() {
+        return new DiffIterator();
+    }
+
+    /**
+     * @return a lazy stream of the differences in the order they appear
+     */
+    public Stream<DiffRange> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private synchronized void buildIndex() {
+        if (index != null) {
+            return;
+        }
+        long blocks = original.sizeLong() / blockSize;
+        long[] entries = new long[(int) blocks];
+        BitSet hashes = new BitSet(1 << FILTER_BITS);
+        Reader reader = new Reader(original);
+        for (int block = 0; block < blocks; block++) {
+            long start = (long) block * blockSize;
+            int hash = 0;
+            for (int i = 0; i < blockSize; i++) {
+                hash = hash * PRIME + (reader.get(start + i) & 0xFF);
+            }
+            entries[block] = (long) hash << 32 | block;
+            hashes.set(hash >>> (32 - FILTER_BITS));
+        }
+        Arrays.sort(entries);
+        filter = hashes;
+        index = entries;
+    }
+
+    private class DiffIterator implements Iterator<DiffRange> {
+        private final Reader left = new Reader(original);
+        private final Reader right = new Reader(revised);
+        private final long leftSize = original.sizeLong();
+        private final long rightSize = revised.sizeLong();
+        private final int outgoingFactor;
+
+        private long leftPosition;
+        private long rightPosition;
+        private DiffRange next;
+
+        DiffIterator() {
+            int factor = 1;
+            for (int i = 1; i < blockSize; i++) {
+                factor *= PRIME;
+            }
+            outgoingFactor = factor;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = computeNext();
+            }
+            return next != null;
+        }
+
+        @Override
+        public DiffRange next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            DiffRange result = next;
+            next = null;
+            return result;
+        }
+
+        private DiffRange computeNext() {
+            long a = leftPosition;
+            long b = rightPosition;
+            while (a < leftSize && b < rightSize && left.get(a) == right.get(b)) {
+                a++;
+                b++;
+            }
+            leftPosition = a;
+            rightPosition = b;
+            if (a >= leftSize && b >= rightSize) {
+                return null;
+            }
+
+            long[] match = a < leftSize && b < rightSize ? resynchronize(a, b) : null;
+            long matchLeft = match == null ? leftSize : match[0];
+            long matchRight = match == null ? rightSize : match[1];
+            if (match != null) {
+                while (matchLeft > a && matchRight > b && left.get(matchLeft - 1) == right.get(matchRight - 1)) {
+                    matchLeft--;
+                    matchRight--;
+                }
+            }
+            leftPosition = matchLeft;
+            rightPosition = matchRight;
+            return new DiffRange(a, matchLeft, b, matchRight);
+        }
+
+        /**
+         * @return the first position of the revision from {@code b} where a
+         * block of the original from {@code a} on starts, as {original, revised}, or null
+         */
+        private long[] resynchronize(long a, long b) {
+            if (rightSize - b < blockSize || leftSize - a < blockSize) {
+                return null;
+            }
+            buildIndex();
+            long firstBlock = (a + blockSize - 1) / blockSize;
+
+            int hash = 0;
+            for (int i = 0; i < blockSize; i++) {
+                hash = hash * PRIME + (right.get(b + i) & 0xFF);
+            }
+            for (long position = b; ; position++) {
+                if (filter.get(hash >>> (32 - FILTER_BITS))) {
+                    long block = find(hash, firstBlock, position);
+                    if (block >= 0) {
+                        return new long[]{block * blockSize, position};
+                    }
+                }
+                if (position + blockSize >= rightSize) {
+                    return null;
+                }
+                int outgoing = right.get(position) & 0xFF;
+                int incoming = right.get(position + blockSize) & 0xFF;
+                hash = (hash - outgoing * outgoingFactor) * PRIME + incoming;
+            }
+        }
+
+        /**
+         * @return the first block from {@code firstBlock} on with {@code hash}
+         * which equals the revision at {@code position}, or -1
+         */
+        private long find(int hash, long firstBlock, long position) {
+            int i = Arrays.binarySearch(index, (long) hash << 32 | firstBlock);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            for (int tries = 0; i < index.length && (int) (index[i] >>> 32) == hash && tries < MAX_CANDIDATES; i++, tries++) {
+                long block = index[i] & 0xFFFFFFFFL;
+                if (equal(block * blockSize, position)) {
+                    return block;
+                }
+            }
+            return -1;
+        }
+
+        private boolean equal(long a, long b) {
+            for (int i = 0; i < blockSize; i++) {
+                if (left.get(a + i) != right.get(b + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Reads an array through a window which is refilled in bulk, keeping a
+     * few bytes before the requested position for the backwards extension.
+     */
+    private class Reader {
+        private static final int WINDOW_SIZE = 64 * 1024;
+
+        private final ObservableByteArray data;
+        private final byte[] window;
+        private final int lookBehind;
+        private long start;
+        private int length;
+
+        Reader(ObservableByteArray data) {
+            this.data = data;
+            this.window = new byte[(int) Math.min(WINDOW_SIZE, Math.max(1, data.sizeLong()))];
+            this.lookBehind = Math.min(window.length / 4, blockSize * 2);
+        }
+
+        byte get(long position) {
+            if (position < start || position >= start + length) {
+                load(position);
+            }
+            return window[(int) (position - start)];
+        }
+
+        private void load(long position) {
+            start = Math.max(0, position - lookBehind);
+            length = (int) Math.min(window.length, data.sizeLong() - start);
+            data.copyTo(start, window, 0, length);
+        }
+    }
+}
@@ -16,9 +16,59 @@
 
 package com.heliosdecompiler.hexeditor;
 
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Converts bytes to and from the text shown in the editor. Every conversion
+ * from a byte is a lookup into a table built once, so rendering a byte
+ * doesn't allocate. It also decodes the multi-byte values read by the typed
+ * accessors of {@link ObservableByteArray}.
+ */
 public class ByteHelper {
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * The most bytes a LEB128 encoded 64-bit value can take
+     */
+    public static final int MAX_LEB128_LENGTH = 10;
+
+    /**
+     * The two digit, upper case hex string for every unsigned byte value
+     */
+    private static final String[] HEX = new String[256];
+
+    /**
+     * The character shown in the ASCII column for every unsigned byte value
+     */
+    private static final char[] PRINTABLE = new char[256];
+
+    /**
+     * The value of every ASCII hex digit, or -1 for other characters
+     */
+    private static final byte[] DIGIT_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(DIGIT_VALUES, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            DIGIT_VALUES[DIGITS[i]] = (byte) i;
+            DIGIT_VALUES[Character.toLowerCase(DIGITS[i])] = (byte) i;
+        }
+        for (int i = 0; i < 256; i++) {
+            HEX[i] = new String(new char[]{DIGITS[i >>> 4], DIGITS[i & 0xF]});
+            char chr = (char) i;
+            PRINTABLE[i] = (chr == 0 || Character.isISOControl(chr)) ? '.' : chr;
+        }
+    }
 
     public static byte fromString(String val) {
+        if (val.length() == 2) {
+            int high = Character.digit(val.charAt(0), 16);
+            int low = Character.digit(val.charAt(1), 16);
+            if (high >= 0 && low >= 0) {
+                return (byte) (high << 4 | low);
+            }
+        }
         try {
             return (byte) (Integer.parseInt(val, 16));
         } catch (NumberFormatException ex) {
@@ -27,6 +77,153 @@ public class ByteHelper {
     }
 
     public static String toString(byte val) {
-        return Integer.toHexString(0x100 | Byte.toUnsignedInt(val)).toUpperCase().substring(1);
+        return HEX[val & 0xFF];
+    }
+
+    /**
+     * @param val a byte
+     * @return the character displayed for {@code val} in the ASCII column,
+     * {@code '.'} for NUL and control characters
+     */
+    public static char toPrintable(byte val) {
+        return PRINTABLE[val & 0xFF];
+    }
+
+    /**
+     * @param nibble a value from 0 to 15
+     * @return the upper case hex digit for {@code nibble}
+     */
+    public static char toHexDigit(int nibble) {
+        return DIGITS[nibble & 0xF];
+    }
+
+    /**
+     * @param chr a character
+     * @return the value of {@code chr} as an ASCII hex digit, or -1 if it isn't one
+     */
+    public static int digitValue(char chr) {
+        return chr < 128 ? DIGIT_VALUES[chr] : -1;
+    }
+
+    /**
+     * Formats an offset as at least eight upper case hex digits, the same as
+     * {@code String.format("%08X", offset)} without parsing a format string.
+     *
+     * @param offset a non-negative offset
+     * @return the formatted offset
+     */
+    public static String toOffsetString(long offset) {
+        int digits = Math.max(8, (64 - Long.numberOfLeadingZeros(offset) + 3) / 4);
+        char[] chars = new char[digits];
+        for (int i = digits - 1; i >= 0; i--) {
+            chars[i] = DIGITS[(int) (offset & 0xF)];
+            offset >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @param bytes  the bytes to decode
+     * @param offset the index of the first byte
+     * @param length the number of bytes, from 1 to 8
+     * @param order  the order of the bytes
+     * @return the bytes as an unsigned integer
+     */
+    public static long toUnsigned(byte[] bytes, int offset, int length, ByteOrder order) {
+        long value = 0;
+        if (order == ByteOrder.BIG_ENDIAN) {
+            for (int i = 0; i < length; i++) {
+                value = value << 8 | bytes[offset + i] & 0xFF;
+            }
+        } else {
+            for (int i = length - 1; i >= 0; i--) {
+                value = value << 8 | bytes[offset + i] & 0xFF;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Copies the bytes which may hold the LEB128 value at {@code index}, at
+     * most {@link #MAX_LEB128_LENGTH} of them.
+     */
+    static byte[] leb128At(ObservableByteArray array, long index) {
+        long size = array.sizeLong();
+        if (index < 0 || index >= size) throw new ArrayIndexOutOfBoundsException("Index out of range: " + index);
+        byte[] bytes = new byte[(int) Math.min(MAX_LEB128_LENGTH, size - index)];
+        array.copyTo(index, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * @param bytes the bytes starting with a LEB128 value
+     * @return the number of bytes the value takes
+     * @throws ArrayIndexOutOfBoundsException if the value runs past the end of {@code bytes}
+     * @throws IllegalArgumentException       if the value is longer than {@link #MAX_LEB128_LENGTH} bytes
+     */
+    public static int leb128Length(byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] >= 0) {
+                return i + 1;
+            }
+        }
+        if (bytes.length < MAX_LEB128_LENGTH) {
+            throw new ArrayIndexOutOfBoundsException("LEB128 value runs past the end");
+        }
+        throw new IllegalArgumentException("LEB128 value is longer than " + MAX_LEB128_LENGTH + " bytes");
+    }
+
+    /**
+     * @param bytes  the bytes starting with a LEB128 value
+     * @param signed whether the value is sign extended from its last byte
+     * @return the value, truncated to 64 bits
+     * @throws ArrayIndexOutOfBoundsException if the value runs past the end of {@code bytes}
+     * @throws IllegalArgumentException       if the value is longer than {@link #MAX_LEB128_LENGTH} bytes
+     */
+    public static long fromLeb128(byte[] bytes, boolean signed) {
+        int length = leb128Length(bytes);
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value |= (bytes[i] & 0x7FL) << (7 * i);
+        }
+        int bits = 7 * length;
+        if (signed && bits < 64 && (bytes[length - 1] & 0x40) != 0) {
+            value |= -1L << bits;
+        }
+        return value;
+    }
+
+    /**
+     * Decodes modified UTF-8, the encoding of {@link java.io.DataInput#readUTF()}
+     * and of class file constants, without its length prefix.
+     *
+     * @param bytes  the encoded characters
+     * @param offset the index of the first byte
+     * @param length the number of bytes
+     * @return the decoded string
+     * @throws IllegalArgumentException if the bytes are malformed
+     */
+    public static String fromModifiedUtf8(byte[] bytes, int offset, int length) {
+        char[] chars = new char[length];
+        int count = 0;
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            int b = bytes[i] & 0xFF;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+                i++;
+            } else if ((b & 0xE0) == 0xC0 && i + 1 < end && (bytes[i + 1] & 0xC0) == 0x80) {
+                chars[count++] = (char) ((b & 0x1F) << 6 | bytes[i + 1] & 0x3F);
+                i += 2;
+            } else if ((b & 0xF0) == 0xE0 && i + 2 < end
+                    && (bytes[i + 1] & 0xC0) == 0x80 && (bytes[i + 2] & 0xC0) == 0x80) {
+                chars[count++] = (char) ((b & 0x0F) << 12 | (bytes[i + 1] & 0x3F) << 6 | bytes[i + 2] & 0x3F);
+                i += 3;
+            } else {
+                throw new IllegalArgumentException("Malformed modified UTF-8 at byte " + (i - offset));
+            }
+        }
+        return new String(chars, 0, count);
     }
 }
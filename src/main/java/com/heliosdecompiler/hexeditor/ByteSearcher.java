@@ -0,0 +1,303 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Searches an {@link ObservableByteArray} for a {@link SearchPattern}.
+ * <p>
+ * The data is read through {@code copyTo} in chunks. Within a chunk the
+ * candidate positions are skipped Boyer-Moore-Horspool style, using the
+ * last byte of the window, and candidates are compared eight bytes at a time.
+ * <p>
+ * {@link #findAll} returns a lazy stream: a sequential stream produces the
+ * first match as soon as it is found, and a parallel stream splits the range
+ * across the fork-join pool. The array isn't locked, so it must not be
+ * modified while a search is running; search a {@link ObservableByteArray#snapshot()}
+ * to keep editing meanwhile.
+ */
+public class ByteSearcher {
+    /**
+     * Number of candidate positions read from the array at once
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Ranges smaller than this are not split any further by parallel streams
+     */
+    private static final long MIN_SPLIT_SIZE = 1024 * 1024;
+
+    private final ObservableByteArray data;
+
+    public ByteSearcher(ObservableByteArray data) {
+        this.data = data;
+    }
+
+    public ObservableByteArray getData() {
+        return data;
+    }
+
+    /**
+     * @param pattern the pattern to search for
+     * @param from    the first offset at which a match may start
+     * @return the offset of the first match at or after {@code from}, or -1
+     */
+    public long findNext(SearchPattern pattern, long from) {
+        return new Matcher(pattern).find(Math.max(0, from), data.sizeLong());
+    }
+
+    /**
+     * @param pattern the pattern to search for
+     * @param from    the offset after the last at which a match may start
+     * @return the offset of the last match before {@code from}, or -1
+     */
+    public long findPrevious(SearchPattern pattern, long from) {
+        Matcher matcher = new Matcher(pattern);
+        long end = Math.min(from, data.sizeLong());
+        // Search backwards a chunk at a time, keeping the last match of the first chunk with one
+        while (end > 0) {
+            long start = Math.max(0, end - CHUNK_SIZE);
+            long last = -1;
+            for (long hit = matcher.find(start, end); hit >= 0; hit = matcher.find(hit + 1, end)) {
+                last = hit;
+            }
+            if (last >= 0) {
+                return last;
+            }
+            end = start;
+        }
+        return -1;
+    }
+
+    /**
+     * @param pattern  the pattern to search for
+     * @param parallel whether to search the array in parallel
+     * @return every match in the array, see {@link #findAll(SearchPattern, long, long, boolean)}
+     */
+    public LongStream findAll(SearchPattern pattern, boolean parallel) {
+        return findAll(pattern, 0, data.sizeLong(), parallel);
+    }
+
+    /**
+     * Finds every match starting between {@code from} and {@code to},
+     * including overlapping ones. The array is only read as the stream is
+     * consumed.
+     *
+     * @param pattern  the pattern to search for
+     * @param from     the first offset at which a match may start
+     * @param to       the end, exclusive, of the offsets at which a match may start
+     * @param parallel whether to search the range in parallel
+     * @return the offsets of the matches in ascending order
+     */
+    public LongStream findAll(SearchPattern pattern, long from, long to, boolean parallel) {
+        return StreamSupport.longStream(new MatchSpliterator(pattern, Math.max(0, from), Math.min(to, data.sizeLong())), parallel);
+    }
+
+    /**
+     * Searches a single range, caching the chunk it last read.
+     */
+    private class Matcher {
+        private final SearchPattern pattern;
+        private final byte[] values;
+        private final byte[] masks;
+        private final int length;
+
+        /**
+         * The pattern packed into big endian words, for comparing eight bytes at a time
+         */
+        private final long[] valueWords;
+        private final long[] maskWords;
+
+        /**
+         * How far the window may move when the byte under its last position is {@code b}
+         */
+        private final int[] shifts = new int[256];
+
+        private byte[] buffer;
+        private ByteBuffer words;
+        private long bufferStart;
+        private int bufferLength;
+
+        Matcher(SearchPattern pattern) {
+            this.pattern = pattern;
+            this.values = pattern.values();
+            this.masks = pattern.masks();
+            this.length = values.length;
+
+            int wordCount = length / 8;
+            valueWords = new long[wordCount];
+            maskWords = new long[wordCount];
+            ByteBuffer packedValues = ByteBuffer.wrap(values);
+            ByteBuffer packedMasks = ByteBuffer.wrap(masks);
+            for (int i = 0; i < wordCount; i++) {
+                valueWords[i] = packedValues.getLong(i * 8);
+                maskWords[i] = packedMasks.getLong(i * 8);
+            }
+
+            // A wildcard matches every byte, so the window can't skip past it
+            int maxShift = length;
+            for (int i = 0; i < length - 1; i++) {
+                if (masks[i] == 0) {
+                    maxShift = length - 1 - i;
+                }
+            }
+            Arrays.fill(shifts, maxShift);
+            for (int i = 0; i < length - 1; i++) {
+                int shift = length - 1 - i;
+                if (shift >= maxShift) {
+                    continue;
+                }
+                for (int b = 0; b < 256; b++) {
+                    if (pattern.matches(i, (byte) b)) {
+                        shifts[b] = shift;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the first match starting in {@code [from, to)}, or -1
+         */
+        long find(long from, long to) {
+            long limit = Math.min(data.sizeLong(), to + length - 1);
+            long position = from;
+            while (position < to && position + length <= limit) {
+                load(position, limit);
+                byte[] buffer = this.buffer;
+                int[] shifts = this.shifts;
+                int tailIndex = length - 1;
+                int tailMask = masks[tailIndex];
+                int tailValue = values[tailIndex];
+                int index = (int) (position - bufferStart);
+                int last = (int) Math.min(bufferLength - length, to - 1 - bufferStart);
+                while (index <= last) {
+                    byte tail = buffer[index + tailIndex];
+                    if ((tail & tailMask) == tailValue && compare(index)) {
+                        return bufferStart + index;
+                    }
+                    index += shifts[tail & 0xFF];
+                }
+                position = bufferStart + index;
+            }
+            return -1;
+        }
+
+        /**
+         * Makes sure the buffer holds the data from {@code position}, reading
+         * a new chunk if the window at {@code position} isn't buffered.
+         */
+        private void load(long position, long limit) {
+            if (buffer != null && position >= bufferStart && position + length <= bufferStart + bufferLength) {
+                return;
+            }
+            int size = (int) Math.min(limit - position, (long) CHUNK_SIZE + length - 1);
+            if (buffer == null || buffer.length < size) {
+                buffer = new byte[size];
+                words = ByteBuffer.wrap(buffer).order(ByteOrder.BIG_ENDIAN);
+            }
+            data.copyTo(position, buffer, 0, size);
+            bufferStart = position;
+            bufferLength = size;
+        }
+
+        private boolean compare(int index) {
+            int i = 0;
+            for (int word = 0; word < valueWords.length; word++, i += 8) {
+                if ((words.getLong(index + i) & maskWords[word]) != valueWords[word]) {
+                    return false;
+                }
+            }
+            for (; i < length; i++) {
+                if ((buffer[index + i] & masks[i]) != values[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Produces the matches in a range one at a time, splitting the range in
+     * halves for parallel streams.
+     */
+    private class MatchSpliterator implements Spliterator.OfLong {
+        private final SearchPattern pattern;
+        private Matcher matcher;
+        private long position;
+        private long end;
+
+        MatchSpliterator(SearchPattern pattern, long from, long to) {
+            this.pattern = pattern;
+            this.position = from;
+            this.end = to;
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (position >= end) {
+                return false;
+            }
+            if (matcher == null) {
+                matcher = new Matcher(pattern);
+            }
+            long hit = matcher.find(position, end);
+            if (hit < 0) {
+                position = end;
+                return false;
+            }
+            position = hit + 1;
+            action.accept(hit);
+            return true;
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            long remaining = end - position;
+            if (remaining < MIN_SPLIT_SIZE * 2) {
+                return null;
+            }
+            long middle = position + remaining / 2;
+            MatchSpliterator prefix = new MatchSpliterator(pattern, position, middle);
+            position = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Math.max(0, end - position);
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SORTED | DISTINCT | NONNULL;
+        }
+
+        @Override
+        public Comparator<? super Long> getComparator() {
+            return null;
+        }
+    }
+}
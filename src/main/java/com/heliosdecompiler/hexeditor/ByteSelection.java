@@ -0,0 +1,219 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * The selected bytes of a view, stored as a {@link RangeSet} of offsets
+ * rather than one object per selected cell, so selecting all of a huge file
+ * costs the same as selecting one byte. Membership and intersection queries
+ * take O(log n) in the number of separate ranges; the length and bounds take
+ * O(1).
+ * <p>
+ * The bulk operations read and write the selected ranges of an array in
+ * chunks, without materializing the offsets.
+ */
+public class ByteSelection {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final SelectionListener[] NO_LISTENERS = new SelectionListener[0];
+
+    private final RangeSet ranges = new RangeSet();
+    private SelectionListener[] listeners = NO_LISTENERS;
+
+    /**
+     * Replaces the selection with {@code [from, to)}.
+     */
+    public void select(long from, long to) {
+        long changedFrom = ranges.isEmpty() ? from : Math.min(ranges.getStart(), from);
+        long changedTo = ranges.isEmpty() ? to : Math.max(ranges.getEnd(), to);
+        ranges.clear();
+        ranges.add(from, to);
+        fireChange(changedFrom, changedTo);
+    }
+
+    /**
+     * Adds {@code [from, to)} to the selection.
+     */
+    public void add(long from, long to) {
+        ranges.add(from, to);
+        fireChange(from, to);
+    }
+
+    /**
+     * Removes {@code [from, to)} from the selection.
+     */
+    public void remove(long from, long to) {
+        ranges.remove(from, to);
+        fireChange(from, to);
+    }
+
+    public void clear() {
+        if (!ranges.isEmpty()) {
+            long from = ranges.getStart();
+            long to = ranges.getEnd();
+            ranges.clear();
+            fireChange(from, to);
+        }
+    }
+
+    public boolean contains(long offset) {
+        return ranges.contains(offset);
+    }
+
+    /**
+     * @return whether any byte of {@code [from, to)} is selected
+     */
+    public boolean intersects(long from, long to) {
+        return ranges.intersects(from, to);
+    }
+
+    public boolean isEmpty() {
+        return ranges.isEmpty();
+    }
+
+    /**
+     * @return the number of selected bytes
+     */
+    public long getLength() {
+        return ranges.getLength();
+    }
+
+    /**
+     * @return the first selected byte, or -1 if nothing is selected
+     */
+    public long getStart() {
+        return ranges.getStart();
+    }
+
+    /**
+     * @return the end of the last selected range, exclusive, or -1 if nothing is selected
+     */
+    public long getEnd() {
+        return ranges.getEnd();
+    }
+
+    /**
+     * @return the number of separate selected ranges
+     */
+    public int getRangeCount() {
+        return ranges.getRangeCount();
+    }
+
+    /**
+     * @return the start of every selected range mapped to its end, exclusive
+     */
+    public NavigableMap<Long, Long> getRanges() {
+        return ranges.getRanges();
+    }
+
+    /**
+     * Sets every selected byte of {@code data} to {@code value}, as one
+     * transaction.
+     *
+     * @param data  the array to fill
+     * @param value the byte to write
+     */
+    public void fill(ObservableByteArray data, byte value) {
+        byte[] chunk = new byte[(int) Math.min(CHUNK_SIZE, Math.max(1, getLength()))];
+        Arrays.fill(chunk, value);
+        data.batch(array -> {
+            for (Map.Entry<Long, Long> range : getRanges().entrySet()) {
+                for (long offset = range.getKey(); offset < range.getValue(); offset += chunk.length) {
+                    array.set(offset, chunk, 0, (int) Math.min(chunk.length, range.getValue() - offset));
+                }
+            }
+        });
+    }
+
+    /**
+     * Copies the selected bytes of {@code data}, in order and without gaps.
+     *
+     * @param data the array to read
+     * @return the selected bytes
+     * @throws IllegalStateException if the selection is too large for an array
+     */
+    public byte[] copy(ObservableByteArray data) {
+        if (getLength() > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Selection of " + getLength() + " bytes is too large to copy to an array");
+        }
+        byte[] copy = new byte[(int) getLength()];
+        int position = 0;
+        for (Map.Entry<Long, Long> range : getRanges().entrySet()) {
+            int length = (int) (range.getValue() - range.getKey());
+            data.copyTo(range.getKey(), copy, position, length);
+            position += length;
+        }
+        return copy;
+    }
+
+    /**
+     * Writes the selected bytes of {@code data} to {@code out}, in order and
+     * without gaps, a chunk at a time.
+     *
+     * @param data the array to read
+     * @param out  the stream to write to, which is left open
+     * @throws IOException if the stream couldn't be written
+     */
+    public void writeTo(ObservableByteArray data, OutputStream out) throws IOException {
+        byte[] chunk = new byte[(int) Math.min(CHUNK_SIZE, Math.max(1, getLength()))];
+        for (Map.Entry<Long, Long> range : getRanges().entrySet()) {
+            for (long offset = range.getKey(); offset < range.getValue(); offset += chunk.length) {
+                int length = (int) Math.min(chunk.length, range.getValue() - offset);
+                data.copyTo(offset, chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
+        }
+    }
+
+    public void addListener(SelectionListener listener) {
+        SelectionListener[] added = Arrays.copyOf(listeners, listeners.length + 1);
+        added[listeners.length] = listener;
+        listeners = added;
+    }
+
+    public void removeListener(SelectionListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i].equals(listener)) {
+                SelectionListener[] removed = new SelectionListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, removed, 0, i);
+                System.arraycopy(listeners, i + 1, removed, i, removed.length - i);
+                listeners = removed;
+                return;
+            }
+        }
+    }
+
+    private void fireChange(long from, long to) {
+        if (from >= to) {
+            return;
+        }
+        for (SelectionListener listener : listeners) {
+            listener.onChanged(this, from, to);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return ranges.toString();
+    }
+}
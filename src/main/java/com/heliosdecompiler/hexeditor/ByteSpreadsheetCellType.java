@@ -29,7 +29,7 @@ public class ByteSpreadsheetCellType extends SpreadsheetCellType<Byte> {
 
     @Override
     public String toString(Byte object) {
-        return ByteHelper.toString(object);
+        return object == null ? "" : ByteHelper.toString(object);
     }
 
     @Override
@@ -0,0 +1,842 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+import com.heliosdecompiler.hexeditor.ClassFileStructure.Kind;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Indexes the layout of a Java class file held in an
+ * {@link ObservableByteArray}: the constant pool, fields, methods and
+ * attributes as byte ranges, arranged in a tree of
+ * {@link ClassFileStructure}s.
+ * <p>
+ * The top level of the file is kept as a flat list of units, such as one
+ * constant or one method with its attributes, each of which can be parsed
+ * knowing only where it starts and what it is. An edit is noted by the
+ * change listener and applied the next time the index is queried: parsing
+ * resumes at the unit containing the first changed byte, and when the size
+ * didn't change it stops as soon as it is past the change and back in step
+ * with the previous parse. Overwriting a method's code therefore reparses
+ * one unit, whatever the size of the class. The contents of a unit, and the
+ * text describing it, are only read when asked for.
+ * <p>
+ * Malformed and truncated files are indexed up to the first problem, and the
+ * rest is reported as {@link Kind#UNPARSED}. The index must be used on the
+ * thread which edits the array.
+ */
+public class ClassFileIndex implements Closeable {
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int WINDOW_SIZE = 8192;
+
+    /**
+     * Characters of a string constant shown in its label
+     */
+    private static final int LABEL_LIMIT = 60;
+
+    private static final String[] TAG_NAMES = new String[21];
+
+    static {
+        TAG_NAMES[1] = "Utf8";
+        TAG_NAMES[3] = "Integer";
+        TAG_NAMES[4] = "Float";
+        TAG_NAMES[5] = "Long";
+        TAG_NAMES[6] = "Double";
+        TAG_NAMES[7] = "Class";
+        TAG_NAMES[8] = "String";
+        TAG_NAMES[9] = "Fieldref";
+        TAG_NAMES[10] = "Methodref";
+        TAG_NAMES[11] = "InterfaceMethodref";
+        TAG_NAMES[12] = "NameAndType";
+        TAG_NAMES[15] = "MethodHandle";
+        TAG_NAMES[16] = "MethodType";
+        TAG_NAMES[17] = "Dynamic";
+        TAG_NAMES[18] = "InvokeDynamic";
+        TAG_NAMES[19] = "Module";
+        TAG_NAMES[20] = "Package";
+    }
+
+    private final ObservableByteArray data;
+    private final LongArrayChangeListener listener = (array, sizeChanged, from, to) -> invalidate(sizeChanged, from, to);
+
+    /**
+     * The top level units in file order. Replaced, never modified, so the
+     * sections of the tree can be views of it.
+     */
+    private List<ClassFileStructure> units = Collections.emptyList();
+    private ClassFileStructure root;
+    private String error;
+
+    private int constantPoolCount;
+    private int fieldsCount;
+    private int methodsCount;
+    private int attributesCount;
+
+    private boolean parsed;
+    private long pendingFrom = Long.MAX_VALUE;
+    private long pendingTo = -1;
+    private boolean pendingSizeChanged;
+
+    private final byte[] window = new byte[WINDOW_SIZE];
+    private long windowStart = -1;
+    private int windowLength;
+
+    /**
+     * Creates an index of {@code data}. Nothing is parsed until it is queried.
+     *
+     * @param data the class file
+     */
+    public ClassFileIndex(ObservableByteArray data) {
+        this.data = data;
+        data.addLongListener(listener);
+    }
+
+    /**
+     * @return the whole file, whose children are the header, the constant
+     * pool, the class info, the interfaces, the fields, the methods and the
+     * attributes, and any unparsed bytes
+     */
+    public ClassFileStructure getRoot() {
+        update();
+        return root;
+    }
+
+    /**
+     * @return why the file couldn't be parsed completely, or null if it could
+     */
+    public String getError() {
+        update();
+        return error;
+    }
+
+    /**
+     * @return the structures inside {@code structure}, in file order
+     */
+    public List<ClassFileStructure> getChildren(ClassFileStructure structure) {
+        update();
+        List<ClassFileStructure> children = structure.getChildren();
+        if (children == null) {
+            try {
+                children = Collections.unmodifiableList(readChildren(structure));
+            } catch (MalformedClassException ex) {
+                // Changed since it was parsed and no longer fits
+                children = Collections.emptyList();
+            }
+            structure.setChildren(children);
+        }
+        return children;
+    }
+
+    /**
+     * @return the innermost structure containing {@code offset}, or null if
+     * it is outside of the file
+     */
+    public ClassFileStructure findAt(long offset) {
+        update();
+        if (offset < 0 || offset >= root.getTo()) {
+            return null;
+        }
+        ClassFileStructure found = units.get(unitAt(offset));
+        for (boolean descended = true; descended; ) {
+            descended = false;
+            for (ClassFileStructure child : getChildren(found)) {
+                if (child.getFrom() <= offset && offset < child.getTo()) {
+                    found = child;
+                    descended = true;
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Describes {@code structure} for display, resolving names and values
+     * through the constant pool.
+     *
+     * @param structure a structure of this index
+     * @return a one line description
+     */
+    public String getLabel(ClassFileStructure structure) {
+        update();
+        try {
+            return describe(structure);
+        } catch (MalformedClassException ex) {
+            return structure.getKind() + " (" + ex.getMessage() + ")";
+        }
+    }
+
+    /**
+     * Stops following changes to the array.
+     */
+    @Override
+    public void close() {
+        data.removeLongListener(listener);
+    }
+
+    private void invalidate(boolean sizeChanged, long from, long to) {
+        pendingFrom = Math.min(pendingFrom, from);
+        pendingTo = Math.max(pendingTo, to);
+        pendingSizeChanged |= sizeChanged;
+        windowStart = -1;
+    }
+
+    private void update() {
+        if (!parsed) {
+            parsed = true;
+            reparse(0, false, 0);
+        } else if (pendingTo >= 0) {
+            int unit = units.isEmpty() ? 0 : unitAt(pendingFrom);
+            // An unparsed tail has nothing to resume from, so start again at the unit before it
+            while (unit > 0 && units.get(unit).getKind() == Kind.UNPARSED) {
+                unit--;
+            }
+            if (!units.isEmpty() && units.get(unit).getKind() == Kind.UNPARSED) {
+                unit = 0;
+            }
+            reparse(unit, !pendingSizeChanged, pendingTo);
+        }
+        pendingFrom = Long.MAX_VALUE;
+        pendingTo = -1;
+        pendingSizeChanged = false;
+    }
+
+    /**
+     * @return the position of the last unit starting at or before {@code offset}
+     */
+    private int unitAt(long offset) {
+        int low = 0;
+        int high = units.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (units.get(mid).getFrom() <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Parses the units from {@code first} onwards, keeping the ones before it.
+     *
+     * @param first     the first unit which may have changed
+     * @param resync    whether the previous units after the change can be
+     *                  reused once the parse is back in step with them
+     * @param changedTo the end of the changed bytes
+     */
+    private void reparse(int first, boolean resync, long changedTo) {
+        List<ClassFileStructure> previous = units;
+        String previousError = error;
+        List<ClassFileStructure> parsedUnits = new ArrayList<>(Math.max(16, previous.size()));
+        parsedUnits.addAll(previous.subList(0, first));
+
+        Kind kind = Kind.HEADER;
+        int index = 0;
+        long position = 0;
+        if (first > 0) {
+            kind = previous.get(first).getKind();
+            index = previous.get(first).getIndex();
+            position = previous.get(first).getFrom();
+        }
+
+        int next = first;
+        boolean countsChanged = false;
+        error = null;
+        try {
+            while (kind != null) {
+                if (resync && position >= changedTo && !countsChanged) {
+                    while (next < previous.size() && previous.get(next).getFrom() < position) {
+                        next++;
+                    }
+                    if (next < previous.size()) {
+                        ClassFileStructure old = previous.get(next);
+                        if (old.getFrom() == position && old.getKind() == kind && old.getIndex() == index) {
+                            parsedUnits.addAll(previous.subList(next, previous.size()));
+                            error = previousError;
+                            units = parsedUnits;
+                            root = group(parsedUnits);
+                            return;
+                        }
+                    }
+                }
+
+                ClassFileStructure unit = parseUnit(kind, index, position);
+                parsedUnits.add(unit);
+                position = unit.getTo();
+
+                switch (kind) {
+                    case HEADER:
+                        kind = Kind.CONSTANT_POOL_COUNT;
+                        break;
+                    case CONSTANT_POOL_COUNT:
+                        countsChanged |= setCount(Kind.CONSTANT_POOL_COUNT, u2(unit.getFrom()));
+                        kind = constantPoolCount > 1 ? Kind.CONSTANT : Kind.CLASS_INFO;
+                        index = 1;
+                        break;
+                    case CONSTANT:
+                        int tag = u1(unit.getFrom());
+                        index += tag == 5 || tag == 6 ? 2 : 1;
+                        if (index >= constantPoolCount) {
+                            kind = Kind.CLASS_INFO;
+                        }
+                        break;
+                    case CLASS_INFO:
+                        kind = Kind.INTERFACES;
+                        break;
+                    case INTERFACES:
+                        kind = Kind.FIELDS_COUNT;
+                        break;
+                    case FIELDS_COUNT:
+                        countsChanged |= setCount(Kind.FIELDS_COUNT, u2(unit.getFrom()));
+                        kind = fieldsCount > 0 ? Kind.FIELD : Kind.METHODS_COUNT;
+                        index = 0;
+                        break;
+                    case FIELD:
+                        if (++index >= fieldsCount) {
+                            kind = Kind.METHODS_COUNT;
+                        }
+                        break;
+                    case METHODS_COUNT:
+                        countsChanged |= setCount(Kind.METHODS_COUNT, u2(unit.getFrom()));
+                        kind = methodsCount > 0 ? Kind.METHOD : Kind.ATTRIBUTES_COUNT;
+                        index = 0;
+                        break;
+                    case METHOD:
+                        if (++index >= methodsCount) {
+                            kind = Kind.ATTRIBUTES_COUNT;
+                        }
+                        break;
+                    case ATTRIBUTES_COUNT:
+                        countsChanged |= setCount(Kind.ATTRIBUTES_COUNT, u2(unit.getFrom()));
+                        kind = attributesCount > 0 ? Kind.ATTRIBUTE : null;
+                        index = 0;
+                        break;
+                    case ATTRIBUTE:
+                        if (++index >= attributesCount) {
+                            kind = null;
+                        }
+                        break;
+                    default:
+                        throw new IllegalStateException("Not a top level unit: " + kind);
+                }
+                if (kind != null && kind != Kind.CONSTANT && kind != Kind.FIELD && kind != Kind.METHOD && kind != Kind.ATTRIBUTE) {
+                    index = 0;
+                }
+            }
+            if (error == null && position < data.sizeLong()) {
+                error = "Trailing data after the class";
+                parsedUnits.add(new ClassFileStructure(Kind.UNPARSED, null, 0, position, data.sizeLong()));
+            }
+        } catch (MalformedClassException ex) {
+            error = ex.getMessage();
+            parsedUnits.add(new ClassFileStructure(Kind.UNPARSED, null, 0, position, data.sizeLong()));
+        }
+        units = parsedUnits;
+        root = group(parsedUnits);
+    }
+
+    /**
+     * @return whether the count differs from the one previously parsed
+     */
+    private boolean setCount(Kind kind, int count) {
+        int previous;
+        switch (kind) {
+            case CONSTANT_POOL_COUNT:
+                previous = constantPoolCount;
+                constantPoolCount = count;
+                break;
+            case FIELDS_COUNT:
+                previous = fieldsCount;
+                fieldsCount = count;
+                break;
+            case METHODS_COUNT:
+                previous = methodsCount;
+                methodsCount = count;
+                break;
+            default:
+                previous = attributesCount;
+                attributesCount = count;
+                break;
+        }
+        return previous != count;
+    }
+
+    private ClassFileStructure parseUnit(Kind kind, int index, long position) throws MalformedClassException {
+        long end;
+        switch (kind) {
+            case HEADER:
+                if (u4(position) != MAGIC) {
+                    throw new MalformedClassException("Not a class file, bad magic number");
+                }
+                end = position + 8;
+                break;
+            case CONSTANT_POOL_COUNT:
+            case FIELDS_COUNT:
+            case METHODS_COUNT:
+            case ATTRIBUTES_COUNT:
+                end = position + 2;
+                break;
+            case CONSTANT:
+                end = position + constantLength(position, index);
+                break;
+            case CLASS_INFO:
+                end = position + 6;
+                break;
+            case INTERFACES:
+                end = position + 2 + 2L * u2(position);
+                break;
+            case FIELD:
+            case METHOD:
+                end = skipAttributes(position + 6);
+                break;
+            case ATTRIBUTE:
+                end = position + 6 + u4Unsigned(position + 2);
+                break;
+            default:
+                throw new IllegalStateException("Not a top level unit: " + kind);
+        }
+        if (end > data.sizeLong()) {
+            throw new MalformedClassException("Truncated " + kind.toString().toLowerCase() + " at offset " + position);
+        }
+        return new ClassFileStructure(kind, null, index, position, end);
+    }
+
+    private int constantLength(long position, int index) throws MalformedClassException {
+        int tag = u1(position);
+        switch (tag) {
+            case 1:
+                return 3 + u2(position + 1);
+            case 7:
+            case 8:
+            case 16:
+            case 19:
+            case 20:
+                return 3;
+            case 15:
+                return 4;
+            case 3:
+            case 4:
+            case 9:
+            case 10:
+            case 11:
+            case 12:
+            case 17:
+            case 18:
+                return 5;
+            case 5:
+            case 6:
+                return 9;
+            default:
+                throw new MalformedClassException("Unknown tag " + tag + " of constant #" + index + " at offset " + position);
+        }
+    }
+
+    /**
+     * @param position the offset of an {@code attributes_count}
+     * @return the end of the attributes it counts
+     */
+    private long skipAttributes(long position) throws MalformedClassException {
+        int count = u2(position);
+        position += 2;
+        for (int i = 0; i < count; i++) {
+            position += 6 + u4Unsigned(position + 2);
+        }
+        return position;
+    }
+
+    /**
+     * Arranges the units into sections under a root.
+     */
+    private ClassFileStructure group(List<ClassFileStructure> units) {
+        List<ClassFileStructure> sections = new ArrayList<>();
+        int start = 0;
+        while (start < units.size()) {
+            Kind section = sectionOf(units.get(start).getKind());
+            int end = start + 1;
+            if (section != null) {
+                while (end < units.size() && sectionOf(units.get(end).getKind()) == section) {
+                    end++;
+                }
+                List<ClassFileStructure> children = Collections.unmodifiableList(units.subList(start, end));
+                sections.add(new ClassFileStructure(section, sections.size(), units.get(start).getFrom(),
+                        units.get(end - 1).getTo(), children));
+            } else {
+                sections.add(units.get(start));
+            }
+            start = end;
+        }
+        return new ClassFileStructure(Kind.CLASS_FILE, 0, 0, data.sizeLong(), Collections.unmodifiableList(sections));
+    }
+
+    private static Kind sectionOf(Kind unit) {
+        switch (unit) {
+            case CONSTANT_POOL_COUNT:
+            case CONSTANT:
+                return Kind.CONSTANT_POOL;
+            case FIELDS_COUNT:
+            case FIELD:
+                return Kind.FIELDS;
+            case METHODS_COUNT:
+            case METHOD:
+                return Kind.METHODS;
+            case ATTRIBUTES_COUNT:
+            case ATTRIBUTE:
+                return Kind.ATTRIBUTES;
+            default:
+                return null;
+        }
+    }
+
+    private List<ClassFileStructure> readChildren(ClassFileStructure structure) throws MalformedClassException {
+        List<ClassFileStructure> children = new ArrayList<>();
+        long position = structure.getFrom();
+        switch (structure.getKind()) {
+            case HEADER:
+                position = value(children, "magic", position, 4);
+                position = value(children, "minor_version", position, 2);
+                value(children, "major_version", position, 2);
+                break;
+            case CONSTANT:
+                readConstant(children, position);
+                break;
+            case CLASS_INFO:
+                position = value(children, "access_flags", position, 2);
+                position = value(children, "this_class", position, 2);
+                value(children, "super_class", position, 2);
+                break;
+            case INTERFACES:
+                int count = u2(position);
+                position = value(children, "interfaces_count", position, 2);
+                for (int i = 0; i < count; i++) {
+                    position = value(children, "interfaces[" + i + "]", position, 2);
+                }
+                break;
+            case FIELD:
+            case METHOD:
+                position = value(children, "access_flags", position, 2);
+                position = value(children, "name_index", position, 2);
+                position = value(children, "descriptor_index", position, 2);
+                readAttributes(children, position);
+                break;
+            case ATTRIBUTE:
+                long length = u4Unsigned(position + 2);
+                position = value(children, "attribute_name_index", position, 2);
+                position = value(children, "attribute_length", position, 4);
+                if (length > 0) {
+                    value(children, "info", position, length);
+                }
+                break;
+            default:
+                break;
+        }
+        return children;
+    }
+
+    private void readConstant(List<ClassFileStructure> children, long position) throws MalformedClassException {
+        int tag = u1(position);
+        position = value(children, "tag", position, 1);
+        switch (tag) {
+            case 1:
+                int length = u2(position);
+                position = value(children, "length", position, 2);
+                if (length > 0) {
+                    value(children, "bytes", position, length);
+                }
+                break;
+            case 7:
+            case 19:
+            case 20:
+                value(children, "name_index", position, 2);
+                break;
+            case 8:
+                value(children, "string_index", position, 2);
+                break;
+            case 16:
+                value(children, "descriptor_index", position, 2);
+                break;
+            case 3:
+            case 4:
+                value(children, "bytes", position, 4);
+                break;
+            case 5:
+            case 6:
+                position = value(children, "high_bytes", position, 4);
+                value(children, "low_bytes", position, 4);
+                break;
+            case 9:
+            case 10:
+            case 11:
+                position = value(children, "class_index", position, 2);
+                value(children, "name_and_type_index", position, 2);
+                break;
+            case 12:
+                position = value(children, "name_index", position, 2);
+                value(children, "descriptor_index", position, 2);
+                break;
+            case 15:
+                position = value(children, "reference_kind", position, 1);
+                value(children, "reference_index", position, 2);
+                break;
+            case 17:
+            case 18:
+                position = value(children, "bootstrap_method_attr_index", position, 2);
+                value(children, "name_and_type_index", position, 2);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void readAttributes(List<ClassFileStructure> children, long position) throws MalformedClassException {
+        int count = u2(position);
+        position = value(children, "attributes_count", position, 2);
+        for (int i = 0; i < count; i++) {
+            long end = position + 6 + u4Unsigned(position + 2);
+            children.add(new ClassFileStructure(Kind.ATTRIBUTE, null, i, position, end));
+            position = end;
+        }
+    }
+
+    /**
+     * Adds a value of {@code length} bytes at {@code position} to {@code children}.
+     *
+     * @return the end of the value
+     */
+    private long value(List<ClassFileStructure> children, String name, long position, long length) {
+        children.add(new ClassFileStructure(Kind.VALUE, name, children.size(), position, position + length));
+        return position + length;
+    }
+
+    private String describe(ClassFileStructure structure) throws MalformedClassException {
+        long from = structure.getFrom();
+        switch (structure.getKind()) {
+            case CLASS_FILE:
+                return "Class file" + (error == null ? "" : " (" + error + ")");
+            case HEADER:
+                return "Header, version " + u2(from + 6) + "." + u2(from + 4);
+            case CONSTANT_POOL:
+                return "Constant pool (" + Math.max(0, constantPoolCount - 1) + " slots)";
+            case CONSTANT:
+                return describeConstant(structure);
+            case CLASS_INFO:
+                return "Class " + className(u2(from + 2));
+            case INTERFACES:
+                return "Interfaces (" + u2(from) + ")";
+            case FIELDS:
+                return "Fields (" + fieldsCount + ")";
+            case METHODS:
+                return "Methods (" + methodsCount + ")";
+            case ATTRIBUTES:
+                return "Attributes (" + attributesCount + ")";
+            case FIELD:
+            case METHOD:
+                return utf8(u2(from + 2), LABEL_LIMIT) + " " + utf8(u2(from + 4), LABEL_LIMIT);
+            case ATTRIBUTE:
+                return utf8(u2(from), LABEL_LIMIT) + " (" + u4Unsigned(from + 2) + " bytes)";
+            case CONSTANT_POOL_COUNT:
+                return "constant_pool_count = " + u2(from);
+            case FIELDS_COUNT:
+                return "fields_count = " + u2(from);
+            case METHODS_COUNT:
+                return "methods_count = " + u2(from);
+            case ATTRIBUTES_COUNT:
+                return "attributes_count = " + u2(from);
+            case VALUE:
+                return describeValue(structure);
+            case UNPARSED:
+                return "Unparsed (" + (structure.getTo() - from) + " bytes)";
+            default:
+                return structure.getKind().toString();
+        }
+    }
+
+    private String describeConstant(ClassFileStructure constant) throws MalformedClassException {
+        long from = constant.getFrom();
+        int tag = u1(from);
+        if (tag >= TAG_NAMES.length || TAG_NAMES[tag] == null) {
+            return "#" + constant.getIndex() + " unknown tag " + tag;
+        }
+        String prefix = "#" + constant.getIndex() + " " + TAG_NAMES[tag] + " ";
+        switch (tag) {
+            case 1:
+                return prefix + quote(utf8At(from, LABEL_LIMIT));
+            case 3:
+                return prefix + u4(from + 1);
+            case 4:
+                return prefix + Float.intBitsToFloat(u4(from + 1));
+            case 5:
+                return prefix + u8(from + 1);
+            case 6:
+                return prefix + Double.longBitsToDouble(u8(from + 1));
+            case 7:
+            case 16:
+            case 19:
+            case 20:
+                return prefix + utf8(u2(from + 1), LABEL_LIMIT);
+            case 8:
+                return prefix + quote(utf8(u2(from + 1), LABEL_LIMIT));
+            case 15:
+                return prefix + u1(from + 1) + ":#" + u2(from + 2);
+            default:
+                return prefix + "#" + u2(from + 1) + ".#" + u2(from + 3);
+        }
+    }
+
+    private String describeValue(ClassFileStructure value) throws MalformedClassException {
+        long from = value.getFrom();
+        long length = value.getTo() - from;
+        String name = value.getName();
+        switch ((int) Math.min(length, 5)) {
+            case 1:
+                return name + " = " + u1(from);
+            case 2:
+                int u2 = u2(from);
+                if (name.endsWith("access_flags")) {
+                    return name + " = 0x" + Integer.toHexString(u2 | 0x10000).substring(1).toUpperCase();
+                }
+                return name + " = " + u2;
+            case 4:
+                return name + " = 0x" + Integer.toHexString(u4(from)).toUpperCase();
+            default:
+                return name + " (" + length + " bytes)";
+        }
+    }
+
+    private String className(int index) throws MalformedClassException {
+        ClassFileStructure constant = constant(index);
+        if (constant == null || u1(constant.getFrom()) != 7) {
+            return "#" + index;
+        }
+        return utf8(u2(constant.getFrom() + 1), LABEL_LIMIT);
+    }
+
+    /**
+     * @return the Utf8 constant at {@code index}, or {@code #index} if there isn't one
+     */
+    private String utf8(int index, int limit) throws MalformedClassException {
+        ClassFileStructure constant = constant(index);
+        if (constant == null || u1(constant.getFrom()) != 1) {
+            return "#" + index;
+        }
+        return utf8At(constant.getFrom(), limit);
+    }
+
+    /**
+     * Decodes the modified UTF-8 of the Utf8 constant at {@code position},
+     * reading at most enough bytes for {@code limit} characters.
+     */
+    private String utf8At(long position, int limit) throws MalformedClassException {
+        int length = u2(position + 1);
+        int read = Math.min(length, limit * 3);
+        byte[] bytes = new byte[read];
+        data.copyTo(position + 3, bytes, 0, read);
+        String text = null;
+        // A prefix may end inside a character, so back off to the last full one
+        for (int end = read; text == null; end--) {
+            try {
+                text = ByteHelper.fromModifiedUtf8(bytes, 0, end);
+                read = end;
+            } catch (IllegalArgumentException ex) {
+                if (end == length || end == 0 || read - end == 2) {
+                    return "<malformed Utf8>";
+                }
+            }
+        }
+        return text.length() > limit || read < length ? text.substring(0, Math.min(text.length(), limit)) + "..." : text;
+    }
+
+    /**
+     * @return the constant at {@code index}, or null if there is none
+     */
+    private ClassFileStructure constant(int index) {
+        // Constants follow the header and the count, in index order
+        int low = 2;
+        int high = units.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            ClassFileStructure unit = units.get(mid);
+            if (unit.getKind() != Kind.CONSTANT || unit.getIndex() > index) {
+                high = mid - 1;
+            } else if (unit.getIndex() < index) {
+                low = mid + 1;
+            } else {
+                return unit;
+            }
+        }
+        return null;
+    }
+
+    private static String quote(String text) {
+        return '"' + text + '"';
+    }
+
+    private int u1(long position) throws MalformedClassException {
+        return read(position, 1)[(int) (position - windowStart)] & 0xFF;
+    }
+
+    private int u2(long position) throws MalformedClassException {
+        byte[] bytes = read(position, 2);
+        int i = (int) (position - windowStart);
+        return (bytes[i] & 0xFF) << 8 | bytes[i + 1] & 0xFF;
+    }
+
+    private int u4(long position) throws MalformedClassException {
+        byte[] bytes = read(position, 4);
+        int i = (int) (position - windowStart);
+        return (bytes[i] & 0xFF) << 24 | (bytes[i + 1] & 0xFF) << 16 | (bytes[i + 2] & 0xFF) << 8 | bytes[i + 3] & 0xFF;
+    }
+
+    private long u4Unsigned(long position) throws MalformedClassException {
+        return u4(position) & 0xFFFFFFFFL;
+    }
+
+    private long u8(long position) throws MalformedClassException {
+        return (long) u4(position) << 32 | u4Unsigned(position + 4);
+    }
+
+    /**
+     * Makes sure {@code [position, position + length)} is in the window.
+     *
+     * @return the window
+     */
+    private byte[] read(long position, int length) throws MalformedClassException {
+        if (position < 0 || position + length > data.sizeLong()) {
+            throw new MalformedClassException("Truncated at offset " + position);
+        }
+        if (windowStart < 0 || position < windowStart || position + length > windowStart + windowLength) {
+            windowStart = position;
+            windowLength = (int) Math.min(WINDOW_SIZE, data.sizeLong() - position);
+            data.copyTo(position, window, 0, windowLength);
+        }
+        return window;
+    }
+
+    private static class MalformedClassException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        MalformedClassException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+import java.util.List;
+
+/**
+ * A node of the structure tree built by {@link ClassFileIndex}: a byte range
+ * of a class file and what it holds. Nodes are immutable once built; an edit
+ * replaces the nodes it affects with new ones.
+ */
+public class ClassFileStructure {
+    public enum Kind {
+        /**
+         * The whole file
+         */
+        CLASS_FILE,
+        /**
+         * The magic number and version
+         */
+        HEADER,
+        CONSTANT_POOL,
+        CONSTANT_POOL_COUNT,
+        /**
+         * A constant pool entry, whose index is its constant pool index
+         */
+        CONSTANT,
+        /**
+         * The access flags, this class and super class
+         */
+        CLASS_INFO,
+        INTERFACES,
+        FIELDS,
+        FIELDS_COUNT,
+        FIELD,
+        METHODS,
+        METHODS_COUNT,
+        METHOD,
+        ATTRIBUTES,
+        ATTRIBUTES_COUNT,
+        ATTRIBUTE,
+        /**
+         * A single item inside another structure, such as a name index
+         */
+        VALUE,
+        /**
+         * Bytes which couldn't be parsed, or which follow the class
+         */
+        UNPARSED
+    }
+
+    private final Kind kind;
+    private final String name;
+    private final int index;
+    private final long from;
+    private final long to;
+
+    /**
+     * Filled in by the index the first time they are needed
+     */
+    private List<ClassFileStructure> children;
+
+    ClassFileStructure(Kind kind, String name, int index, long from, long to) {
+        this.kind = kind;
+        this.name = name;
+        this.index = index;
+        this.from = from;
+        this.to = to;
+    }
+
+    ClassFileStructure(Kind kind, int index, long from, long to, List<ClassFileStructure> children) {
+        this(kind, null, index, from, to);
+        this.children = children;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the name of a {@link Kind#VALUE} as in the JVM specification,
+     * such as {@code name_index}, or null for other kinds
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the constant pool index of a constant, or the position of a
+     * field, method, attribute or value within its parent
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    /**
+     * @return the end of the structure, exclusive
+     */
+    public long getTo() {
+        return to;
+    }
+
+    List<ClassFileStructure> getChildren() {
+        return children;
+    }
+
+    void setChildren(List<ClassFileStructure> children) {
+        this.children = children;
+    }
+
+    @Override
+    public String toString() {
+        return kind + (name == null ? "" : " " + name) + " #" + index + " [" + from + ", " + to + ")";
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.scene.control.TreeCell;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeView;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Shows the {@link ClassFileIndex} of a {@link HexArea} as a tree. Selecting
+ * a node highlights its parts in the area. Children are only read when a
+ * node is expanded, and edits rebuild the tree once per pulse from the
+ * incrementally updated index, keeping the expanded nodes open.
+ * <p>
+ * Call {@link #refresh()} after giving the area new data.
+ */
+public class ClassFileTreeView extends TreeView<ClassFileStructure> {
+    private final HexArea area;
+    private ObservableByteArray data;
+    private ClassFileIndex index;
+    private boolean refreshPending;
+    private boolean refreshing;
+
+    private final LongArrayChangeListener dataListener = (array, sizeChanged, from, to) -> {
+        if (!refreshPending) {
+            refreshPending = true;
+            Platform.runLater(this::refresh);
+        }
+    };
+
+    public ClassFileTreeView(HexArea area) {
+        this.area = area;
+        setCellFactory(view -> new TreeCell<ClassFileStructure>() {
+            @Override
+            protected void updateItem(ClassFileStructure item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty || item == null ? null : index.getLabel(item));
+            }
+        });
+        getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) -> {
+            if (newValue != null && !refreshing) {
+                area.highlightStructure(newValue.getValue());
+            }
+        });
+        refresh();
+    }
+
+    /**
+     * Rebuilds the tree from the current data of the area.
+     */
+    public void refresh() {
+        refreshPending = false;
+        if (data != area.getData()) {
+            if (data != null) {
+                data.removeLongListener(dataListener);
+            }
+            data = area.getData();
+            data.addLongListener(dataListener);
+        }
+        index = area.getClassFileIndex();
+
+        Set<String> expanded = new HashSet<>();
+        if (getRoot() != null) {
+            collectExpanded(getRoot(), "", expanded);
+        }
+        StructureItem root = new StructureItem(index.getRoot());
+        refreshing = true;
+        try {
+            setRoot(root);
+            root.setExpanded(true);
+            restoreExpanded(root, "", expanded);
+        } finally {
+            refreshing = false;
+        }
+    }
+
+    /**
+     * Identifies a node by the kinds and indices on its path, which survive
+     * reparsing as long as the layout before it didn't change.
+     */
+    private static String keyOf(String parentKey, ClassFileStructure structure) {
+        return parentKey + "/" + structure.getKind() + structure.getIndex();
+    }
+
+    private static void collectExpanded(TreeItem<ClassFileStructure> item, String parentKey, Set<String> expanded) {
+        if (!item.isExpanded()) {
+            return;
+        }
+        String key = keyOf(parentKey, item.getValue());
+        expanded.add(key);
+        for (TreeItem<ClassFileStructure> child : item.getChildren()) {
+            collectExpanded(child, key, expanded);
+        }
+    }
+
+    private static void restoreExpanded(TreeItem<ClassFileStructure> item, String parentKey, Set<String> expanded) {
+        String key = keyOf(parentKey, item.getValue());
+        if (!expanded.contains(key)) {
+            return;
+        }
+        item.setExpanded(true);
+        for (TreeItem<ClassFileStructure> child : item.getChildren()) {
+            restoreExpanded(child, key, expanded);
+        }
+    }
+
+    /**
+     * Loads its children from the index the first time they are needed.
+     */
+    private class StructureItem extends TreeItem<ClassFileStructure> {
+        private boolean loaded;
+
+        StructureItem(ClassFileStructure structure) {
+            super(structure);
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return index.getChildren(getValue()).isEmpty();
+        }
+
+        @Override
+        public ObservableList<TreeItem<ClassFileStructure>> getChildren() {
+            if (!loaded) {
+                loaded = true;
+                List<ClassFileStructure> structures = index.getChildren(getValue());
+                TreeItem<ClassFileStructure>[] items = new StructureItem[structures.size()];
+                for (int i = 0; i < items.length; i++) {
+                    items[i] = new StructureItem(structures.get(i));
+                }
+                super.getChildren().setAll(items);
+            }
+            return super.getChildren();
+        }
+    }
+}
@@ -0,0 +1,554 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+import javafx.application.Platform;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A thread-safe {@link ObservableByteArray} over a {@link PagedByteArray}.
+ * Any thread may write to it, and workers such as searches, hashing and
+ * parsing may read it while it is written.
+ * <p>
+ * Writes are exclusive. Reads are optimistic through a {@link StampedLock}:
+ * the bytes are copied without locking and the copy is kept if no write
+ * happened meanwhile, otherwise it is repeated under the read lock. A torn
+ * read of the paged storage may return garbage or throw, but never corrupts
+ * it, so both are simply retried.
+ * <p>
+ * Listeners are always notified on the FX thread. A write made on the FX
+ * thread notifies them before it returns, as any other array does. Writes
+ * from other threads are merged into a single change which is delivered
+ * with {@link Platform#runLater(Runnable)}, or the executor given to the
+ * constructor, followed by their byte changes and edits in order. An update
+ * transaction holds the write lock from {@link #beginUpdate()} until the
+ * matching {@link #endUpdate()}.
+ * <p>
+ * A single write from another thread is made in a transaction of its own,
+ * so that it produces an edit like any transaction does. An editor keeping
+ * an undo history records those edits and stays in step with the content,
+ * while the writes it makes itself on the FX thread are left to it.
+ */
+public class ConcurrentByteArray extends AbstractObservableByteArray {
+
+    private final PagedByteArray storage;
+    private final Executor delivery;
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * The thread holding the write lock, which may read without locking
+     */
+    private volatile Thread writer;
+    private long writeStamp;
+    private int writeHolds;
+
+    private final Object pendingLock = new Object();
+    private boolean pending;
+    private boolean pendingSizeChanged;
+    private long pendingFrom;
+    private long pendingTo;
+    private List<ByteChange> pendingByteChanges = new ArrayList<>();
+    /**
+     * Edits to deliver in order, where null stands for an invalidated history
+     */
+    private List<DeltaState> pendingEdits = new ArrayList<>();
+    private boolean deliveryScheduled;
+
+    /**
+     * Whether the storage captures changes for the byte change listeners
+     */
+    private boolean forwardingByteChanges;
+
+    private final LongArrayChangeListener storageListener = (array, sizeChanged, from, to) -> {
+        synchronized (pendingLock) {
+            if (!pending) {
+                pending = true;
+                pendingSizeChanged = false;
+                pendingFrom = Long.MAX_VALUE;
+                pendingTo = Long.MIN_VALUE;
+            }
+            pendingSizeChanged |= sizeChanged;
+            pendingFrom = Math.min(pendingFrom, from);
+            pendingTo = Math.max(pendingTo, to);
+        }
+    };
+
+    private final ByteChangeListener storageByteChangeListener = new ByteChangeListener() {
+        @Override
+        public void onChanged(ObservableByteArray array, ByteChange change) {
+            synchronized (pendingLock) {
+                pendingByteChanges.add(change);
+            }
+        }
+
+        @Override
+        public boolean needsBytes() {
+            // Asked by the storage under the write lock, which also guards the listeners
+            return byteChangeListenersNeedBytes();
+        }
+    };
+
+    private final EditListener storageEditListener = new EditListener() {
+        @Override
+        public void onEdit(ObservableByteArray array, DeltaState edit) {
+            synchronized (pendingLock) {
+                pendingEdits.add(edit);
+            }
+        }
+
+        @Override
+        public void onHistoryInvalidated(ObservableByteArray array) {
+            synchronized (pendingLock) {
+                pendingEdits.add(null);
+            }
+        }
+    };
+
+    /**
+     * Creates an empty array stored in a {@link PagedByteArray} on the heap.
+     */
+    public ConcurrentByteArray() {
+        this(new PagedByteArray());
+    }
+
+    /**
+     * Creates an array backed by {@code storage}, which must not be used
+     * directly afterwards.
+     *
+     * @param storage the array holding the content
+     */
+    public ConcurrentByteArray(PagedByteArray storage) {
+        this(storage, Platform::runLater);
+    }
+
+    /**
+     * Creates an array backed by {@code storage}, which must not be used
+     * directly afterwards, and notifies the listeners of writes from other
+     * threads through {@code delivery}.
+     *
+     * @param storage  the array holding the content
+     * @param delivery runs the notification of writes made off the FX thread
+     */
+    public ConcurrentByteArray(PagedByteArray storage, Executor delivery) {
+        this.storage = storage;
+        this.delivery = delivery;
+        storage.addLongListener(storageListener);
+        storage.addEditListener(storageEditListener);
+    }
+
+    @Override
+    public void addByteChangeListener(ByteChangeListener listener) {
+        lockWrite();
+        try {
+            super.addByteChangeListener(listener);
+            if (!forwardingByteChanges) {
+                // Only make the storage capture changes while someone wants them
+                storage.addByteChangeListener(storageByteChangeListener);
+                forwardingByteChanges = true;
+            }
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    @Override
+    public void removeByteChangeListener(ByteChangeListener listener) {
+        lockWrite();
+        try {
+            super.removeByteChangeListener(listener);
+            if (forwardingByteChanges && !hasByteChangeListeners()) {
+                storage.removeByteChangeListener(storageByteChangeListener);
+                forwardingByteChanges = false;
+            }
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    @Override
+    public ObservableByteArray snapshot() {
+        lockWrite();
+        try {
+            return storage.snapshot();
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(sizeLong(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long sizeLong() {
+        return readLong(storage::sizeLong);
+    }
+
+    @Override
+    public byte get(int index) {
+        return get((long) index);
+    }
+
+    @Override
+    public byte get(long index) {
+        return (byte) readLong(() -> storage.get(index));
+    }
+
+    @Override
+    public long getUnsigned(long index, int length, ByteOrder order) {
+        return readLong(() -> storage.getUnsigned(index, length, order));
+    }
+
+    @Override
+    public void copyTo(int srcIndex, byte[] dest, int destIndex, int length) {
+        copyTo((long) srcIndex, dest, destIndex, length);
+    }
+
+    @Override
+    public void copyTo(long srcIndex, byte[] dest, int destIndex, int length) {
+        readLong(() -> {
+            storage.copyTo(srcIndex, dest, destIndex, length);
+            return 0;
+        });
+    }
+
+    @Override
+    public void copyTo(int srcIndex, ObservableByteArray dest, int destIndex, int length) {
+        dest.set(destIndex, toArray(srcIndex, null, length), 0, length);
+    }
+
+    @Override
+    public byte[] toArray(byte[] dest) {
+        return read(() -> storage.toArray(dest));
+    }
+
+    @Override
+    public byte[] toArray(int index, byte[] dest, int length) {
+        return read(() -> storage.toArray(index, dest, length));
+    }
+
+    @Override
+    public boolean supportsInsert() {
+        return true;
+    }
+
+    @Override
+    public void insert(long index, byte[] src, int srcIndex, int length) {
+        write(() -> storage.insert(index, src, srcIndex, length));
+    }
+
+    @Override
+    public void remove(long from, long to) {
+        write(() -> storage.remove(from, to));
+    }
+
+    @Override
+    public void clear() {
+        write(storage::clear);
+    }
+
+    @Override
+    public void addAll(ObservableByteArray src) {
+        write(() -> storage.addAll(storageOf(src)));
+    }
+
+    @Override
+    public void addAll(byte... elements) {
+        write(() -> storage.addAll(elements));
+    }
+
+    @Override
+    public void addAll(ObservableByteArray src, int srcIndex, int length) {
+        write(() -> storage.addAll(storageOf(src), srcIndex, length));
+    }
+
+    @Override
+    public void addAll(byte[] src, int srcIndex, int length) {
+        write(() -> storage.addAll(src, srcIndex, length));
+    }
+
+    @Override
+    public void setAll(ObservableByteArray src) {
+        write(() -> storage.setAll(storageOf(src)));
+    }
+
+    @Override
+    public void setAll(ObservableByteArray src, int srcIndex, int length) {
+        write(() -> storage.setAll(storageOf(src), srcIndex, length));
+    }
+
+    @Override
+    public void setAll(byte... elements) {
+        write(() -> storage.setAll(elements));
+    }
+
+    @Override
+    public void setAll(byte[] src, int srcIndex, int length) {
+        write(() -> storage.setAll(src, srcIndex, length));
+    }
+
+    @Override
+    public void set(int destIndex, byte[] src, int srcIndex, int length) {
+        set((long) destIndex, src, srcIndex, length);
+    }
+
+    @Override
+    public void set(long destIndex, byte[] src, int srcIndex, int length) {
+        write(() -> storage.set(destIndex, src, srcIndex, length));
+    }
+
+    @Override
+    public void set(int destIndex, ObservableByteArray src, int srcIndex, int length) {
+        write(() -> storage.set(destIndex, storageOf(src), srcIndex, length));
+    }
+
+    @Override
+    public void set(int index, byte value) {
+        set((long) index, value);
+    }
+
+    @Override
+    public void set(long index, byte value) {
+        write(() -> storage.set(index, value));
+    }
+
+    @Override
+    public void resize(int size) {
+        write(() -> storage.resize(size));
+    }
+
+    @Override
+    public void resize(long size) {
+        write(() -> storage.resize(size));
+    }
+
+    @Override
+    public void ensureCapacity(int capacity) {
+        write(() -> storage.ensureCapacity(capacity));
+    }
+
+    @Override
+    public void trimToSize() {
+        write(storage::trimToSize);
+    }
+
+    @Override
+    public void beginUpdate() {
+        lockWrite();
+        storage.beginUpdate();
+    }
+
+    @Override
+    public void endUpdate() {
+        if (writer != Thread.currentThread()) {
+            throw new IllegalStateException("endUpdate() without matching beginUpdate()");
+        }
+        try {
+            storage.endUpdate();
+        } finally {
+            unlockWrite();
+        }
+        deliver();
+    }
+
+    @Override
+    public boolean isUpdating() {
+        return writer == Thread.currentThread() && storage.isUpdating();
+    }
+
+    /**
+     * Copying from this array into itself is done within the storage, since
+     * the write lock is already held.
+     */
+    private ObservableByteArray storageOf(ObservableByteArray src) {
+        return src == this ? storage : src;
+    }
+
+    private void write(Runnable edit) {
+        lockWrite();
+        try {
+            if (writeHolds == 1 && !Platform.isFxApplicationThread()) {
+                storage.beginUpdate();
+                try {
+                    edit.run();
+                } finally {
+                    storage.endUpdate();
+                }
+            } else {
+                edit.run();
+            }
+        } finally {
+            unlockWrite();
+        }
+        deliver();
+    }
+
+    private long readLong(LongSupplier read) {
+        if (writer == Thread.currentThread()) {
+            return read.getAsLong();
+        }
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                long value = read.getAsLong();
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            } catch (RuntimeException ex) {
+                // Torn by a concurrent write, or out of bounds; the locked read tells which
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return read.getAsLong();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private <T> T read(Supplier<T> read) {
+        if (writer == Thread.currentThread()) {
+            return read.get();
+        }
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T value = read.get();
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            } catch (RuntimeException ex) {
+                // Torn by a concurrent write, or out of bounds; the locked read tells which
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return read.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Takes the write lock, or counts another hold if this thread has it.
+     */
+    private void lockWrite() {
+        if (writer == Thread.currentThread()) {
+            writeHolds++;
+            return;
+        }
+        writeStamp = lock.writeLock();
+        writer = Thread.currentThread();
+        writeHolds = 1;
+    }
+
+    private void unlockWrite() {
+        if (--writeHolds == 0) {
+            writer = null;
+            lock.unlockWrite(writeStamp);
+        }
+    }
+
+    /**
+     * Notifies the listeners of the changes made so far, right away on the
+     * FX thread and otherwise once through the delivery executor.
+     */
+    private void deliver() {
+        if (writer == Thread.currentThread()) {
+            // Still inside a transaction, which delivers when it ends
+            return;
+        }
+        if (Platform.isFxApplicationThread()) {
+            deliverPending();
+            return;
+        }
+        synchronized (pendingLock) {
+            if (deliveryScheduled || (!pending && pendingByteChanges.isEmpty() && pendingEdits.isEmpty())) {
+                return;
+            }
+            deliveryScheduled = true;
+        }
+        try {
+            delivery.execute(this::deliverPending);
+        } catch (RuntimeException | Error ex) {
+            // Not scheduled, so the next write must try again
+            synchronized (pendingLock) {
+                deliveryScheduled = false;
+            }
+            throw ex;
+        }
+    }
+
+    private void deliverPending() {
+        boolean changed;
+        boolean sizeChanged;
+        long from;
+        long to;
+        List<ByteChange> byteChanges;
+        List<DeltaState> edits;
+        synchronized (pendingLock) {
+            deliveryScheduled = false;
+            changed = pending;
+            sizeChanged = pendingSizeChanged;
+            from = pendingFrom;
+            to = pendingTo;
+            pending = false;
+            if (pendingByteChanges.isEmpty()) {
+                byteChanges = null;
+            } else {
+                byteChanges = pendingByteChanges;
+                pendingByteChanges = new ArrayList<>();
+            }
+            if (pendingEdits.isEmpty()) {
+                edits = null;
+            } else {
+                edits = pendingEdits;
+                pendingEdits = new ArrayList<>();
+            }
+        }
+        if (changed) {
+            dispatchChange(sizeChanged, from, to);
+        }
+        if (byteChanges != null) {
+            for (ByteChange change : byteChanges) {
+                dispatchByteChange(change);
+            }
+        }
+        if (edits != null) {
+            for (DeltaState edit : edits) {
+                if (edit == null) {
+                    dispatchHistoryInvalidated();
+                } else {
+                    dispatchEdit(edit);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentByteArray[" + storage + "]";
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+import javafx.application.Platform;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.layout.GridPane;
+
+import java.nio.ByteOrder;
+
+/**
+ * A side panel showing the bytes at the caret of a {@link HexArea} decoded
+ * as each primitive type, using the typed accessors of
+ * {@link ObservableByteArray}. Fixed size values use the byte order chosen
+ * in the panel; the string is modified UTF-8 after a big endian two byte
+ * length, as in class files.
+ * <p>
+ * The panel decodes again only when the caret moves or an edit touches the
+ * bytes it decoded. Call {@link #refresh()} after giving the area new data.
+ */
+public class DataInspector extends GridPane {
+    /**
+     * The most characters of the string shown
+     */
+    private static final int MAX_STRING_LENGTH = 64;
+
+    private static final String[] NAMES = {
+            "Binary", "Int8", "UInt8", "Int16", "UInt16", "Int32", "UInt32", "Int64", "UInt64",
+            "Float32", "Float64", "ULEB128", "SLEB128", "UTF-8"
+    };
+
+    private final HexArea area;
+    private final ObjectProperty<ByteOrder> byteOrder = new SimpleObjectProperty<>(ByteOrder.LITTLE_ENDIAN);
+    private final Label offset = new Label();
+    private final Label[] values = new Label[NAMES.length];
+    private ObservableByteArray data;
+    private boolean refreshPending;
+
+    /**
+     * The offset decoded, and the end of the bytes the values depend on
+     */
+    private long inspectedFrom = -1;
+    private long inspectedTo = -1;
+
+    private final LongArrayChangeListener dataListener = (array, sizeChanged, from, to) -> {
+        // A size change moves everything after it, including bytes past the old end
+        boolean touched = from < inspectedTo && (sizeChanged || to > inspectedFrom);
+        if (touched && !refreshPending) {
+            refreshPending = true;
+            Platform.runLater(this::refresh);
+        }
+    };
+
+    public DataInspector(HexArea area) {
+        this.area = area;
+        setHgap(8);
+        setVgap(2);
+
+        CheckBox littleEndian = new CheckBox("Little endian");
+        littleEndian.setSelected(true);
+        littleEndian.selectedProperty().addListener((observable, oldValue, newValue) ->
+                setByteOrder(newValue ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN));
+        byteOrder.addListener((observable, oldValue, newValue) -> {
+            littleEndian.setSelected(newValue == ByteOrder.LITTLE_ENDIAN);
+            refresh();
+        });
+        add(offset, 0, 0, 2, 1);
+        add(littleEndian, 0, 1, 2, 1);
+        for (int i = 0; i < NAMES.length; i++) {
+            values[i] = new Label();
+            values[i].setStyle("-fx-font-family: monospace;");
+            add(new Label(NAMES[i]), 0, i + 2);
+            add(values[i], 1, i + 2);
+        }
+
+        area.caretOffsetProperty().addListener((observable, oldValue, newValue) -> refresh());
+        refresh();
+    }
+
+    /**
+     * Decodes the bytes at the caret of the area again.
+     */
+    public void refresh() {
+        refreshPending = false;
+        if (data != area.getData()) {
+            if (data != null) {
+                data.removeLongListener(dataListener);
+            }
+            data = area.getData();
+            data.addLongListener(dataListener);
+        }
+
+        long caret = area.getCaretOffset();
+        long available = caret < 0 ? 0 : Math.max(0, data.sizeLong() - caret);
+        offset.setText(caret < 0 ? "" : "Offset " + ByteHelper.toOffsetString(caret));
+        inspectedFrom = caret;
+        inspectedTo = caret < 0 ? -1 : caret + Math.max(Long.BYTES, ByteHelper.MAX_LEB128_LENGTH);
+
+        ByteOrder order = getByteOrder();
+        if (available >= 1) {
+            byte value = data.get(caret);
+            values[0].setText(toBinaryString(value));
+            values[1].setText(Byte.toString(value));
+            values[2].setText(Integer.toString(value & 0xFF));
+        } else {
+            clear(0, 3);
+        }
+        if (available >= Short.BYTES) {
+            short value = data.getShort(caret, order);
+            values[3].setText(Short.toString(value));
+            values[4].setText(Integer.toString(value & 0xFFFF));
+        } else {
+            clear(3, 5);
+        }
+        if (available >= Integer.BYTES) {
+            int value = data.getInt(caret, order);
+            values[5].setText(Integer.toString(value));
+            values[6].setText(Integer.toUnsignedString(value));
+            values[9].setText(Float.toString(Float.intBitsToFloat(value)));
+        } else {
+            clear(5, 7);
+            clear(9, 10);
+        }
+        if (available >= Long.BYTES) {
+            long value = data.getLong(caret, order);
+            values[7].setText(Long.toString(value));
+            values[8].setText(Long.toUnsignedString(value));
+            values[10].setText(Double.toString(Double.longBitsToDouble(value)));
+        } else {
+            clear(7, 9);
+            clear(10, 11);
+        }
+        if (available >= 1) {
+            try {
+                int length = data.getLeb128Length(caret);
+                String suffix = length == 1 ? " (1 byte)" : " (" + length + " bytes)";
+                values[11].setText(Long.toUnsignedString(data.getUnsignedLeb128(caret)) + suffix);
+                values[12].setText(data.getSignedLeb128(caret) + suffix);
+            } catch (RuntimeException ex) {
+                clear(11, 13);
+            }
+        } else {
+            clear(11, 13);
+        }
+        values[13].setText(decodeString(caret, available));
+    }
+
+    /**
+     * @return the string after the length at {@code caret}, or an empty string if there is none
+     */
+    private String decodeString(long caret, long available) {
+        if (available < Short.BYTES) {
+            return "";
+        }
+        int length = data.getShort(caret, ByteOrder.BIG_ENDIAN) & 0xFFFF;
+        inspectedTo = Math.max(inspectedTo, caret + Short.BYTES + length);
+        if (available < Short.BYTES + length) {
+            return "";
+        }
+        String text;
+        try {
+            text = data.getModifiedUtf8(caret + Short.BYTES, length);
+        } catch (IllegalArgumentException ex) {
+            return "<malformed>";
+        }
+        return text.length() > MAX_STRING_LENGTH ? '"' + text.substring(0, MAX_STRING_LENGTH) + "\"..." : '"' + text + '"';
+    }
+
+    private void clear(int from, int to) {
+        for (int i = from; i < to; i++) {
+            values[i].setText("");
+        }
+    }
+
+    private static String toBinaryString(byte value) {
+        char[] bits = new char[8];
+        for (int i = 0; i < 8; i++) {
+            bits[i] = (value & 0x80 >>> i) != 0 ? '1' : '0';
+        }
+        return new String(bits);
+    }
+
+    /**
+     * The order of the bytes of the fixed size values, little endian by default.
+     */
+    public ByteOrder getByteOrder() {
+        return byteOrder.get();
+    }
+
+    public void setByteOrder(ByteOrder value) {
+        byteOrder.set(value);
+    }
+
+    public ObjectProperty<ByteOrder> byteOrderProperty() {
+        return byteOrder;
+    }
+}
@@ -16,34 +16,136 @@
 
 package com.heliosdecompiler.hexeditor;
 
-import javax.xml.bind.DatatypeConverter;
-
+/**
+ * A change which replaced {@code before} with {@code after} at {@code from}.
+ * {@code to} is the end, exclusive, of the range which the change touched.
+ * <p>
+ * Both sides are held as read-only views, which may share the storage of
+ * the array the change was made to through a snapshot. They are copied
+ * back into the array in chunks, so a change may be larger than a byte
+ * array.
+ */
 public class DeltaState {
-    private int from;
-    private int to;
-    private byte[] before;
-    private byte[] after;
+    /**
+     * Number of bytes copied back into the array per write
+     */
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    private long from;
+    private long to;
+    private ObservableByteArray before;
+    private ObservableByteArray after;
+
+    public DeltaState(long from, long to, byte[] before, byte[] after) {
+        this(from, to, ByteArraySnapshot.wrap(before), ByteArraySnapshot.wrap(after));
+    }
 
-    public DeltaState(int from, int to, byte[] before, byte[] after) {
+    /**
+     * @param before a read-only view of the replaced bytes
+     * @param after  a read-only view of the bytes which replaced them
+     */
+    DeltaState(long from, long to, ObservableByteArray before, ObservableByteArray after) {
         this.from = from;
         this.to = to;
         this.before = before;
         this.after = after;
     }
 
-    public int getFrom() {
+    public long getFrom() {
         return from;
     }
 
-    public int getTo() {
+    public long getTo() {
         return to;
     }
 
+    /**
+     * @return a copy of the bytes which were replaced
+     */
     public byte[] getBefore() {
-        return before;
+        return before.toArray(null);
     }
 
+    /**
+     * @return a copy of the bytes which replaced them
+     */
     public byte[] getAfter() {
-        return after;
+        return after.toArray(null);
+    }
+
+    /**
+     * @return the number of bytes held by this change
+     */
+    public long getSize() {
+        return before.sizeLong() + after.sizeLong();
+    }
+
+    /**
+     * Restores the bytes which were replaced by this change. If the change
+     * inserted or removed bytes anywhere but the end, the array must support
+     * insertion.
+     *
+     * @param data the array the change was made to
+     */
+    public void revert(ObservableByteArray data) {
+        replace(data, after, before);
+    }
+
+    /**
+     * Makes this change again after it was reverted.
+     *
+     * @param data the array the change was made to
+     */
+    public void apply(ObservableByteArray data) {
+        replace(data, before, after);
+    }
+
+    private void replace(ObservableByteArray data, ObservableByteArray current, ObservableByteArray replacement) {
+        long currentLength = current.sizeLong();
+        long length = replacement.sizeLong();
+        if (currentLength == length) {
+            copy(data, replacement, false);
+        } else if (from + currentLength == data.sizeLong()) {
+            // Appends and truncations only need the array to shrink or grow
+            data.beginUpdate();
+            try {
+                data.resize(from + length);
+                copy(data, replacement, false);
+            } finally {
+                data.endUpdate();
+            }
+        } else {
+            data.remove(from, from + currentLength);
+            copy(data, replacement, true);
+        }
+    }
+
+    /**
+     * Writes or inserts {@code src} at {@code from}, one chunk at a time in
+     * a single transaction when it doesn't fit in one.
+     */
+    private void copy(ObservableByteArray data, ObservableByteArray src, boolean insert) {
+        long length = src.sizeLong();
+        byte[] buffer = new byte[(int) Math.min(length, CHUNK_SIZE)];
+        boolean chunked = length > buffer.length;
+        if (chunked) {
+            data.beginUpdate();
+        }
+        try {
+            for (long position = 0; position < length; ) {
+                int count = (int) Math.min(buffer.length, length - position);
+                src.copyTo(position, buffer, 0, count);
+                if (insert) {
+                    data.insert(from + position, buffer, 0, count);
+                } else {
+                    data.set(from + position, buffer, 0, count);
+                }
+                position += count;
+            }
+        } finally {
+            if (chunked) {
+                data.endUpdate();
+            }
+        }
     }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+/**
+ * A region where two arrays differ: {@code [originalFrom, originalTo)} of
+ * the original was replaced by {@code [revisedFrom, revisedTo)} of the
+ * revision. Either side may be empty.
+ */
+public class DiffRange {
+    public enum Type {
+        /**
+         * Bytes were replaced by other bytes
+         */
+        CHANGED,
+        /**
+         * Bytes were added to the revision
+         */
+        INSERTED,
+        /**
+         * Bytes of the original were removed
+         */
+        DELETED
+    }
+
+    private final long originalFrom;
+    private final long originalTo;
+    private final long revisedFrom;
+    private final long revisedTo;
+
+    public DiffRange(long originalFrom, long originalTo, long revisedFrom, long revisedTo) {
+        this.originalFrom = originalFrom;
+        this.originalTo = originalTo;
+        this.revisedFrom = revisedFrom;
+        this.revisedTo = revisedTo;
+    }
+
+    public long getOriginalFrom() {
+        return originalFrom;
+    }
+
+    public long getOriginalTo() {
+        return originalTo;
+    }
+
+    public long getRevisedFrom() {
+        return revisedFrom;
+    }
+
+    public long getRevisedTo() {
+        return revisedTo;
+    }
+
+    public Type getType() {
+        if (originalFrom == originalTo) {
+            return Type.INSERTED;
+        }
+        return revisedFrom == revisedTo ? Type.DELETED : Type.CHANGED;
+    }
+
+    @Override
+    public String toString() {
+        return getType() + " [" + Long.toHexString(originalFrom) + ", " + Long.toHexString(originalTo) + ") -> ["
+                + Long.toHexString(revisedFrom) + ", " + Long.toHexString(revisedTo) + ")";
+    }
+}
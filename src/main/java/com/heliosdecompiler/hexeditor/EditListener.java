@@ -0,0 +1,48 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+/**
+ * Receives one {@link DeltaState} describing everything an update
+ * transaction changed, once the transaction commits.
+ *
+ * @see ObservableByteArray#beginUpdate()
+ * @see ObservableByteArray#addEditListener(EditListener)
+ */
+@FunctionalInterface
+public interface EditListener {
+
+    /**
+     * Called after an update transaction on {@code array} has committed and
+     * its change notification has been delivered.
+     *
+     * @param array the array which was edited
+     * @param edit  the edit, which can be reverted and reapplied as a whole
+     */
+    void onEdit(ObservableByteArray array, DeltaState edit);
+
+    /**
+     * Called instead of {@link #onEdit} when an update transaction on
+     * {@code array} changed more bytes than can be captured. The transaction
+     * can't be undone, and edits recorded before it no longer describe the
+     * content, so a history of them must be discarded.
+     *
+     * @param array the array which was edited
+     */
+    default void onHistoryInvalidated(ObservableByteArray array) {
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for the paths which run on the FX thread
+ * while editing: change dispatch, grid row fills and grid resizes. The
+ * metrics are shared by every array and area in the JVM and are published
+ * as a platform MXBean the first time they are used.
+ */
+public class EditorMetrics implements EditorMetricsMXBean {
+    public static final String OBJECT_NAME = "com.heliosdecompiler.hexeditor:type=EditorMetrics";
+
+    private static final EditorMetrics INSTANCE = new EditorMetrics();
+
+    static {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException | SecurityException ignored) {
+            // Metrics are still collected, just not published
+        }
+    }
+
+    private final LongAdder changeEvents = new LongAdder();
+    private final LongAdder cellsUpdated = new LongAdder();
+    private final LongAdder asciiRowsRebuilt = new LongAdder();
+    private final AtomicLong undoHistoryBytes = new AtomicLong();
+    private final LatencyHistogram listenerDispatch = new LatencyHistogram();
+    private final LatencyHistogram gridResize = new LatencyHistogram();
+
+    private EditorMetrics() {
+    }
+
+    public static EditorMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    void changeDispatched(long nanos) {
+        changeEvents.increment();
+        listenerDispatch.record(nanos);
+    }
+
+    void rowFilled(int cells) {
+        cellsUpdated.add(cells);
+        asciiRowsRebuilt.increment();
+    }
+
+    void gridResized(long nanos) {
+        gridResize.record(nanos);
+    }
+
+    void undoHistoryChanged(long delta) {
+        undoHistoryBytes.addAndGet(delta);
+    }
+
+    public LatencyHistogram getListenerDispatch() {
+        return listenerDispatch;
+    }
+
+    public LatencyHistogram getGridResize() {
+        return gridResize;
+    }
+
+    @Override
+    public long getChangeEvents() {
+        return changeEvents.sum();
+    }
+
+    @Override
+    public long getCellsUpdated() {
+        return cellsUpdated.sum();
+    }
+
+    @Override
+    public long getAsciiRowsRebuilt() {
+        return asciiRowsRebuilt.sum();
+    }
+
+    @Override
+    public long getUndoHistoryBytes() {
+        return undoHistoryBytes.get();
+    }
+
+    @Override
+    public long getListenerDispatchCount() {
+        return listenerDispatch.getCount();
+    }
+
+    @Override
+    public long getListenerDispatchMeanNanos() {
+        return listenerDispatch.getMeanNanos();
+    }
+
+    @Override
+    public long getListenerDispatchP99Nanos() {
+        return listenerDispatch.getPercentileNanos(99);
+    }
+
+    @Override
+    public long getListenerDispatchMaxNanos() {
+        return listenerDispatch.getMaxNanos();
+    }
+
+    @Override
+    public long[] getListenerDispatchHistogram() {
+        return listenerDispatch.getBuckets();
+    }
+
+    @Override
+    public long getGridResizeCount() {
+        return gridResize.getCount();
+    }
+
+    @Override
+    public long getGridResizeMeanNanos() {
+        return gridResize.getMeanNanos();
+    }
+
+    @Override
+    public long getGridResizeP99Nanos() {
+        return gridResize.getPercentileNanos(99);
+    }
+
+    @Override
+    public long getGridResizeMaxNanos() {
+        return gridResize.getMaxNanos();
+    }
+
+    @Override
+    public long[] getGridResizeHistogram() {
+        return gridResize.getBuckets();
+    }
+
+    @Override
+    public void reset() {
+        changeEvents.reset();
+        cellsUpdated.reset();
+        asciiRowsRebuilt.reset();
+        listenerDispatch.reset();
+        gridResize.reset();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+/**
+ * The management interface of {@link EditorMetrics}, registered as
+ * {@value EditorMetrics#OBJECT_NAME}. Durations are in nanoseconds.
+ */
+public interface EditorMetricsMXBean {
+    /**
+     * @return the number of change notifications dispatched by all arrays
+     */
+    long getChangeEvents();
+
+    /**
+     * @return the number of byte cells written while filling grid rows
+     */
+    long getCellsUpdated();
+
+    /**
+     * @return the number of ASCII column strings built while filling grid rows
+     */
+    long getAsciiRowsRebuilt();
+
+    /**
+     * @return the bytes held by the undo history of every open area
+     */
+    long getUndoHistoryBytes();
+
+    long getListenerDispatchCount();
+
+    long getListenerDispatchMeanNanos();
+
+    long getListenerDispatchP99Nanos();
+
+    long getListenerDispatchMaxNanos();
+
+    long[] getListenerDispatchHistogram();
+
+    long getGridResizeCount();
+
+    long getGridResizeMeanNanos();
+
+    long getGridResizeP99Nanos();
+
+    long getGridResizeMaxNanos();
+
+    long[] getGridResizeHistogram();
+
+    /**
+     * Clears the counters and histograms. The undo history gauge is kept.
+     */
+    void reset();
+}
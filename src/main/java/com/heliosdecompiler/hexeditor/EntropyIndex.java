@@ -0,0 +1,231 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Keeps the byte histogram and Shannon entropy of an
+ * {@link ObservableByteArray} up to date as it is edited, rescanning only
+ * the blocks which changed.
+ * <p>
+ * The array is split into fixed size blocks. The histogram of every block is
+ * kept, and the histogram of the whole array is their sum, so after an edit
+ * the touched blocks are counted again and their old counts are swapped for
+ * the new ones. Dirty blocks are split between the workers of the
+ * fork-join pool, and as in every {@link BlockIndex}, counts read from a
+ * block which changed meanwhile are thrown away.
+ */
+public class EntropyIndex extends BlockIndex<int[], long[]> {
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * The most blocks {@link #blockSizeFor(long)} splits an array into
+     */
+    public static final int MAX_BLOCKS = 16 * 1024;
+
+    /**
+     * The last counted histogram and entropy of each block. The histogram is
+     * null and the entropy NaN until the block is counted for the first time.
+     */
+    private int[][] histograms = new int[0][];
+    private float[] entropies = new float[0];
+
+    /**
+     * The sum of {@link #histograms}
+     */
+    private final long[] totals = new long[256];
+
+    /**
+     * Creates an index with {@link #DEFAULT_BLOCK_SIZE} blocks, counted on
+     * the common fork-join pool.
+     */
+    public EntropyIndex(ObservableByteArray data) {
+        this(data, DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an index and starts counting the array in the background.
+     *
+     * @param data      the array to analyze
+     * @param blockSize the number of bytes in each block
+     * @param pool      counts the blocks
+     */
+    public EntropyIndex(ObservableByteArray data, int blockSize, ForkJoinPool pool) {
+        super(data, blockSize, pool);
+        start();
+    }
+
+    /**
+     * @param size the size of an array
+     * @return the smallest power of two block size, at least 1 KiB, which
+     * splits {@code size} bytes into at most {@link #MAX_BLOCKS} blocks
+     */
+    public static int blockSizeFor(long size) {
+        int blockSize = 1024;
+        while (blockSize < (1 << 30) && (size + blockSize - 1) / blockSize > MAX_BLOCKS) {
+            blockSize <<= 1;
+        }
+        return blockSize;
+    }
+
+    /**
+     * @return a future completed with the number of times each byte value
+     * occurs in the array, once every dirty block has been counted
+     */
+    public CompletableFuture<long[]> histogram() {
+        return await().thenApply(long[]::clone);
+    }
+
+    /**
+     * Waits for the index to catch up and returns the histogram of the array.
+     *
+     * @return the number of times each byte value occurs, by unsigned value
+     */
+    public long[] getHistogram() {
+        return histogram().join();
+    }
+
+    /**
+     * Waits for the index to catch up and returns the entropy of the array.
+     *
+     * @return the Shannon entropy in bits per byte, from 0 to 8
+     */
+    public double getEntropy() {
+        return entropy(getHistogram());
+    }
+
+    /**
+     * @param block a block of the array
+     * @return the entropy of the block in bits per byte, as last counted.
+     * It is stale while the block is dirty, and NaN if the block hasn't been
+     * counted yet.
+     */
+    public synchronized float getEntropy(int block) {
+        int blockCount = getBlockCount();
+        if (block < 0 || block >= blockCount) {
+            throw new IndexOutOfBoundsException("Block " + block + " out of bounds for " + blockCount + " blocks");
+        }
+        return entropies[block];
+    }
+
+    /**
+     * @return the entropy of every block, see {@link #getEntropy(int)}
+     */
+    public synchronized float[] getEntropies() {
+        return Arrays.copyOf(entropies, getBlockCount());
+    }
+
+    /**
+     * @param offset an offset into the array
+     * @return the block containing {@code offset}
+     */
+    public int blockOf(long offset) {
+        return (int) (offset / getBlockSize());
+    }
+
+    /**
+     * @param histogram the number of times each byte value occurs
+     * @return the Shannon entropy of the bytes counted in bits per byte, or 0
+     * if there are none
+     */
+    public static double entropy(long[] histogram) {
+        long total = 0;
+        double sum = 0;
+        for (long count : histogram) {
+            if (count > 0) {
+                total += count;
+                sum += count * Math.log(count);
+            }
+        }
+        if (total == 0) {
+            return 0;
+        }
+        // -sum(p log p) with p = count / total, in bits
+        return Math.max(0, (Math.log(total) - sum / total) / Math.log(2));
+    }
+
+    private static float entropy(int[] histogram) {
+        long total = 0;
+        double sum = 0;
+        for (int count : histogram) {
+            if (count > 0) {
+                total += count;
+                sum += count * Math.log(count);
+            }
+        }
+        if (total == 0) {
+            return 0;
+        }
+        return (float) Math.max(0, (Math.log(total) - sum / total) / Math.log(2));
+    }
+
+    /**
+     * Keeps the counts of the blocks which still exist.
+     */
+    @Override
+    protected void resized(long newSize, int oldCount, int newCount) {
+        for (int block = newCount; block < oldCount; block++) {
+            subtract(histograms[block]);
+            histograms[block] = null;
+        }
+        if (histograms.length < newCount) {
+            int capacity = Math.max(newCount, histograms.length * 2);
+            histograms = Arrays.copyOf(histograms, capacity);
+            entropies = Arrays.copyOf(entropies, capacity);
+        }
+        if (newCount > oldCount) {
+            Arrays.fill(entropies, oldCount, newCount, Float.NaN);
+        }
+    }
+
+    @Override
+    protected BlockFunction<int[]> newFunction() {
+        return (bytes, length) -> {
+            int[] histogram = new int[256];
+            for (int i = 0; i < length; i++) {
+                histogram[bytes[i] & 0xFF]++;
+            }
+            return histogram;
+        };
+    }
+
+    @Override
+    protected void update(int block, int[] histogram) {
+        subtract(histograms[block]);
+        for (int value = 0; value < 256; value++) {
+            totals[value] += histogram[value];
+        }
+        histograms[block] = histogram;
+        entropies[block] = entropy(histogram);
+    }
+
+    @Override
+    protected long[] current() {
+        return totals.clone();
+    }
+
+    private void subtract(int[] histogram) {
+        if (histogram != null) {
+            for (int value = 0; value < 256; value++) {
+                totals[value] -= histogram[value];
+            }
+        }
+    }
+}
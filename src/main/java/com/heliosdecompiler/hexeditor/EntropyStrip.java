@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+
+/**
+ * A narrow vertical strip showing the {@link EntropyIndex} of a
+ * {@link HexArea}, meant to be placed next to it. The top of the strip is the
+ * start of the data and the bottom is the end; blocks are colored from dark
+ * blue for low entropy, like padding or tables, to red for compressed or
+ * encrypted data. Clicking or dragging scrolls the area to that part of the
+ * data.
+ * <p>
+ * The strip repaints once the index has counted the blocks an edit touched.
+ * Call {@link #refresh()} after giving the area new data.
+ */
+public class EntropyStrip extends Region {
+    public static final double DEFAULT_WIDTH = 16;
+
+    private static final Color UNKNOWN = Color.LIGHTGRAY;
+
+    private final HexArea area;
+    private final Canvas canvas = new Canvas();
+    private ObservableByteArray data;
+    private EntropyIndex index;
+    private boolean refreshPending;
+
+    private final LongArrayChangeListener dataListener = (array, sizeChanged, from, to) -> {
+        if (!refreshPending) {
+            refreshPending = true;
+            Platform.runLater(this::refresh);
+        }
+    };
+
+    public EntropyStrip(HexArea area) {
+        this.area = area;
+        getChildren().add(canvas);
+        setPrefWidth(DEFAULT_WIDTH);
+        setMinWidth(DEFAULT_WIDTH);
+        addEventHandler(MouseEvent.MOUSE_PRESSED, this::navigate);
+        addEventHandler(MouseEvent.MOUSE_DRAGGED, this::navigate);
+        refresh();
+    }
+
+    /**
+     * Repaints the strip once the index of the area has caught up with the
+     * current data.
+     */
+    public void refresh() {
+        refreshPending = false;
+        if (data != area.getData()) {
+            if (data != null) {
+                data.removeLongListener(dataListener);
+            }
+            data = area.getData();
+            data.addLongListener(dataListener);
+        }
+        EntropyIndex current = area.getEntropyIndex();
+        index = current;
+        requestLayout();
+        current.histogram().whenComplete((histogram, failure) -> Platform.runLater(() -> {
+            if (index == current) {
+                paint();
+            }
+        }));
+    }
+
+    /**
+     * @return the offset of the data shown at {@code y}
+     */
+    private long offsetAt(double y) {
+        long size = data.sizeLong();
+        double height = getHeight() - snappedTopInset() - snappedBottomInset();
+        double fraction = (y - snappedTopInset()) / height;
+        return Math.max(0, Math.min(size - 1, (long) (fraction * size)));
+    }
+
+    private void navigate(MouseEvent event) {
+        if (event.isPrimaryButtonDown() && data.sizeLong() > 0) {
+            area.scrollToOffset(offsetAt(event.getY()));
+        }
+    }
+
+    @Override
+    protected void layoutChildren() {
+        double width = getWidth() - snappedLeftInset() - snappedRightInset();
+        double height = getHeight() - snappedTopInset() - snappedBottomInset();
+        canvas.relocate(snappedLeftInset(), snappedTopInset());
+        canvas.setWidth(Math.max(0, width));
+        canvas.setHeight(Math.max(0, height));
+        paint();
+    }
+
+    private void paint() {
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        double width = canvas.getWidth();
+        int rows = (int) canvas.getHeight();
+        g.clearRect(0, 0, width, canvas.getHeight());
+        if (rows <= 0 || index == null) {
+            return;
+        }
+
+        float[] entropies = index.getEntropies();
+        int blocks = entropies.length;
+        for (int y = 0; y < rows; y++) {
+            // A pixel row shows the highest entropy of the blocks under it, so short bursts stay visible
+            int first = (int) ((long) blocks * y / rows);
+            int last = Math.max(first + 1, (int) ((long) blocks * (y + 1) / rows));
+            float value = Float.NaN;
+            for (int block = first; block < last; block++) {
+                float entropy = entropies[block];
+                if (!Float.isNaN(entropy) && (Float.isNaN(value) || entropy > value)) {
+                    value = entropy;
+                }
+            }
+            g.setFill(colorOf(value));
+            g.fillRect(0, y, width, 1);
+        }
+    }
+
+    /**
+     * @param entropy bits per byte, from 0 to 8, or NaN if unknown
+     */
+    private static Color colorOf(float entropy) {
+        if (Float.isNaN(entropy)) {
+            return UNKNOWN;
+        }
+        double fraction = Math.max(0, Math.min(1, entropy / 8));
+        return Color.hsb(240 * (1 - fraction), 0.9, 0.35 + 0.65 * fraction);
+    }
+}
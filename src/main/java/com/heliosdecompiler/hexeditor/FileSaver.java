@@ -0,0 +1,226 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * Saves an {@link ObservableByteArray} back to the file it was loaded from,
+ * writing only what changed.
+ * <p>
+ * The saver listens to the array and records the ranges which were
+ * modified since the last save. It records the range of every single
+ * change, so a transaction touching two distant bytes dirties just those
+ * two bytes rather than everything between them. As long as the size of the array never
+ * changed, saving writes just those ranges into the file with positional
+ * writes. Once bytes were inserted, removed or the array was resized, the
+ * content after the edit has moved, so the whole array is streamed to a
+ * temporary file next to the target which then replaces it atomically.
+ * <p>
+ * A {@link PieceTableByteArray} reads its unmodified bytes from the file,
+ * and so do its snapshots. While one of them may still be read, the file
+ * is replaced the same way rather than written in place, so that the
+ * snapshot keeps the content it was taken with.
+ */
+public class FileSaver implements Closeable {
+    /**
+     * Number of bytes copied out of the array per write
+     */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final ObservableByteArray data;
+    private final Path path;
+    private final RangeSet dirty = new RangeSet();
+    private final ByteChangeListener listener = new ByteChangeListener() {
+        @Override
+        public void onChanged(ObservableByteArray array, ByteChange change) {
+            FileSaver.this.onChanged(change);
+        }
+
+        @Override
+        public boolean needsBytes() {
+            return false;
+        }
+    };
+
+    /**
+     * Whether the content may have moved since the last save, so that the
+     * dirty ranges don't describe the difference to the file any more
+     */
+    private boolean sizeChanged;
+
+    /**
+     * Starts tracking changes to {@code data}, which must currently hold the
+     * content of {@code path}.
+     *
+     * @param data the array to save
+     * @param path the file the array was loaded from
+     */
+    public FileSaver(ObservableByteArray data, Path path) {
+        this.data = data;
+        this.path = path;
+        data.addByteChangeListener(listener);
+    }
+
+    private synchronized void onChanged(ByteChange change) {
+        if (change.isResizing()) {
+            sizeChanged = true;
+        }
+        if (!sizeChanged && change.getAddedLength() > 0) {
+            dirty.add(change.getFrom(), change.getFrom() + change.getAddedLength());
+        }
+    }
+
+    public ObservableByteArray getData() {
+        return data;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return whether the array was modified since it was loaded or saved
+     */
+    public synchronized boolean isModified() {
+        return sizeChanged || !dirty.isEmpty();
+    }
+
+    /**
+     * @return whether the next save can write the dirty ranges in place
+     */
+    public synchronized boolean canSaveInPlace() {
+        return !sizeChanged && !isFileShared();
+    }
+
+    /**
+     * @return a copy of the ranges modified since the last save. Meaningless
+     * once the size of the array changed.
+     */
+    public synchronized RangeSet getDirtyRanges() {
+        return new RangeSet(dirty);
+    }
+
+    /**
+     * Writes the changes to the file.
+     *
+     * @param sync whether to force the written data to the storage device
+     *             before returning
+     * @throws IOException if the file couldn't be written
+     */
+    public synchronized void save(boolean sync) throws IOException {
+        if (!isModified()) {
+            return;
+        }
+        if (!sizeChanged && !isFileShared() && Files.size(path) == data.sizeLong()) {
+            writeInPlace(sync);
+        } else {
+            writeAtomically(path, sync);
+        }
+        dirty.clear();
+        sizeChanged = false;
+    }
+
+    /**
+     * Writes the whole array to another file, through a temporary file which
+     * replaces {@code target} once it is complete. The array is still saved
+     * to {@link #getPath()} afterwards.
+     *
+     * @param target the file to write
+     * @param sync   whether to force the written data to the storage device
+     * @throws IOException if the file couldn't be written
+     */
+    public synchronized void saveAs(Path target, boolean sync) throws IOException {
+        writeAtomically(target, sync);
+    }
+
+    /**
+     * Stops tracking the array.
+     */
+    @Override
+    public void close() {
+        data.removeByteChangeListener(listener);
+    }
+
+    /**
+     * @return whether something other than the array itself may read the
+     * file, so it mustn't be written in place
+     */
+    private boolean isFileShared() {
+        return data instanceof PieceTableByteArray && ((PieceTableByteArray) data).isOriginalShared();
+    }
+
+    private void writeInPlace(boolean sync) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, dirty.getLength()));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            for (Map.Entry<Long, Long> range : dirty.getRanges().entrySet()) {
+                for (long position = range.getKey(); position < range.getValue(); ) {
+                    int length = (int) Math.min(buffer.capacity(), range.getValue() - position);
+                    data.copyTo(position, buffer.array(), 0, length);
+                    buffer.clear().limit(length);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer, position + buffer.position());
+                    }
+                    position += length;
+                }
+            }
+            if (sync) {
+                channel.force(false);
+            }
+        }
+    }
+
+    private void writeAtomically(Path target, boolean sync) throws IOException {
+        Path directory = target.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(1, data.sizeLong())));
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long size = data.sizeLong();
+                for (long position = 0; position < size; ) {
+                    int length = (int) Math.min(buffer.capacity(), size - position);
+                    data.copyTo(position, buffer.array(), 0, length);
+                    buffer.clear().limit(length);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    position += length;
+                }
+                if (sync) {
+                    channel.force(true);
+                }
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+/**
+ * Flight Recorder events for work done on the FX thread. Each event has a
+ * 10 ms threshold by default, so a recording only contains the operations
+ * which were long enough to make the editor stutter.
+ * <p>
+ * The events are defined by {@code JfrRecorder} in the optional
+ * {@code src/jfr/java} source set, which the {@code jfr} profile compiles
+ * on JDKs with {@code jdk.jfr}. It is loaded reflectively, so a build
+ * without it, or a JRE without Flight Recorder, simply records nothing.
+ * Callers hold the events as plain objects, null unless the event is
+ * enabled, and pass them back to end them.
+ */
+final class FlightRecorderEvents {
+    private static final Recorder RECORDER = load();
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * Starts and ends the events. Each begin method returns null without
+     * allocating anything when its event isn't enabled.
+     */
+    interface Recorder {
+        Object beginChangeDispatch();
+
+        void endChangeDispatch(Object started, ObservableByteArray array, boolean sizeChanged, long from, long to);
+
+        Object beginGridResize();
+
+        void endGridResize(Object started, int oldRows, int newRows);
+
+        Object beginLoadBatch();
+
+        void endLoadBatch(Object started, Object path, long offset, int length);
+    }
+
+    private static Recorder load() {
+        try {
+            ClassLoader loader = FlightRecorderEvents.class.getClassLoader();
+            Class.forName("jdk.jfr.Event", false, loader);
+            return (Recorder) Class.forName("com.heliosdecompiler.hexeditor.JfrRecorder", true, loader).newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return a started change dispatch event, or null if it isn't recorded
+     */
+    static Object beginChangeDispatch() {
+        return RECORDER == null ? null : RECORDER.beginChangeDispatch();
+    }
+
+    static void endChangeDispatch(Object started, ObservableByteArray array, boolean sizeChanged, long from, long to) {
+        if (started != null) {
+            RECORDER.endChangeDispatch(started, array, sizeChanged, from, to);
+        }
+    }
+
+    static Object beginGridResize() {
+        return RECORDER == null ? null : RECORDER.beginGridResize();
+    }
+
+    static void endGridResize(Object started, int oldRows, int newRows) {
+        if (started != null) {
+            RECORDER.endGridResize(started, oldRows, newRows);
+        }
+    }
+
+    static Object beginLoadBatch() {
+        return RECORDER == null ? null : RECORDER.beginLoadBatch();
+    }
+
+    static void endLoadBatch(Object started, Object path, long offset, int length) {
+        if (started != null) {
+            RECORDER.endLoadBatch(started, path, offset, length);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+import javafx.geometry.Bounds;
+import javafx.geometry.VPos;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+/**
+ * The glyphs of the 256 Latin-1 characters in a monospaced font, rendered
+ * once into an image. Drawing a glyph copies a cell of the image, which
+ * avoids laying out text for every byte painted.
+ * <p>
+ * Must be created on the FX thread.
+ */
+final class GlyphAtlas {
+    private final Image image;
+    private final double glyphWidth;
+    private final double glyphHeight;
+
+    GlyphAtlas(Font font, Color color) {
+        Text sample = new Text("W");
+        sample.setFont(font);
+        Bounds bounds = sample.getLayoutBounds();
+        glyphWidth = Math.ceil(bounds.getWidth());
+        glyphHeight = Math.ceil(bounds.getHeight());
+
+        Canvas canvas = new Canvas(glyphWidth * 256, glyphHeight);
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.setFont(font);
+        g.setFill(color);
+        g.setTextBaseline(VPos.TOP);
+        for (int chr = 0x20; chr < 256; chr++) {
+            if (!Character.isISOControl(chr)) {
+                g.fillText(String.valueOf((char) chr), chr * glyphWidth, 0);
+            }
+        }
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        image = canvas.snapshot(parameters, null);
+    }
+
+    double getGlyphWidth() {
+        return glyphWidth;
+    }
+
+    double getGlyphHeight() {
+        return glyphHeight;
+    }
+
+    /**
+     * Draws {@code chr} with its top left corner at {@code (x, y)}.
+     * Characters outside of Latin-1 are drawn as blanks.
+     */
+    void draw(GraphicsContext g, char chr, double x, double y) {
+        if (chr > 0xFF) {
+            return;
+        }
+        g.drawImage(image, chr * glyphWidth, 0, glyphWidth, glyphHeight, x, y, glyphWidth, glyphHeight);
+    }
+}
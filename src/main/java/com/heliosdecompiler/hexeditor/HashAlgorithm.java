@@ -0,0 +1,41 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+/**
+ * The checksums a {@link HashIndex} can maintain.
+ */
+public enum HashAlgorithm {
+    CRC32(null),
+    MD5("MD5"),
+    SHA_256("SHA-256");
+
+    private final String digestName;
+
+    HashAlgorithm(String digestName) {
+        this.digestName = digestName;
+    }
+
+    /**
+     * @return the {@link java.security.MessageDigest} algorithm name, or
+     * null for CRC32, which isn't a message digest
+     */
+    public String getDigestName() {
+        return digestName;
+    }
+}
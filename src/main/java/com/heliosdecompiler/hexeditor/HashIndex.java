@@ -0,0 +1,338 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps checksums of an {@link ObservableByteArray} up to date as it is
+ * edited, rehashing only the chunks which changed.
+ * <p>
+ * The array is split into fixed size chunks which are hashed on background
+ * threads and combined in a binary Merkle tree. A change marks the chunks it
+ * touched as dirty, so after an edit only those chunks and their path to the
+ * root are recomputed.
+ * <p>
+ * The CRC32 root is combined with the CRC32 combination algorithm from zlib,
+ * so it equals the CRC32 of the whole array. A message digest can't be
+ * combined that way: the MD5 and SHA-256 roots are tree hashes, where a leaf
+ * is {@code H(0x00 || chunk)} and a node is {@code H(0x01 || left || right)}.
+ * They identify the content just as well, but don't equal the digest of the
+ * whole array and depend on the chunk size.
+ * <p>
+ * The chunks are scheduled as the blocks of a {@link BlockIndex}, so a
+ * digest read from a chunk which changed meanwhile is thrown away and
+ * recomputed.
+ */
+public class HashIndex extends BlockIndex<byte[][], byte[][]> {
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private final HashAlgorithm[] algorithms;
+
+    /**
+     * Digests by algorithm, level and index. Level 0 holds the chunk
+     * digests, and the last level holds the root.
+     */
+    private byte[][][][] nodes;
+    private BitSet[] dirtyNodes;
+
+    /**
+     * Creates an index with {@link #DEFAULT_CHUNK_SIZE} chunks, hashed on the
+     * common fork-join pool.
+     */
+    public HashIndex(ObservableByteArray data, HashAlgorithm... algorithms) {
+        this(data, DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool(), algorithms);
+    }
+
+    /**
+     * Creates an index and starts hashing the array in the background.
+     *
+     * @param data       the array to hash
+     * @param chunkSize  the number of bytes in each leaf of the tree
+     * @param executor   runs the hashing
+     * @param algorithms the checksums to maintain
+     */
+    public HashIndex(ObservableByteArray data, int chunkSize, Executor executor, HashAlgorithm... algorithms) {
+        super(data, chunkSize, executor);
+        if (algorithms.length == 0) {
+            throw new IllegalArgumentException("No algorithms");
+        }
+        this.algorithms = algorithms.clone();
+        for (HashAlgorithm algorithm : algorithms) {
+            if (algorithm.getDigestName() != null) {
+                newDigest(algorithm);
+            }
+        }
+        start();
+    }
+
+    /**
+     * @param algorithm one of the algorithms this index was created with
+     * @return a future completed with the root digest once every dirty chunk
+     * has been rehashed. For CRC32 the digest is the big endian checksum.
+     */
+    public CompletableFuture<byte[]> digest(HashAlgorithm algorithm) {
+        int index = indexOf(algorithm);
+        return await().thenApply(digests -> digests[index].clone());
+    }
+
+    /**
+     * Waits for the index to catch up and returns the root digest.
+     *
+     * @param algorithm one of the algorithms this index was created with
+     * @return the root digest
+     */
+    public byte[] getDigest(HashAlgorithm algorithm) {
+        return digest(algorithm).join();
+    }
+
+    public int getDirtyChunkCount() {
+        return getDirtyBlockCount();
+    }
+
+    public int getChunkCount() {
+        return getBlockCount();
+    }
+
+    public int getChunkSize() {
+        return getBlockSize();
+    }
+
+    /**
+     * Resizes the tree, keeping the digests of the chunks which still exist.
+     */
+    @Override
+    protected void resized(long newSize, int oldCount, int newCount) {
+        List<Integer> levels = new ArrayList<>();
+        for (int n = newCount; ; n = (n + 1) / 2) {
+            levels.add(n);
+            if (n == 1) {
+                break;
+            }
+        }
+        byte[][][][] resized = new byte[algorithms.length][levels.size()][][];
+        for (int a = 0; a < algorithms.length; a++) {
+            for (int level = 0; level < levels.size(); level++) {
+                resized[a][level] = new byte[levels.get(level)][];
+            }
+            if (nodes != null) {
+                byte[][] leaves = nodes[a][0];
+                System.arraycopy(leaves, 0, resized[a][0], 0, Math.min(leaves.length, newCount));
+            }
+        }
+        nodes = resized;
+        dirtyNodes = new BitSet[levels.size()];
+        for (int level = 1; level < levels.size(); level++) {
+            dirtyNodes[level] = new BitSet();
+            dirtyNodes[level].set(0, levels.get(level));
+        }
+    }
+
+    @Override
+    protected BlockFunction<byte[][]> newFunction() {
+        MessageDigest[] digests = new MessageDigest[algorithms.length];
+        for (int a = 0; a < algorithms.length; a++) {
+            if (algorithms[a].getDigestName() != null) {
+                digests[a] = newDigest(algorithms[a]);
+            }
+        }
+        CRC32 crc = new CRC32();
+        return (bytes, length) -> {
+            byte[][] chunkDigests = new byte[algorithms.length][];
+            for (int a = 0; a < algorithms.length; a++) {
+                if (digests[a] == null) {
+                    crc.reset();
+                    crc.update(bytes, 0, length);
+                    chunkDigests[a] = toBytes((int) crc.getValue());
+                } else {
+                    digests[a].update((byte) 0);
+                    digests[a].update(bytes, 0, length);
+                    chunkDigests[a] = digests[a].digest();
+                }
+            }
+            return chunkDigests;
+        };
+    }
+
+    @Override
+    protected void update(int chunk, byte[][] digests) {
+        for (int a = 0; a < algorithms.length; a++) {
+            nodes[a][0][chunk] = digests[a];
+        }
+        if (dirtyNodes.length > 1) {
+            dirtyNodes[1].set(chunk >> 1);
+        }
+    }
+
+    /**
+     * Recomputes the dirty nodes above the leaves.
+     *
+     * @return the root digest of every algorithm
+     */
+    @Override
+    protected byte[][] current() {
+        for (int level = 1; level + 1 < dirtyNodes.length; level++) {
+            BitSet dirtyLevel = dirtyNodes[level];
+            for (int i = dirtyLevel.nextSetBit(0); i >= 0; i = dirtyLevel.nextSetBit(i + 1)) {
+                dirtyNodes[level + 1].set(i >> 1);
+            }
+        }
+        for (int a = 0; a < algorithms.length; a++) {
+            MessageDigest digest = algorithms[a].getDigestName() == null ? null : newDigest(algorithms[a]);
+            byte[][][] levels = nodes[a];
+            for (int level = 1; level < levels.length; level++) {
+                byte[][] children = levels[level - 1];
+                BitSet dirtyLevel = dirtyNodes[level];
+                for (int i = dirtyLevel.nextSetBit(0); i >= 0; i = dirtyLevel.nextSetBit(i + 1)) {
+                    byte[] left = children[2 * i];
+                    if (2 * i + 1 >= children.length) {
+                        // An odd node out is promoted unchanged
+                        levels[level][i] = left;
+                    } else if (digest == null) {
+                        int crc = combineCrc32(fromBytes(left), fromBytes(children[2 * i + 1]), lengthOf(level - 1, 2 * i + 1));
+                        levels[level][i] = toBytes(crc);
+                    } else {
+                        digest.update((byte) 1);
+                        digest.update(left);
+                        digest.update(children[2 * i + 1]);
+                        levels[level][i] = digest.digest();
+                    }
+                }
+            }
+        }
+        for (int level = 1; level < dirtyNodes.length; level++) {
+            dirtyNodes[level].clear();
+        }
+        return roots();
+    }
+
+    private byte[][] roots() {
+        byte[][] roots = new byte[algorithms.length][];
+        for (int a = 0; a < algorithms.length; a++) {
+            byte[][][] levels = nodes[a];
+            roots[a] = levels[levels.length - 1][0];
+        }
+        return roots;
+    }
+
+    /**
+     * @return the number of bytes covered by node {@code index} of {@code level}
+     */
+    private long lengthOf(int level, int index) {
+        int chunkSize = getBlockSize();
+        long firstChunk = (long) index << level;
+        long endChunk = Math.min((long) (index + 1) << level, getBlockCount());
+        return Math.min(endChunk * chunkSize, getKnownSize()) - firstChunk * chunkSize;
+    }
+
+    private int indexOf(HashAlgorithm algorithm) {
+        for (int a = 0; a < algorithms.length; a++) {
+            if (algorithms[a] == algorithm) {
+                return a;
+            }
+        }
+        throw new IllegalArgumentException("Index doesn't maintain " + algorithm);
+    }
+
+    private static MessageDigest newDigest(HashAlgorithm algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm.getDigestName());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static byte[] toBytes(int value) {
+        return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+
+    private static int fromBytes(byte[] bytes) {
+        return (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF);
+    }
+
+    /**
+     * Computes the CRC32 of two concatenated blocks from their CRC32s, as
+     * {@code crc32_combine} in zlib does.
+     *
+     * @param crc1   the CRC32 of the first block
+     * @param crc2   the CRC32 of the second block
+     * @param length the length of the second block
+     * @return the CRC32 of both blocks
+     */
+    static int combineCrc32(int crc1, int crc2, long length) {
+        if (length <= 0) {
+            return crc1;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+
+        // The operator for one zero bit
+        odd[0] = 0xEDB88320L;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        // Two zero bits, then four
+        square(even, odd);
+        square(odd, even);
+
+        long crc = crc1 & 0xFFFFFFFFL;
+        do {
+            // Apply the zeros operator for this bit of length
+            square(even, odd);
+            if ((length & 1) != 0) {
+                crc = times(even, crc);
+            }
+            length >>= 1;
+            if (length == 0) {
+                break;
+            }
+            square(odd, even);
+            if ((length & 1) != 0) {
+                crc = times(odd, crc);
+            }
+            length >>= 1;
+        } while (length != 0);
+        return (int) (crc ^ (crc2 & 0xFFFFFFFFL));
+    }
+
+    private static long times(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void square(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = times(matrix, matrix[n]);
+        }
+    }
+}
@@ -16,156 +16,861 @@
 
 package com.heliosdecompiler.hexeditor;
 
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.LongProperty;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
+import javafx.beans.property.ReadOnlyLongProperty;
+import javafx.beans.property.ReadOnlyLongWrapper;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleIntegerProperty;
-import javafx.collections.ObservableList;
+import javafx.beans.property.SimpleLongProperty;
+import javafx.event.EventHandler;
+import javafx.scene.Node;
 import javafx.scene.control.SelectionMode;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TablePosition;
+import javafx.scene.control.TextInputControl;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.paint.Color;
 import org.controlsfx.control.spreadsheet.GridChange;
-import org.controlsfx.control.spreadsheet.SpreadsheetCell;
 import org.controlsfx.control.spreadsheet.SpreadsheetView;
 
-import java.util.ArrayDeque;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 public class HexArea extends SpreadsheetView {
-    private ObservableByteArrayImpl data = new ObservableByteArrayImpl();
+    /**
+     * Estimated height of a grid row, used to size the row cache
+     */
+    private static final double ROW_HEIGHT = 24;
+
+    /**
+     * Default for {@link #historyLimitProperty()}
+     */
+    public static final int DEFAULT_HISTORY_LIMIT = 100;
+
+    /**
+     * Default for {@link #historyByteLimitProperty()}, 16 MiB
+     */
+    public static final long DEFAULT_HISTORY_BYTE_LIMIT = 16L << 20;
+
+    private static final Color[] STRUCTURE_COLORS = {
+            Color.rgb(140, 200, 255, 0.5),
+            Color.rgb(255, 220, 120, 0.5)
+    };
+
+    /**
+     * Number of bytes read and shown at once by {@link #openAsync}
+     */
+    private static final int LOAD_BATCH_SIZE = 1024 * 1024;
+
+    private ObservableByteArray data;
+    private HexGrid grid;
+
+    /**
+     * Whether {@link #data} was opened by this area and should be closed when replaced
+     */
+    private boolean ownsData;
+
+    /**
+     * Writes edits back to the file {@link #data} was opened from, or null
+     */
+    private FileSaver saver;
+
+    /**
+     * The class file layout of {@link #data}, created when first asked for
+     */
+    private ClassFileIndex classFileIndex;
+    private EntropyIndex entropyIndex;
+    private List<Highlight> structureHighlights = Collections.emptyList();
+
+    private final ReadOnlyDoubleWrapper loadProgress = new ReadOnlyDoubleWrapper(1);
+    private final ReadOnlyLongWrapper caretOffset = new ReadOnlyLongWrapper(-1);
+
+    /**
+     * Incremented whenever the data is replaced, so a load in progress can
+     * tell it was superseded
+     */
+    private volatile int loadGeneration;
+    private boolean loading;
+    private boolean editableBeforeLoad;
+
+    private IntegerProperty historyLimit = new SimpleIntegerProperty(DEFAULT_HISTORY_LIMIT);
+    private LongProperty historyByteLimit = new SimpleLongProperty(DEFAULT_HISTORY_BYTE_LIMIT);
+    private BooleanProperty insertMode = new SimpleBooleanProperty(false);
+
+    /**
+     * Guards against the grid and data listeners triggering each other. They
+     * only run on the FX thread; a {@link ConcurrentByteArray} edited from
+     * other threads delivers its changes there.
+     */
+    private boolean gridChangeFired = false;
+    private boolean arrayChangeFired = false;
+    private boolean isUndoingOrRedoing = false;
+
+    private final UndoJournal history = new UndoJournal(historyLimit.get(), historyByteLimit.get());
+
+    /**
+     * The selected bytes. The table itself only ever selects the focused
+     * cell, which moves the caret; ranges are kept here.
+     */
+    private final ByteSelection selection = new ByteSelection();
+    private long selectionAnchor = -1;
+    private boolean extendingSelection;
+    private boolean selectingCell;
+
+    /**
+     * The offset of the single byte which the grid or a key is overwriting
+     * or removing outside of a transaction, or -1
+     */
+    private long recordingOffset = -1;
+
+    /**
+     * Records a single byte edit for undo from the bytes its change captured,
+     * so the replaced byte isn't read beforehand. It only asks for the bytes
+     * while such an edit is made.
+     */
+    private final ByteChangeListener historyRecorder = new ByteChangeListener() {
+        @Override
+        public void onChanged(ObservableByteArray array, ByteChange change) {
+            if (change.getFrom() != recordingOffset || !change.isCaptured() || change.getRemovedLength() != 1) {
+                return;
+            }
+            if (change.getAddedLength() == 1) {
+                history.recordOverwrite(recordingOffset, change.getBefore(0), change.getAfter(0));
+            } else if (change.getAddedLength() == 0) {
+                history.recordRemove(recordingOffset, change.getBefore(0));
+            }
+        }
+
+        @Override
+        public boolean needsBytes() {
+            return recordingOffset >= 0;
+        }
+    };
+
+    private final EventHandler<GridChange> gridListener = e -> {
+        if (arrayChangeFired)
+            return;
+
+        gridChangeFired = true;
+
+        long index = HexGrid.offsetOf(e.getRow(), e.getColumn());
+        try {
+            byte b = (byte) e.getNewValue();
+            boolean inserting = isInsertMode() && data.supportsInsert();
+            // An open transaction is recorded as a whole when it commits
+            boolean recording = !isUndoingOrRedoing && !data.isUpdating();
+
+            long size = data.sizeLong();
+            if (recording) {
+                if (inserting || index == size) {
+                    history.recordInsert(index, b);
+                } else if (index > size) {
+                    // Typing past the end pads the array with zeros up to the edited cell
+                    byte[] appended = new byte[(int) (index + 1 - size)];
+                    appended[appended.length - 1] = b;
+                    history.record(new DeltaState(size, index + 1, new byte[0], appended));
+                }
+            }
 
-    private IntegerProperty historyLimit = new SimpleIntegerProperty(100);
+            if (inserting) {
+                data.insert(index, new byte[]{b}, 0, 1);
+                resize(HexGrid.rowsFor(data.sizeLong()));
+                grid.refresh(index, Long.MAX_VALUE);
+            } else {
+                if (size <= index) {
+                    data.resize(index + 1);
+                    data.set(index, b);
+                } else if (recording) {
+                    // The overwritten byte is taken from the change
+                    recordEdit(index, () -> data.set(index, b));
+                } else {
+                    data.set(index, b);
+                }
 
-    private volatile boolean gridChangeFired = false;
-    private volatile boolean arrayChangeFired = false;
-    private volatile boolean isUndoingOrRedoing = false;
+                grid.refresh(index, index + 1);
+            }
+        } catch (NumberFormatException ex) {
+            // Literally should never happen
+            throw new RuntimeException(ex);
+        } finally {
+            gridChangeFired = false;
+        }
+    };
+
+    private final LongArrayChangeListener dataListener = (observableArray, sizeChanged, from, to) -> {
+        if (gridChangeFired)
+            return;
+
+        arrayChangeFired = true;
+        try {
+            if (sizeChanged) {
+                selection.remove(observableArray.sizeLong(), Long.MAX_VALUE);
+                resize(HexGrid.rowsFor(observableArray.sizeLong()));
+                // Everything from the first change to the old end may have moved
+                to = Long.MAX_VALUE;
+            }
+            grid.refresh(from, to);
+        } finally {
+            arrayChangeFired = false;
+        }
+    };
+
+    private final EditListener editListener = new EditListener() {
+        @Override
+        public void onEdit(ObservableByteArray array, DeltaState edit) {
+            if (!isUndoingOrRedoing) {
+                history.record(edit);
+            }
+        }
 
-    private ArrayDeque<DeltaState> undoHistory = new ArrayDeque<>();
-    private ArrayDeque<DeltaState> redoHistory = new ArrayDeque<>();
+        @Override
+        public void onHistoryInvalidated(ObservableByteArray array) {
+            clearHistory();
+        }
+    };
 
     public HexArea() {
-        HexGrid grid = new HexGrid();
-        setGrid(grid);
-
-        getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        getSelectionModel().setSelectionMode(SelectionMode.SINGLE);
         setEditable(true);
         setFixingColumnsAllowed(false);
         setFixingRowsAllowed(false);
         setStyle("-fx-font-family: monospace;");
 
-        grid.addEventHandler(GridChange.GRID_CHANGE_EVENT, e -> {
-            if (arrayChangeFired)
-                return;
+        setData(new PagedByteArray());
 
-            gridChangeFired = true;
+        heightProperty().addListener((observable, oldValue, newValue) -> updateViewportRows());
+        historyLimit.addListener((observable, oldValue, newValue) -> history.setEntryLimit(newValue.intValue()));
+        historyByteLimit.addListener((observable, oldValue, newValue) -> history.setByteLimit(newValue.longValue()));
 
-            int index = e.getRow() * 16 + e.getColumn();
-            try {
-                byte b = (byte) e.getNewValue();
+        selection.addListener((changed, from, to) -> grid.refresh(from, to));
+        getSelectionModel().getSelectedCells().addListener((InvalidationListener) cells -> {
+            // The selection model has no focus property, but a single selected cell follows the focus
+            if (getSelectionModel().getSelectedCells().isEmpty()) {
+                return;
+            }
+            TablePosition<?, ?> cell = getSelectionModel().getSelectedCells().get(0);
+            if (cell.getRow() >= 0 && cell.getColumn() >= 0 && cell.getColumn() < 16) {
+                long offset = HexGrid.offsetOf(cell.getRow(), cell.getColumn());
+                caretOffset.set(offset);
+                if (!selectingCell) {
+                    selectTo(offset);
+                }
+            }
+        });
+        addEventFilter(MouseEvent.MOUSE_PRESSED, e -> extendingSelection = e.isShiftDown());
+        addEventFilter(MouseEvent.MOUSE_DRAGGED, e -> {
+            long offset = offsetOf(e.getPickResult().getIntersectedNode());
+            if (offset >= 0 && selectionAnchor >= 0) {
+                extendingSelection = true;
+                selectTo(offset);
+            }
+        });
 
-                if (!isUndoingOrRedoing) {
-                    if (historyLimit.get() > 0) {
-                        while (undoHistory.size() >= historyLimit.get()) {
-                            undoHistory.poll();
+        addEventFilter(KeyEvent.KEY_PRESSED, e -> {
+            extendingSelection = e.isShiftDown();
+            if (e.isShortcutDown() && e.getCode() == KeyCode.A && !(e.getTarget() instanceof TextInputControl)) {
+                selectAll();
+                e.consume();
+                return;
+            }
+            if ((e.getCode() == KeyCode.DELETE || e.getCode() == KeyCode.BACK_SPACE)
+                    && isInsertMode() && data.supportsInsert() && !(e.getTarget() instanceof TextInputControl)) {
+                TablePosition<?, ?> focused = getSelectionModel().getFocusedCell();
+                if (focused != null && focused.getRow() >= 0 && focused.getColumn() >= 0 && focused.getColumn() < 16) {
+                    long index = HexGrid.offsetOf(focused.getRow(), focused.getColumn());
+                    if (index < data.sizeLong()) {
+                        if (data.isUpdating()) {
+                            data.remove(index, index + 1);
+                        } else {
+                            recordEdit(index, () -> data.remove(index, index + 1));
                         }
                     }
-                    undoHistory.push(new DeltaState(index, index, new byte[]{data.get(index)}, new byte[]{b}));
-                    redoHistory.clear();
-                }
-
-                if (data.size() <= index) {
-                    data.setAll(data.toArray(new byte[index + 1]));
                 }
-                data.set(index, b);
-
-                StringBuilder str = new StringBuilder();
-                for (int i = 0; i < 16; i++) {
-                    Byte bte = (Byte) grid.getRows().get(e.getRow()).get(i).getItem();
-                    if (bte == null)
-                        bte = 0;
+                e.consume();
+            }
+        });
 
-                    char chr = (char) (bte & 0xff);
-                    str.append((chr == 0 || Character.isISOControl(chr)) ? '.' : chr);
+        addEventHandler(KeyEvent.KEY_PRESSED, e -> {
+            if (e.isShortcutDown()) {
+                if (e.getCode() == KeyCode.Z) {
+                    undo();
+                } else if (e.getCode() == KeyCode.Y) {
+                    redo();
                 }
-
-                grid.getRows().get(e.getRow()).get(16).itemProperty().set(str.toString());
-            } catch (NumberFormatException ex) {
-                // Literally should never happen
-                throw new RuntimeException(ex);
-            } finally {
-                gridChangeFired = false;
             }
         });
+    }
 
-        data.addListener((observableArray, sizeChanged, from, to) -> {
-            if (gridChangeFired)
-                return;
+    /**
+     * Displays the content of {@code path} without reading it onto the heap.
+     * The file is memory mapped and edits, including inserts and deletes, are
+     * kept in a piece table in memory until {@link #save(boolean)} writes
+     * them back into the same file.
+     *
+     * @param path the file to open
+     * @throws IOException if the file could not be opened
+     */
+    public void open(Path path) throws IOException {
+        setData(new PieceTableByteArray(new MappedFileByteArray(path)));
+        ownsData = true;
+        saver = new FileSaver(data, path);
+    }
 
-            arrayChangeFired = true;
-            try {
-                int maxRow = to / 16;
-                int minRow = from / 16;
-                boolean resized = false;
+    /**
+     * Opens {@code path} without blocking, see {@link #openAsync(Path, long, Executor)}.
+     */
+    public CompletableFuture<Void> openAsync(Path path, long focusOffset) {
+        return openAsync(path, focusOffset, ForkJoinPool.commonPool());
+    }
 
-                if (grid.getRowCount() < maxRow + 1) {
-                    resize(maxRow + 1);
-                    resized = true;
-                }
+    /**
+     * Loads {@code path} into a {@link PagedByteArray} in the background. The area shows the
+     * full size of the file right away and scrolls to {@code focusOffset};
+     * the region around it is read first and the rest of the file follows in
+     * batches, each shown as soon as it is read. The area stays responsive
+     * but can't be edited until the load completes. Files too large for the
+     * heap are memory mapped through {@link #open(Path)} instead. Must be
+     * called on the FX thread.
+     *
+     * @param path        the file to open
+     * @param focusOffset the offset to show and load first
+     * @param executor    reads the file
+     * @return a future which completes once the whole file is loaded, or
+     * completes exceptionally if it couldn't be read or other data was set
+     * before it finished
+     */
+    public CompletableFuture<Void> openAsync(Path path, long focusOffset, Executor executor) {
+        long size;
+        try {
+            size = Files.size(path);
+            if (size > Integer.MAX_VALUE - 8) {
+                open(path);
+                loadProgress.set(1);
+                scrollToOffset(Math.max(0, Math.min(focusOffset, size - 1)));
+                return CompletableFuture.completedFuture(null);
+            }
+        } catch (IOException ex) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+
+        PagedByteArray array = new PagedByteArray();
+        array.resize(size);
+        setData(array);
+        int generation = loadGeneration;
+        editableBeforeLoad = isEditable();
+        loading = true;
+        setEditable(false);
+        loadProgress.set(0);
+        long focus = Math.max(0, Math.min(focusOffset, size - 1));
+        if (size > 0) {
+            scrollToOffset(focus);
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        CompletableFuture.runAsync(() -> load(path, array, focus, generation), executor).whenComplete((ignored, failure) ->
+                Platform.runLater(() -> {
+                    if (generation == loadGeneration) {
+                        loading = false;
+                        setEditable(editableBeforeLoad);
+                        if (failure == null) {
+                            saver = new FileSaver(array, path);
+                        }
+                    }
+                    if (failure == null) {
+                        future.complete(null);
+                    } else {
+                        future.completeExceptionally(failure instanceof CompletionException ? failure.getCause() : failure);
+                    }
+                }));
+        return future;
+    }
 
-                for (int i = to - 1; i >= from; i--) {
-                    grid.getRows().get(i / 16).get(i % 16).itemProperty().set(observableArray.get(i));
+    /**
+     * Reads {@code path} into {@code array} in batches, starting with the
+     * batch containing {@code focus}. Each batch is copied into the array on
+     * the FX thread, and the next one isn't read until it has been, so at
+     * most one batch is queued at a time.
+     */
+    private void load(Path path, PagedByteArray array, long focus, int generation) {
+        long size = array.sizeLong();
+        long batches = (size + LOAD_BATCH_SIZE - 1) / LOAD_BATCH_SIZE;
+        long first = focus / LOAD_BATCH_SIZE;
+        long[] loaded = new long[1];
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (long i = 0; i < batches; i++) {
+                if (generation != loadGeneration) {
+                    throw new CancellationException("Replaced by other data");
                 }
-
-                StringBuilder str = new StringBuilder();
-                for (int row = maxRow; row >= minRow; row--) {
-                    ObservableList<SpreadsheetCell> thisRow = grid.getRows().get(row);
-                    str.setLength(0);
-                    for (int i = 0; i < 16; i++) {
-                        Byte b = (Byte) thisRow.get(i).getItem();
-                        if (b == null)
-                            b = 0;
-
-                        char chr = (char) (b & 0xff);
-                        str.append((chr == 0 || Character.isISOControl(chr)) ? '.' : chr);
+                long offset = ((first + i) % batches) * LOAD_BATCH_SIZE;
+                int length = (int) Math.min(LOAD_BATCH_SIZE, size - offset);
+                ByteBuffer buffer = ByteBuffer.allocate(length);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) < 0) {
+                        throw new EOFException("File shrank while it was loaded: " + path);
                     }
-
-                    thisRow.get(16).itemProperty().set(str.toString());
                 }
 
-                if (resized) {
-                    for (int i = to; i < grid.getRows().size() * 16; i++) {
-                        grid.getRows().get(i / 16).get(i % 16).setEditable(false);
+                CompletableFuture<Void> shown = new CompletableFuture<>();
+                Platform.runLater(() -> {
+                    if (generation == loadGeneration) {
+                        Object event = FlightRecorderEvents.beginLoadBatch();
+                        array.set((int) offset, buffer.array(), 0, length);
+                        FlightRecorderEvents.endLoadBatch(event, path, offset, length);
+                        loaded[0] += length;
+                        loadProgress.set((double) loaded[0] / size);
                     }
-                }
+                    shown.complete(null);
+                });
+                shown.join();
+            }
+        } catch (IOException ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    /**
+     * @return how much of the file being opened by {@link #openAsync} is
+     * loaded, from 0 to 1. It is 1 when no load is in progress.
+     */
+    public double getLoadProgress() {
+        return loadProgress.get();
+    }
+
+    public ReadOnlyDoubleProperty loadProgressProperty() {
+        return loadProgress.getReadOnlyProperty();
+    }
+
+    /**
+     * Writes the edits made since the file was opened or last saved. Only
+     * the modified ranges are written unless bytes were inserted or removed,
+     * in which case the file is rewritten through a temporary file.
+     *
+     * @param sync whether to force the written data to the storage device
+     * @throws IOException           if the file couldn't be written
+     * @throws IllegalStateException if the data wasn't opened from a file
+     */
+    public void save(boolean sync) throws IOException {
+        if (saver == null) {
+            throw new IllegalStateException("Data wasn't opened from a file");
+        }
+        saver.save(sync);
+    }
+
+    /**
+     * Writes the whole data to {@code target}, through a temporary file which
+     * replaces it once complete.
+     *
+     * @param target the file to write
+     * @throws IOException if the file couldn't be written
+     */
+    public void saveAs(Path target) throws IOException {
+        if (saver != null) {
+            saver.saveAs(target, true);
+        } else {
+            FileSaver temporary = new FileSaver(data, target);
+            try {
+                temporary.saveAs(target, true);
             } finally {
-                arrayChangeFired = false;
+                temporary.close();
             }
-        });
+        }
+    }
 
-        addEventHandler(KeyEvent.KEY_PRESSED, e -> {
-            if (e.isShortcutDown()) {
-                if (e.getCode() == KeyCode.Z) {
-                    DeltaState delta = undoHistory.poll();
-                    if (delta != null) {
-                        isUndoingOrRedoing = true;
-                        try {
-                            redoHistory.push(delta);
-                            data.set(delta.getFrom(), delta.getBefore(), 0, delta.getBefore().length);
-                        } finally {
-                            isUndoingOrRedoing = false;
-                        }
-                    }
-                } else if (e.getCode() == KeyCode.Y) {
-                    DeltaState delta = redoHistory.poll();
-                    if (delta != null) {
-                        isUndoingOrRedoing = true;
-                        try {
-                            undoHistory.push(delta);
-                            data.set(delta.getFrom(), delta.getAfter(), 0, delta.getBefore().length);
-                        } finally {
-                            isUndoingOrRedoing = false;
-                        }
-                    }
+    /**
+     * @return whether the data was modified since it was opened or saved.
+     * Always false if it wasn't opened from a file.
+     */
+    public boolean isModified() {
+        return saver != null && saver.isModified();
+    }
+
+    /**
+     * Replaces the array backing this area. The previous array is closed if
+     * it was opened through {@link #open(Path)}, and the edit history is cleared.
+     *
+     * @param newData the bytes to display
+     */
+    public void setData(ObservableByteArray newData) {
+        loadGeneration++;
+        if (loading) {
+            loading = false;
+            setEditable(editableBeforeLoad);
+            loadProgress.set(1);
+        }
+        if (saver != null) {
+            saver.close();
+            saver = null;
+        }
+        if (classFileIndex != null) {
+            classFileIndex.close();
+            classFileIndex = null;
+        }
+        if (entropyIndex != null) {
+            entropyIndex.close();
+            entropyIndex = null;
+        }
+        structureHighlights = Collections.emptyList();
+        if (data != null) {
+            data.removeLongListener(dataListener);
+            data.removeEditListener(editListener);
+            data.removeByteChangeListener(historyRecorder);
+            if (ownsData && data instanceof Closeable) {
+                try {
+                    ((Closeable) data).close();
+                } catch (IOException ignored) {
                 }
             }
+        }
+        data = newData;
+        ownsData = false;
+        selectionAnchor = -1;
+        selection.clear();
+
+        // The grid starts out empty so that setGrid doesn't have to walk every row
+        grid = new HexGrid(data, selection);
+        grid.addEventHandler(GridChange.GRID_CHANGE_EVENT, gridListener);
+        setGrid(grid);
+        setRowHeaderWidth(70);
+        getColumns().forEach(col -> {
+            col.setMinWidth(30);
+            col.setMaxWidth(30);
         });
+        getColumns().get(16).setMinWidth(140);
+        getColumns().get(16).setMaxWidth(140);
+        updateViewportRows();
+
+        data.addLongListener(dataListener);
+        data.addEditListener(editListener);
+        data.addByteChangeListener(historyRecorder);
+        resize(HexGrid.rowsFor(data.sizeLong()));
+        clearHistory();
+    }
+
+    public ObservableByteArray getData() {
+        return data;
+    }
+
+    /**
+     * Runs {@code edits} against the displayed array as one transaction: the
+     * grid is updated once when it commits and the whole batch is undone and
+     * redone as a single step.
+     *
+     * @param edits the edits to make
+     */
+    public void batch(Consumer<? super ObservableByteArray> edits) {
+        data.batch(edits);
+    }
+
+    /**
+     * Scrolls so that the row containing {@code offset} is visible.
+     *
+     * @param offset an offset into the data
+     */
+    public void scrollToOffset(long offset) {
+        if (offset < 0 || offset >= data.sizeLong()) {
+            throw new IndexOutOfBoundsException("Offset " + offset + " out of bounds for " + data.sizeLong() + " bytes");
+        }
+        scrollToRow(HexGrid.rowOf(offset));
+    }
+
+    /**
+     * Selects the bytes from {@code from} to {@code to}, exclusive, and
+     * scrolls to the first of them.
+     *
+     * @param from the first byte to select
+     * @param to   the end of the selection, exclusive
+     */
+    public void select(long from, long to) {
+        if (from >= to) {
+            selection.clear();
+            selectionAnchor = -1;
+            return;
+        }
+        scrollToOffset(from);
+        selectingCell = true;
+        try {
+            long last = to - 1;
+            getSelectionModel().clearAndSelect(HexGrid.rowOf(last), getColumns().get((int) (last % 16)));
+        } finally {
+            selectingCell = false;
+        }
+        selectionAnchor = from;
+        selection.select(from, to);
+    }
+
+    /**
+     * Selects every byte of the data.
+     */
+    public void selectAll() {
+        if (data.sizeLong() > 0) {
+            selectionAnchor = 0;
+            selection.select(0, data.sizeLong());
+        }
+    }
+
+    /**
+     * @return the selected bytes
+     */
+    public ByteSelection getSelection() {
+        return selection;
+    }
+
+    /**
+     * Sets every selected byte to {@code value}, as one undoable edit.
+     *
+     * @param value the byte to write
+     */
+    public void fillSelection(byte value) {
+        selection.fill(data, value);
+    }
+
+    /**
+     * Writes the selected bytes to {@code out}, in order and without gaps.
+     *
+     * @param out the stream to write to, which is left open
+     * @throws IOException if the stream couldn't be written
+     */
+    public void exportSelection(OutputStream out) throws IOException {
+        selection.writeTo(data, out);
+    }
+
+    /**
+     * Puts the selected bytes on the clipboard, raw and, unless the selection
+     * is large, as hex text.
+     */
+    @Override
+    public void copyClipboard() {
+        if (!selection.isEmpty()) {
+            HexClipboard.copy(data, selection);
+        }
+    }
+
+    /**
+     * Pastes bytes copied by {@link #copyClipboard()}, or hex text, at the
+     * start of the selection. Does nothing if the clipboard holds neither.
+     */
+    @Override
+    public void pasteClipboard() {
+        if (!isEditable()) {
+            return;
+        }
+        byte[] bytes;
+        try {
+            bytes = HexClipboard.getBytes();
+        } catch (NumberFormatException ex) {
+            return;
+        }
+        if (bytes != null && bytes.length > 0) {
+            paste(bytes);
+        }
+    }
+
+    /**
+     * Writes {@code bytes} at the start of the selection, or at the focused
+     * byte, with one ranged write. In insert mode they are inserted there
+     * instead; otherwise the data grows if they run past its end. The paste
+     * is undone as a single step, and the pasted bytes are selected.
+     *
+     * @param bytes the bytes to paste
+     */
+    public void paste(byte[] bytes) {
+        long offset = selection.isEmpty() ? Math.max(0, getFocusedOffset()) : selection.getStart();
+        offset = Math.min(offset, data.sizeLong());
+        HexClipboard.paste(data, offset, bytes, isInsertMode() && data.supportsInsert());
+        select(offset, offset + bytes.length);
+    }
+
+    /**
+     * @return the offset of the byte cell last selected, which may be past
+     * the end of the data on its last row, or -1 if none was selected
+     */
+    public long getCaretOffset() {
+        return caretOffset.get();
+    }
+
+    public ReadOnlyLongProperty caretOffsetProperty() {
+        return caretOffset.getReadOnlyProperty();
+    }
+
+    /**
+     * @return the offset of the focused byte, or -1 if no byte cell is focused
+     */
+    private long getFocusedOffset() {
+        TablePosition<?, ?> focused = getSelectionModel().getFocusedCell();
+        if (focused != null && focused.getRow() >= 0 && focused.getColumn() >= 0 && focused.getColumn() < 16) {
+            return HexGrid.offsetOf(focused.getRow(), focused.getColumn());
+        }
+        return -1;
+    }
+
+    /**
+     * Selects from the anchor to {@code offset}, or just {@code offset}
+     * starting a new anchor unless the selection is being extended.
+     */
+    private void selectTo(long offset) {
+        if (offset >= data.sizeLong()) {
+            return;
+        }
+        if (!extendingSelection || selectionAnchor < 0) {
+            selectionAnchor = offset;
+        }
+        selection.select(Math.min(selectionAnchor, offset), Math.max(selectionAnchor, offset) + 1);
+    }
+
+    /**
+     * @return the offset shown by the grid cell containing {@code node}, or
+     * -1 if it isn't in a byte cell
+     */
+    private long offsetOf(Node node) {
+        while (node != null && !(node instanceof TableCell)) {
+            node = node.getParent();
+        }
+        if (node == null) {
+            return -1;
+        }
+        TableCell<?, ?> cell = (TableCell<?, ?>) node;
+        int column = cell.getTableView().getColumns().indexOf(cell.getTableColumn());
+        if (cell.getIndex() < 0 || column < 0 || column >= 16) {
+            return -1;
+        }
+        return HexGrid.offsetOf(cell.getIndex(), column);
+    }
+
+    /**
+     * Finds the next match of {@code pattern} after the focused byte, wrapping
+     * around to the start of the data, and selects it.
+     *
+     * @param pattern the pattern to search for
+     * @return the offset of the match, or -1 if there is none
+     */
+    public long findNext(SearchPattern pattern) {
+        long start = getFocusedOffset() + 1;
+        ByteSearcher searcher = new ByteSearcher(data);
+        long match = searcher.findNext(pattern, start);
+        if (match < 0 && start > 0) {
+            match = searcher.findNext(pattern, 0);
+        }
+        if (match >= 0) {
+            select(match, match + pattern.length());
+        }
+        return match;
+    }
+
+    /**
+     * Scans the data for every signature known to {@code scanner} and
+     * highlights the matches.
+     *
+     * @param scanner the signatures to look for
+     * @param color   the background of the matched bytes
+     * @return the matches, ordered by offset
+     */
+    public List<SignatureMatch> scanSignatures(SignatureScanner scanner, Color color) {
+        List<SignatureMatch> matches = scanner.scan(data);
+        List<Highlight> added = new ArrayList<>(matches.size());
+        for (SignatureMatch match : matches) {
+            added.add(new Highlight(match.getOffset(), match.getEnd(), color));
+        }
+        grid.addHighlights(added);
+        return matches;
+    }
+
+    /**
+     * @return the layout of the data read as a Java class file, kept up to
+     * date as it is edited
+     */
+    public ClassFileIndex getClassFileIndex() {
+        if (classFileIndex == null) {
+            classFileIndex = new ClassFileIndex(data);
+        }
+        return classFileIndex;
+    }
+
+    /**
+     * @return the byte histogram and per-block entropy of the data, kept up
+     * to date in the background as it is edited
+     */
+    public EntropyIndex getEntropyIndex() {
+        if (entropyIndex == null) {
+            entropyIndex = new EntropyIndex(data, EntropyIndex.blockSizeFor(data.sizeLong()), ForkJoinPool.commonPool());
+        }
+        return entropyIndex;
+    }
+
+    /**
+     * Highlights the parts of {@code structure} in alternating colors,
+     * replacing the previous structure highlighted, and scrolls to it.
+     *
+     * @param structure a structure of {@link #getClassFileIndex()}
+     */
+    public void highlightStructure(ClassFileStructure structure) {
+        clearStructureHighlight();
+        List<ClassFileStructure> parts = getClassFileIndex().getChildren(structure);
+        if (parts.isEmpty()) {
+            parts = Collections.singletonList(structure);
+        }
+        List<Highlight> added = new ArrayList<>(parts.size());
+        for (ClassFileStructure part : parts) {
+            added.add(new Highlight(part.getFrom(), part.getTo(), STRUCTURE_COLORS[added.size() % STRUCTURE_COLORS.length]));
+        }
+        grid.addHighlights(added);
+        structureHighlights = added;
+        if (structure.getFrom() < data.sizeLong()) {
+            scrollToOffset(structure.getFrom());
+        }
+    }
+
+    public void clearStructureHighlight() {
+        for (Highlight highlight : structureHighlights) {
+            grid.removeHighlight(highlight);
+        }
+        structureHighlights = Collections.emptyList();
+    }
+
+    public void addHighlight(Highlight highlight) {
+        grid.addHighlights(Collections.singletonList(highlight));
+    }
+
+    public void addHighlights(Collection<Highlight> highlights) {
+        grid.addHighlights(highlights);
+    }
+
+    public boolean removeHighlight(Highlight highlight) {
+        return grid.removeHighlight(highlight);
+    }
+
+    public void clearHighlights() {
+        grid.clearHighlights();
+    }
+
+    public List<Highlight> getHighlights() {
+        return grid.getHighlights();
     }
 
     public void setContent(byte[] newData) {
@@ -177,20 +882,74 @@ public class HexArea extends SpreadsheetView {
     }
 
     public void resize(int rows) {
-        ((HexGrid) getGrid()).resize(rows);
-        setGrid(getGrid());
-        setRowHeaderWidth(70);
-        getColumns().forEach(col -> {
-            col.setMinWidth(30);
-            col.setMaxWidth(30);
-        });
-        getColumns().get(16).setMinWidth(140);
-        getColumns().get(16).setMaxWidth(140);
+        grid.resize(rows);
+    }
+
+    private void updateViewportRows() {
+        grid.setViewportRows((int) Math.ceil(getHeight() / ROW_HEIGHT));
+    }
+
+    /**
+     * Reverts the most recent edit. Consecutive single byte edits are undone
+     * together.
+     *
+     * @return whether there was anything to undo
+     */
+    public boolean undo() {
+        DeltaState delta = history.undo();
+        if (delta == null) {
+            return false;
+        }
+        isUndoingOrRedoing = true;
+        try {
+            delta.revert(data);
+        } finally {
+            isUndoingOrRedoing = false;
+        }
+        return true;
+    }
+
+    /**
+     * Makes the most recently undone edit again.
+     *
+     * @return whether there was anything to redo
+     */
+    public boolean redo() {
+        DeltaState delta = history.redo();
+        if (delta == null) {
+            return false;
+        }
+        isUndoingOrRedoing = true;
+        try {
+            delta.apply(data);
+        } finally {
+            isUndoingOrRedoing = false;
+        }
+        return true;
+    }
+
+    public boolean canUndo() {
+        return history.canUndo();
+    }
+
+    public boolean canRedo() {
+        return history.canRedo();
+    }
+
+    /**
+     * Makes a single byte edit, which {@link #historyRecorder} records.
+     */
+    private void recordEdit(long index, Runnable edit) {
+        recordingOffset = index;
+        try {
+            edit.run();
+        } finally {
+            recordingOffset = -1;
+        }
     }
 
     public void clearHistory() {
-        undoHistory.clear();
-        redoHistory.clear();
+        history.clear();
     }
 
     public int getHistoryLimit() {
@@ -204,4 +963,39 @@ public class HexArea extends SpreadsheetView {
     public IntegerProperty historyLimitProperty() {
         return historyLimit;
     }
+
+    public long getHistoryByteLimit() {
+        return historyByteLimit.get();
+    }
+
+    public void setHistoryByteLimit(long value) {
+        historyByteLimit.set(value);
+    }
+
+    /**
+     * The maximum number of bytes the undo history may hold before the
+     * oldest entries are dropped, or 0 for no limit. Unlike
+     * {@link #historyLimitProperty()} this bounds the memory used by
+     * history no matter how large the individual edits are.
+     */
+    public LongProperty historyByteLimitProperty() {
+        return historyByteLimit;
+    }
+
+    /**
+     * In insert mode typed bytes are inserted before the edited cell and
+     * Delete removes the focused byte, if the backing array supports it.
+     * Otherwise typed bytes overwrite the cell.
+     */
+    public boolean isInsertMode() {
+        return insertMode.get();
+    }
+
+    public void setInsertMode(boolean value) {
+        insertMode.set(value);
+    }
+
+    public BooleanProperty insertModeProperty() {
+        return insertMode;
+    }
 }
@@ -0,0 +1,694 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.geometry.Orientation;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+import java.util.BitSet;
+
+/**
+ * A hex view which paints the offset, hex and ASCII columns onto a single
+ * {@link Canvas} instead of creating a cell per byte like {@link HexArea}.
+ * Only the rows on screen are read from the data, glyphs are copied from a
+ * {@link GlyphAtlas}, and a change to the data repaints just the rows it
+ * touches, so scrolling and painting cost the same for any size of file.
+ * <p>
+ * Bytes are edited by typing hex digits into the hex column or characters
+ * into the ASCII column; Tab switches between them. Shift with the arrow
+ * keys or a mouse drag selects a range, kept in a {@link ByteSelection}.
+ */
+public class HexCanvasView extends Region {
+    private static final int BYTES_PER_ROW = 16;
+    private static final Font FONT = Font.font("Monospaced", 13);
+
+    private static final Color BACKGROUND = Color.WHITE;
+    private static final Color TEXT = Color.BLACK;
+    private static final Color OFFSET_TEXT = Color.GRAY;
+    private static final Color SELECTION = Color.rgb(170, 200, 255);
+    private static final Color CARET = Color.rgb(255, 200, 0);
+
+    private final Canvas canvas = new Canvas();
+    private final ScrollBar scrollBar = new ScrollBar();
+    private final GlyphAtlas glyphs = new GlyphAtlas(FONT, TEXT);
+    private final GlyphAtlas offsetGlyphs = new GlyphAtlas(FONT, OFFSET_TEXT);
+    private final double charWidth = glyphs.getGlyphWidth();
+    private final double rowHeight = glyphs.getGlyphHeight() + 2;
+    private final byte[] rowBuffer = new byte[BYTES_PER_ROW];
+
+    /**
+     * Rows relative to {@link #topRow} which must be painted at the next layout
+     */
+    private final BitSet dirtyRows = new BitSet();
+    private boolean fullRepaint = true;
+
+    private final BooleanProperty editable = new SimpleBooleanProperty(this, "editable", true);
+    private final UndoJournal history = new UndoJournal(HexArea.DEFAULT_HISTORY_LIMIT, HexArea.DEFAULT_HISTORY_BYTE_LIMIT);
+
+    private ObservableByteArray data;
+    private long topRow;
+    private int visibleRows;
+    private int offsetDigits = 8;
+
+    private long caret;
+    private boolean lowNibble;
+    private boolean asciiFocused;
+    private final ByteSelection selection = new ByteSelection();
+    /**
+     * The other end of the selection from the caret, or -1 while the caret
+     * isn't extending a selection
+     */
+    private long anchor = -1;
+
+    /**
+     * The byte whose high nibble was typed but not its low nibble, or -1. It
+     * is recorded in the history once the byte is finished or left.
+     */
+    private long pendingOffset = -1;
+    private byte pendingBefore;
+    private boolean pendingAppend;
+    private boolean isUndoingOrRedoing;
+
+    private final LongArrayChangeListener dataListener = (array, sizeChanged, from, to) -> {
+        if (sizeChanged) {
+            sizeChanged();
+            // Everything from the first change to the old end may have moved
+            to = Long.MAX_VALUE;
+        }
+        markDirty(from, to);
+    };
+
+    private final EditListener editListener = new EditListener() {
+        @Override
+        public void onEdit(ObservableByteArray array, DeltaState edit) {
+            if (!isUndoingOrRedoing) {
+                commitPending();
+                history.record(edit);
+            }
+        }
+
+        @Override
+        public void onHistoryInvalidated(ObservableByteArray array) {
+            pendingOffset = -1;
+            history.clear();
+        }
+    };
+
+    public HexCanvasView() {
+        this(new PagedByteArray());
+    }
+
+    public HexCanvasView(ObservableByteArray data) {
+        setFocusTraversable(true);
+        scrollBar.setOrientation(Orientation.VERTICAL);
+        scrollBar.setUnitIncrement(1);
+        scrollBar.valueProperty().addListener((observable, oldValue, newValue) -> setTopRow(newValue.longValue()));
+        getChildren().addAll(canvas, scrollBar);
+        selection.addListener((changed, from, to) -> markDirty(from, to));
+
+        addEventHandler(KeyEvent.KEY_PRESSED, this::keyPressed);
+        addEventHandler(KeyEvent.KEY_TYPED, this::keyTyped);
+        addEventHandler(MouseEvent.MOUSE_PRESSED, this::mousePressed);
+        addEventHandler(MouseEvent.MOUSE_DRAGGED, this::mouseDragged);
+        canvas.addEventHandler(ScrollEvent.SCROLL, e -> {
+            scrollBar.setValue(clampScroll(scrollBar.getValue() - e.getDeltaY() / rowHeight));
+            e.consume();
+        });
+
+        setData(data);
+    }
+
+    public ObservableByteArray getData() {
+        return data;
+    }
+
+    /**
+     * Shows {@code data} instead of the current array. The caret, selection
+     * and undo history are reset.
+     */
+    public void setData(ObservableByteArray data) {
+        if (this.data != null) {
+            this.data.removeLongListener(dataListener);
+            this.data.removeEditListener(editListener);
+        }
+        this.data = data;
+        data.addLongListener(dataListener);
+        data.addEditListener(editListener);
+
+        pendingOffset = -1;
+        history.clear();
+        caret = 0;
+        lowNibble = false;
+        anchor = -1;
+        selection.clear();
+        sizeChanged();
+        scrollBar.setValue(0);
+        repaintAll();
+    }
+
+    public boolean isEditable() {
+        return editable.get();
+    }
+
+    public void setEditable(boolean value) {
+        editable.set(value);
+    }
+
+    public BooleanProperty editableProperty() {
+        return editable;
+    }
+
+    /**
+     * @return the offset of the byte under the caret, from 0 to the size of
+     * the data; the caret is past the last byte to append
+     */
+    public long getCaretPosition() {
+        return caret;
+    }
+
+    /**
+     * Moves the caret to {@code offset}, clearing the selection, and scrolls
+     * it into view.
+     */
+    public void setCaretPosition(long offset) {
+        moveCaret(offset, false);
+    }
+
+    /**
+     * @return the selected bytes
+     */
+    public ByteSelection getSelection() {
+        return selection;
+    }
+
+    /**
+     * Selects the bytes from {@code from} to {@code to}, exclusive, and
+     * scrolls to the first of them.
+     *
+     * @param from the first byte to select
+     * @param to   the end of the selection, exclusive
+     */
+    public void select(long from, long to) {
+        if (from < 0 || to > data.sizeLong()) {
+            throw new IndexOutOfBoundsException("Range " + from + " to " + to + " out of bounds for " + data.sizeLong() + " bytes");
+        }
+        if (from >= to) {
+            moveCaret(from, false);
+            return;
+        }
+        moveCaret(to - 1, false);
+        moveCaret(from, true);
+    }
+
+    public void clearSelection() {
+        anchor = -1;
+        selection.clear();
+    }
+
+    /**
+     * Scrolls so the row containing {@code offset} is visible.
+     */
+    public void scrollTo(long offset) {
+        long row = offset / BYTES_PER_ROW;
+        if (row < topRow) {
+            scrollBar.setValue(row);
+        } else if (visibleRows > 0 && row >= topRow + visibleRows - 1) {
+            scrollBar.setValue(clampScroll(row - visibleRows + 2));
+        }
+    }
+
+    /**
+     * Reverts the most recent edit. Consecutive single byte edits are undone
+     * together.
+     *
+     * @return whether there was anything to undo
+     */
+    public boolean undo() {
+        commitPending();
+        DeltaState delta = history.undo();
+        if (delta == null) {
+            return false;
+        }
+        isUndoingOrRedoing = true;
+        try {
+            delta.revert(data);
+        } finally {
+            isUndoingOrRedoing = false;
+        }
+        moveCaret(Math.min(delta.getFrom(), data.sizeLong()), false);
+        return true;
+    }
+
+    /**
+     * Makes the most recently undone edit again.
+     *
+     * @return whether there was anything to redo
+     */
+    public boolean redo() {
+        commitPending();
+        DeltaState delta = history.redo();
+        if (delta == null) {
+            return false;
+        }
+        isUndoingOrRedoing = true;
+        try {
+            delta.apply(data);
+        } finally {
+            isUndoingOrRedoing = false;
+        }
+        moveCaret(Math.min(delta.getFrom(), data.sizeLong()), false);
+        return true;
+    }
+
+    /**
+     * Pastes bytes from the clipboard, see {@link #paste(byte[])}. Does
+     * nothing if it holds neither bytes nor hex text.
+     */
+    public void pasteClipboard() {
+        if (!isEditable()) {
+            return;
+        }
+        byte[] bytes;
+        try {
+            bytes = HexClipboard.getBytes();
+        } catch (NumberFormatException ex) {
+            return;
+        }
+        if (bytes != null && bytes.length > 0) {
+            paste(bytes);
+        }
+    }
+
+    /**
+     * Overwrites the bytes at the start of the selection, or at the caret,
+     * with {@code bytes} in one ranged write, growing the data if they run
+     * past its end. The paste is undone as a single step, and the pasted
+     * bytes are selected.
+     *
+     * @param bytes the bytes to paste
+     */
+    public void paste(byte[] bytes) {
+        long offset = selection.isEmpty() ? caret : selection.getStart();
+        commitPending();
+        HexClipboard.paste(data, offset, bytes, false);
+        select(offset, offset + bytes.length);
+    }
+
+    @Override
+    protected double computePrefWidth(double height) {
+        return asciiX(BYTES_PER_ROW) + charWidth / 2 + scrollBar.prefWidth(-1);
+    }
+
+    @Override
+    protected double computePrefHeight(double width) {
+        return rowHeight * 24;
+    }
+
+    @Override
+    protected void layoutChildren() {
+        double barWidth = snapSize(scrollBar.prefWidth(-1));
+        double width = Math.max(0, getWidth() - barWidth);
+        double height = getHeight();
+        scrollBar.resizeRelocate(width, 0, barWidth, height);
+        if (canvas.getWidth() != width || canvas.getHeight() != height) {
+            canvas.setWidth(width);
+            canvas.setHeight(height);
+            visibleRows = (int) Math.ceil(height / rowHeight);
+            updateScrollBar();
+            fullRepaint = true;
+        }
+        paint();
+    }
+
+    private void paint() {
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        if (fullRepaint) {
+            fullRepaint = false;
+            dirtyRows.set(0, visibleRows);
+        }
+        for (int i = dirtyRows.nextSetBit(0); i >= 0 && i < visibleRows; i = dirtyRows.nextSetBit(i + 1)) {
+            paintRow(g, i);
+        }
+        dirtyRows.clear();
+    }
+
+    private void paintRow(GraphicsContext g, int visibleRow) {
+        double y = visibleRow * rowHeight;
+        g.setFill(BACKGROUND);
+        g.fillRect(0, y, canvas.getWidth(), rowHeight);
+
+        long row = topRow + visibleRow;
+        if (row >= rowCount()) {
+            return;
+        }
+        long offset = row * BYTES_PER_ROW;
+        int length = (int) Math.max(0, Math.min(BYTES_PER_ROW, data.sizeLong() - offset));
+        data.copyTo(offset, rowBuffer, 0, length);
+
+        double textY = y + 1;
+        for (int i = 0; i < offsetDigits; i++) {
+            int nibble = (int) (offset >>> ((offsetDigits - 1 - i) * 4));
+            offsetGlyphs.draw(g, ByteHelper.toHexDigit(nibble), offsetX() + i * charWidth, textY);
+        }
+
+        boolean anySelected = selection.intersects(offset, offset + BYTES_PER_ROW);
+        for (int column = 0; column < BYTES_PER_ROW; column++) {
+            long at = offset + column;
+            double hexX = hexX(column);
+            double asciiX = asciiX(column);
+            if (anySelected && selection.contains(at)) {
+                g.setFill(SELECTION);
+                boolean joined = column != BYTES_PER_ROW - 1 && selection.contains(at + 1);
+                double hexWidth = joined ? hexX(column + 1) - hexX : 2 * charWidth;
+                g.fillRect(hexX, y, hexWidth, rowHeight);
+                g.fillRect(asciiX, y, charWidth, rowHeight);
+            }
+            if (at == caret) {
+                paintCaret(g, hexX, asciiX, y);
+            }
+            if (column < length) {
+                byte b = rowBuffer[column];
+                glyphs.draw(g, ByteHelper.toHexDigit(b >> 4), hexX, textY);
+                glyphs.draw(g, ByteHelper.toHexDigit(b), hexX + charWidth, textY);
+                glyphs.draw(g, ByteHelper.toPrintable(b), asciiX, textY);
+            }
+        }
+        EditorMetrics.getInstance().rowFilled(length);
+    }
+
+    /**
+     * Fills the caret in the focused column and outlines it in the other one.
+     */
+    private void paintCaret(GraphicsContext g, double hexX, double asciiX, double y) {
+        double nibbleX = hexX + (lowNibble ? charWidth : 0);
+        g.setFill(CARET);
+        g.setStroke(CARET);
+        if (asciiFocused) {
+            g.fillRect(asciiX, y, charWidth, rowHeight);
+            g.strokeRect(hexX + 0.5, y + 0.5, 2 * charWidth - 1, rowHeight - 1);
+        } else {
+            g.fillRect(nibbleX, y, charWidth, rowHeight);
+            g.strokeRect(asciiX + 0.5, y + 0.5, charWidth - 1, rowHeight - 1);
+        }
+    }
+
+    private double offsetX() {
+        return charWidth / 2;
+    }
+
+    private double hexX(int column) {
+        return offsetX() + (offsetDigits + 2 + column * 3 + (column >= BYTES_PER_ROW / 2 ? 1 : 0)) * charWidth;
+    }
+
+    private double asciiX(int column) {
+        return hexX(BYTES_PER_ROW - 1) + (4 + column) * charWidth;
+    }
+
+    /**
+     * @return the number of rows, including the row after the last byte
+     * when the data ends on a row boundary, so the caret can append
+     */
+    private long rowCount() {
+        return data.sizeLong() / BYTES_PER_ROW + 1;
+    }
+
+    private void sizeChanged() {
+        long size = data.sizeLong();
+        int digits = Math.max(8, (64 - Long.numberOfLeadingZeros(Math.max(0, size - 1)) + 3) / 4);
+        if (digits != offsetDigits) {
+            offsetDigits = digits;
+            repaintAll();
+        }
+        if (caret > size) {
+            caret = size;
+            lowNibble = false;
+        }
+        if (anchor >= size) {
+            anchor = -1;
+        }
+        selection.remove(size, Long.MAX_VALUE);
+        updateScrollBar();
+    }
+
+    private void updateScrollBar() {
+        scrollBar.setMax(Math.max(0, rowCount() - visibleRows + 1));
+        scrollBar.setVisibleAmount(visibleRows);
+        scrollBar.setBlockIncrement(Math.max(1, visibleRows - 1));
+        scrollBar.setValue(clampScroll(scrollBar.getValue()));
+    }
+
+    private double clampScroll(double value) {
+        return Math.max(scrollBar.getMin(), Math.min(scrollBar.getMax(), value));
+    }
+
+    private void setTopRow(long row) {
+        if (row != topRow) {
+            topRow = row;
+            repaintAll();
+        }
+    }
+
+    private void repaintAll() {
+        fullRepaint = true;
+        requestLayout();
+    }
+
+    /**
+     * Schedules the visible rows overlapping {@code [from, to)} to be painted.
+     */
+    private void markDirty(long from, long to) {
+        if (to <= from) {
+            return;
+        }
+        long first = Math.max(from / BYTES_PER_ROW, topRow);
+        long last = Math.min((to - 1) / BYTES_PER_ROW, topRow + visibleRows - 1);
+        if (first <= last) {
+            dirtyRows.set((int) (first - topRow), (int) (last - topRow) + 1);
+            requestLayout();
+        }
+    }
+
+    /**
+     * Moves the caret to {@code offset}. With {@code extend}, the selection
+     * is grown or shrunk to the new caret; otherwise it is cleared.
+     */
+    private void moveCaret(long offset, boolean extend) {
+        offset = Math.max(0, Math.min(offset, data.sizeLong()));
+        commitPending();
+        markDirty(caret, caret + 1);
+        if (!extend) {
+            anchor = -1;
+        } else if (anchor < 0) {
+            anchor = caret;
+        }
+        caret = offset;
+        lowNibble = false;
+        long size = data.sizeLong();
+        if (anchor >= 0 && anchor < size) {
+            selection.select(Math.min(anchor, caret), Math.min(Math.max(anchor, caret) + 1, size));
+        } else {
+            anchor = -1;
+            selection.clear();
+        }
+        markDirty(caret, caret + 1);
+        scrollTo(caret);
+    }
+
+    private void keyPressed(KeyEvent e) {
+        boolean extend = e.isShiftDown();
+        long page = (long) Math.max(1, visibleRows - 1) * BYTES_PER_ROW;
+        KeyCode code = e.getCode();
+        if (code == KeyCode.LEFT) {
+            moveCaret(caret - 1, extend);
+        } else if (code == KeyCode.RIGHT) {
+            moveCaret(caret + 1, extend);
+        } else if (code == KeyCode.UP) {
+            moveCaret(caret - BYTES_PER_ROW, extend);
+        } else if (code == KeyCode.DOWN) {
+            moveCaret(caret + BYTES_PER_ROW, extend);
+        } else if (code == KeyCode.PAGE_UP) {
+            moveCaret(caret - page, extend);
+        } else if (code == KeyCode.PAGE_DOWN) {
+            moveCaret(caret + page, extend);
+        } else if (code == KeyCode.HOME) {
+            moveCaret(e.isShortcutDown() ? 0 : caret - caret % BYTES_PER_ROW, extend);
+        } else if (code == KeyCode.END) {
+            moveCaret(e.isShortcutDown() ? data.sizeLong() : caret - caret % BYTES_PER_ROW + BYTES_PER_ROW - 1, extend);
+        } else if (code == KeyCode.TAB) {
+            commitPending();
+            asciiFocused = !asciiFocused;
+            lowNibble = false;
+            markDirty(caret, caret + 1);
+        } else if (e.isShortcutDown() && code == KeyCode.Z) {
+            undo();
+        } else if (e.isShortcutDown() && code == KeyCode.Y) {
+            redo();
+        } else if (e.isShortcutDown() && code == KeyCode.A && data.sizeLong() > 0) {
+            select(0, data.sizeLong());
+        } else if (e.isShortcutDown() && code == KeyCode.C) {
+            if (!selection.isEmpty()) {
+                HexClipboard.copy(data, selection);
+            }
+        } else if (e.isShortcutDown() && code == KeyCode.V) {
+            pasteClipboard();
+        } else {
+            return;
+        }
+        e.consume();
+    }
+
+    private void keyTyped(KeyEvent e) {
+        if (!isEditable() || e.isShortcutDown() || e.isAltDown() || e.getCharacter().isEmpty()) {
+            return;
+        }
+        char typed = e.getCharacter().charAt(0);
+        if (asciiFocused) {
+            if (typed < 0x20 || typed > 0xFF || Character.isISOControl(typed)) {
+                return;
+            }
+            typeByte((byte) typed);
+        } else {
+            int digit = Character.digit(typed, 16);
+            if (digit < 0) {
+                return;
+            }
+            typeNibble(digit);
+        }
+        e.consume();
+    }
+
+    private void typeByte(byte value) {
+        long offset = caret;
+        if (offset == data.sizeLong()) {
+            history.recordInsert(offset, value);
+        } else {
+            history.recordOverwrite(offset, data.get(offset), value);
+        }
+        write(offset, value);
+        moveCaret(offset + 1, false);
+    }
+
+    /**
+     * Replaces the high nibble of the byte under the caret, or the low nibble
+     * if the high one was just typed, and then moves on to the next byte.
+     */
+    private void typeNibble(int digit) {
+        long offset = caret;
+        if (!lowNibble) {
+            commitPending();
+            pendingAppend = offset == data.sizeLong();
+            pendingBefore = pendingAppend ? 0 : data.get(offset);
+            pendingOffset = offset;
+            write(offset, (byte) (digit << 4 | pendingBefore & 0xF));
+            lowNibble = true;
+            markDirty(offset, offset + 1);
+        } else {
+            write(offset, (byte) (data.get(offset) & 0xF0 | digit));
+            moveCaret(offset + 1, false);
+        }
+    }
+
+    /**
+     * Sets the byte at {@code offset}, growing the data by one byte if it is
+     * the size of the data.
+     */
+    private void write(long offset, byte value) {
+        if (offset == data.sizeLong()) {
+            data.resize(offset + 1);
+        }
+        data.set(offset, value);
+    }
+
+    private void commitPending() {
+        long offset = pendingOffset;
+        if (offset < 0) {
+            return;
+        }
+        pendingOffset = -1;
+        if (offset >= data.sizeLong()) {
+            // Shrunk by someone else before the byte was finished
+            return;
+        }
+        if (pendingAppend) {
+            history.recordInsert(offset, data.get(offset));
+        } else {
+            history.recordOverwrite(offset, pendingBefore, data.get(offset));
+        }
+    }
+
+    private void mousePressed(MouseEvent e) {
+        requestFocus();
+        long offset = offsetAt(e.getX(), e.getY());
+        if (offset < 0) {
+            return;
+        }
+        moveCaret(offset, e.isShiftDown());
+        e.consume();
+    }
+
+    private void mouseDragged(MouseEvent e) {
+        long offset = offsetAt(e.getX(), Math.max(0, Math.min(e.getY(), canvas.getHeight() - 1)));
+        if (offset < 0) {
+            return;
+        }
+        if (offset != caret) {
+            moveCaret(offset, true);
+        }
+        e.consume();
+    }
+
+    /**
+     * Finds the byte under a point of the canvas, and focuses the column it
+     * is in.
+     *
+     * @return the offset of the byte, or -1 if the point is left of the hex column
+     */
+    private long offsetAt(double x, double y) {
+        if (x < hexX(0) || x >= canvas.getWidth() || y < 0) {
+            return -1;
+        }
+        int column;
+        boolean ascii = x >= asciiX(0) - charWidth;
+        if (ascii) {
+            column = (int) ((x - asciiX(0)) / charWidth);
+        } else {
+            column = 0;
+            while (column < BYTES_PER_ROW - 1 && x >= hexX(column + 1)) {
+                column++;
+            }
+        }
+        column = Math.max(0, Math.min(BYTES_PER_ROW - 1, column));
+        if (ascii != asciiFocused) {
+            asciiFocused = ascii;
+            markDirty(caret, caret + 1);
+        }
+        long row = Math.min(topRow + (long) (y / rowHeight), rowCount() - 1);
+        return Math.min(row * BYTES_PER_ROW + column, data.sizeLong());
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
+import javafx.scene.input.DataFormat;
+
+import java.util.Map;
+
+/**
+ * Moves bytes to and from the system clipboard in bulk. A copy is put on
+ * the clipboard twice: as the raw bytes, for pasting back into an editor,
+ * and as hex text for everything else. The text takes about six times the
+ * memory of the bytes, so selections larger than {@link #MAX_TEXT_COPY} are
+ * only copied raw. The text is formatted straight into a character array
+ * of its final size a chunk of data at a time, and parsed without building
+ * intermediate strings.
+ */
+public class HexClipboard {
+    /**
+     * The raw bytes of a copy
+     */
+    public static final DataFormat BYTES = new DataFormat("application/x-helios-bytes");
+
+    /**
+     * The largest selection which is also put on the clipboard as hex text
+     */
+    public static final int MAX_TEXT_COPY = 1024 * 1024;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Bytes per line of copied hex text
+     */
+    private static final int LINE_LENGTH = 16;
+
+    private HexClipboard() {
+    }
+
+    /**
+     * Puts the selected bytes of {@code data} on the system clipboard, and
+     * also as hex text unless there are more than {@link #MAX_TEXT_COPY}.
+     *
+     * @param data      the array to copy from
+     * @param selection the bytes to copy
+     * @throws IllegalStateException if the selection is too large for the clipboard
+     */
+    public static void copy(ObservableByteArray data, ByteSelection selection) {
+        ClipboardContent content = new ClipboardContent();
+        content.put(BYTES, selection.copy(data));
+        if (selection.getLength() <= MAX_TEXT_COPY) {
+            content.putString(toHexText(data, selection));
+        }
+        Clipboard.getSystemClipboard().setContent(content);
+    }
+
+    /**
+     * Writes pasted {@code bytes} into {@code data} at {@code offset} with
+     * one ranged write in a single transaction, so the paste is undone as a
+     * single step. Overwriting grows the data if they run past its end.
+     *
+     * @param data   the array to paste into
+     * @param offset where to paste, at most the size of the array
+     * @param bytes  the bytes to paste
+     * @param insert whether to insert the bytes rather than overwrite
+     */
+    public static void paste(ObservableByteArray data, long offset, byte[] bytes, boolean insert) {
+        data.batch(array -> {
+            if (insert) {
+                array.insert(offset, bytes, 0, bytes.length);
+            } else {
+                if (offset + bytes.length > array.sizeLong()) {
+                    array.resize(offset + bytes.length);
+                }
+                array.set(offset, bytes, 0, bytes.length);
+            }
+        });
+    }
+
+    /**
+     * @return the bytes on the system clipboard, copied raw or as hex text,
+     * or null if it holds neither
+     * @throws NumberFormatException if the clipboard holds text which isn't hex
+     */
+    public static byte[] getBytes() {
+        Clipboard clipboard = Clipboard.getSystemClipboard();
+        Object bytes = clipboard.getContent(BYTES);
+        if (bytes instanceof byte[]) {
+            return (byte[]) bytes;
+        }
+        return clipboard.hasString() ? parseHex(clipboard.getString()) : null;
+    }
+
+    /**
+     * Formats the selected bytes of {@code data} as upper case hex pairs,
+     * separated by spaces and with sixteen bytes to a line.
+     *
+     * @param data      the array to read
+     * @param selection the bytes to format
+     * @return the formatted bytes
+     * @throws IllegalStateException if the text would be too long for a string
+     */
+    public static String toHexText(ObservableByteArray data, ByteSelection selection) {
+        long length = selection.getLength();
+        if (length == 0) {
+            return "";
+        }
+        if (length > (Integer.MAX_VALUE - 8) / 3) {
+            throw new IllegalStateException("Selection of " + length + " bytes is too large to copy as text");
+        }
+        char[] text = new char[(int) length * 3 - 1];
+        byte[] chunk = new byte[(int) Math.min(CHUNK_SIZE, length)];
+        int position = 0;
+        long written = 0;
+        for (Map.Entry<Long, Long> range : selection.getRanges().entrySet()) {
+            for (long offset = range.getKey(); offset < range.getValue(); offset += chunk.length) {
+                int count = (int) Math.min(chunk.length, range.getValue() - offset);
+                data.copyTo(offset, chunk, 0, count);
+                for (int i = 0; i < count; i++) {
+                    if (written > 0) {
+                        text[position++] = written % LINE_LENGTH == 0 ? '\n' : ' ';
+                    }
+                    byte b = chunk[i];
+                    text[position++] = ByteHelper.toHexDigit(b >> 4);
+                    text[position++] = ByteHelper.toHexDigit(b);
+                    written++;
+                }
+            }
+        }
+        return new String(text);
+    }
+
+    /**
+     * Parses hex text such as {@code "4D 5A 90 00"} or {@code "4d5a9000"}.
+     * Whitespace between pairs of digits is ignored.
+     *
+     * @param text the text to parse
+     * @return the bytes
+     * @throws NumberFormatException if the text contains anything other than
+     *                               hex digits and whitespace, or an odd number of digits
+     */
+    public static byte[] parseHex(CharSequence text) {
+        int digits = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char chr = text.charAt(i);
+            if (ByteHelper.digitValue(chr) >= 0) {
+                digits++;
+            } else if (!Character.isWhitespace(chr)) {
+                throw new NumberFormatException("Not a hex digit at index " + i + ": '" + chr + "'");
+            }
+        }
+        if (digits % 2 != 0) {
+            throw new NumberFormatException("Odd number of hex digits: " + digits);
+        }
+
+        byte[] bytes = new byte[digits / 2];
+        int high = -1;
+        int position = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int value = ByteHelper.digitValue(text.charAt(i));
+            if (value < 0) {
+                continue;
+            }
+            if (high < 0) {
+                high = value;
+            } else {
+                bytes[position++] = (byte) (high << 4 | value);
+                high = -1;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.control.SplitPane;
+import javafx.scene.control.TablePosition;
+import javafx.scene.paint.Color;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Shows two arrays side by side and highlights where they differ. The diff
+ * is computed in the background and the highlights are added in batches as
+ * differences are found; the grids only style the rows which are on screen.
+ * Scrolling one side scrolls the other.
+ */
+public class HexCompareView extends SplitPane {
+    /**
+     * Differences passed to the FX thread at once
+     */
+    private static final int BATCH_SIZE = 256;
+
+    private static final Color CHANGED = Color.rgb(255, 190, 90, 0.6);
+    private static final Color INSERTED = Color.rgb(120, 220, 120, 0.6);
+    private static final Color DELETED = Color.rgb(240, 110, 110, 0.6);
+
+    private final HexArea original = new HexArea();
+    private final HexArea revised = new HexArea();
+    private final ObservableList<DiffRange> differences = FXCollections.observableArrayList();
+
+    private boolean scrollingSynchronized;
+    private boolean followingScroll;
+
+    /**
+     * Incremented by every compare, so batches of an older diff are dropped
+     */
+    private volatile int generation;
+
+    public HexCompareView() {
+        getItems().addAll(original, revised);
+    }
+
+    /**
+     * Displays both arrays and starts computing the differences between
+     * snapshots of them, so they may be edited meanwhile. Must be called on
+     * the FX thread.
+     *
+     * @param originalData the array before the changes
+     * @param revisedData  the array after the changes
+     * @return a future which completes once every difference was found
+     */
+    public CompletableFuture<Void> compare(ObservableByteArray originalData, ObservableByteArray revisedData) {
+        int current = ++generation;
+        original.setData(originalData);
+        revised.setData(revisedData);
+        differences.clear();
+
+        // The differences are read in the background while the views may be edited
+        ByteDiff diff = new ByteDiff(originalData.snapshot(), revisedData.snapshot());
+        return CompletableFuture.runAsync(() -> {
+            Iterator<DiffRange> iterator = diff.iterator();
+            List<DiffRange> batch = new ArrayList<>(BATCH_SIZE);
+            while (generation == current && iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() == BATCH_SIZE) {
+                    publish(current, batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            publish(current, batch);
+        });
+    }
+
+    private void publish(int current, List<DiffRange> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Platform.runLater(() -> {
+            if (generation != current) {
+                return;
+            }
+            List<Highlight> left = new ArrayList<>(batch.size());
+            List<Highlight> right = new ArrayList<>(batch.size());
+            for (DiffRange range : batch) {
+                Color color = colorOf(range.getType());
+                left.add(new Highlight(range.getOriginalFrom(), range.getOriginalTo(), color));
+                right.add(new Highlight(range.getRevisedFrom(), range.getRevisedTo(), color));
+            }
+            original.addHighlights(left);
+            revised.addHighlights(right);
+            differences.addAll(batch);
+        });
+    }
+
+    private static Color colorOf(DiffRange.Type type) {
+        switch (type) {
+            case INSERTED:
+                return INSERTED;
+            case DELETED:
+                return DELETED;
+            default:
+                return CHANGED;
+        }
+    }
+
+    /**
+     * Selects the first difference after the focused byte of the original on
+     * both sides.
+     *
+     * @return the difference, or null if there are no more found so far
+     */
+    public DiffRange nextDifference() {
+        TablePosition<?, ?> focused = original.getSelectionModel().getFocusedCell();
+        long offset = -1;
+        if (focused != null && focused.getRow() >= 0 && focused.getColumn() >= 0 && focused.getColumn() < 16) {
+            offset = HexGrid.offsetOf(focused.getRow(), focused.getColumn());
+        }
+        for (DiffRange range : differences) {
+            if (range.getOriginalFrom() > offset) {
+                showDifference(range);
+                return range;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Selects {@code range} on both sides and scrolls to it.
+     */
+    public void showDifference(DiffRange range) {
+        followingScroll = true;
+        try {
+            selectOrScroll(original, range.getOriginalFrom(), range.getOriginalTo());
+            selectOrScroll(revised, range.getRevisedFrom(), range.getRevisedTo());
+        } finally {
+            followingScroll = false;
+        }
+    }
+
+    private static void selectOrScroll(HexArea area, long from, long to) {
+        long size = area.getData().sizeLong();
+        if (from < to) {
+            area.select(from, to);
+        } else if (size > 0) {
+            area.scrollToOffset(Math.min(from, size - 1));
+        }
+    }
+
+    /**
+     * @return the differences found so far, in order
+     */
+    public ObservableList<DiffRange> getDifferences() {
+        return differences;
+    }
+
+    public HexArea getOriginal() {
+        return original;
+    }
+
+    public HexArea getRevised() {
+        return revised;
+    }
+
+    @Override
+    protected void layoutChildren() {
+        super.layoutChildren();
+        if (!scrollingSynchronized) {
+            // The scroll bars only exist once both areas have their skins
+            ScrollBar left = verticalScrollBar(original);
+            ScrollBar right = verticalScrollBar(revised);
+            if (left != null && right != null) {
+                left.valueProperty().addListener((observable, oldValue, newValue) -> follow(left, right));
+                right.valueProperty().addListener((observable, oldValue, newValue) -> follow(right, left));
+                scrollingSynchronized = true;
+            }
+        }
+    }
+
+    private void follow(ScrollBar source, ScrollBar target) {
+        if (followingScroll) {
+            return;
+        }
+        followingScroll = true;
+        try {
+            double range = source.getMax() - source.getMin();
+            double position = range <= 0 ? 0 : (source.getValue() - source.getMin()) / range;
+            target.setValue(target.getMin() + position * (target.getMax() - target.getMin()));
+        } finally {
+            followingScroll = false;
+        }
+    }
+
+    private static ScrollBar verticalScrollBar(Node node) {
+        for (Node child : node.lookupAll(".scroll-bar")) {
+            if (child instanceof ScrollBar && ((ScrollBar) child).getOrientation() == Orientation.VERTICAL) {
+                return (ScrollBar) child;
+            }
+        }
+        return null;
+    }
+}
@@ -28,14 +28,70 @@ import java.util.*;
 public class HexGrid extends GridBase {
     private static final ByteSpreadsheetCellType BYTE = new ByteSpreadsheetCellType();
 
+    /**
+     * Number of rows kept materialized above and below the viewport
+     */
+    public static final int OVERSCAN_ROWS = 32;
+
+    private final ObservableByteArray data;
+    private final HexRowList rows;
+    private final byte[] rowBuffer = new byte[16];
+    private final char[] asciiBuffer = new char[16];
+
+    /**
+     * Number of row header labels kept, a power of two
+     */
+    private static final int LABEL_CACHE_SIZE = 512;
+
+    /**
+     * Row header labels, direct mapped by row. Labels only depend on the row,
+     * so they never need to be invalidated.
+     */
+    private final String[] labels = new String[LABEL_CACHE_SIZE];
+    private final int[] labelRows = new int[LABEL_CACHE_SIZE];
+
+    /**
+     * Highlights by their first byte, and the length of the longest one so
+     * the highlights overlapping a row can be found from their start
+     */
+    private final TreeMap<Long, List<Highlight>> highlights = new TreeMap<>();
+    private long longestHighlight;
+    private final List<Highlight> rowHighlights = new ArrayList<>();
+
+    /**
+     * Selected cells are styled here rather than selected in the table, so
+     * a selection costs the same for any number of bytes
+     */
+    private static final String SELECTED_STYLE = "-fx-background-color: -fx-selection-bar-non-focused;";
+    private final ByteSelection selection;
+
     private ObservableList<String> rowHeaders;
 
     /**
-     * {@inheritDoc}
+     * Creates a grid which reads its cells from {@code data} as rows scroll into view.
+     *
+     * @param data the bytes to display
+     */
+    public HexGrid(ObservableByteArray data) {
+        this(data, new ByteSelection());
+    }
+
+    /**
+     * Creates a grid which reads its cells from {@code data} as rows scroll
+     * into view and styles the bytes in {@code selection} as selected. The
+     * grid doesn't listen to the selection; rows are restyled when they are
+     * {@linkplain #refresh(long, long) refreshed}.
+     *
+     * @param data      the bytes to display
+     * @param selection the selected bytes
      */
-    public HexGrid() {
+    public HexGrid(ObservableByteArray data, ByteSelection selection) {
         super(0, 17);
 
+        this.data = data;
+        this.selection = selection;
+        this.rows = new HexRowList(this, OVERSCAN_ROWS * 2);
+
         rowHeaders = new ObservableList<String>() {
             @Override
             public void addListener(ListChangeListener<? super String> listener) {
@@ -104,7 +160,7 @@ public class HexGrid extends GridBase {
 
                     @Override
                     public String next() {
-                        String result = Long.toHexString(index);
+                        String result = ByteHelper.toOffsetString(index);
                         index += 16;
                         return result;
                     }
@@ -163,7 +219,7 @@ public class HexGrid extends GridBase {
 
             @Override
             public String get(int index) {
-                return String.format("%08X", index * 16);
+                return labelOf(index);
             }
 
             @Override
@@ -247,25 +303,228 @@ public class HexGrid extends GridBase {
         return rowHeaders;
     }
 
+    /**
+     * The rows of this grid are virtual: only rows near the viewport hold cells.
+     */
+    @Override
+    public ObservableList<ObservableList<SpreadsheetCell>> getRows() {
+        return rows;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    public ObservableByteArray getData() {
+        return data;
+    }
+
+    public ByteSelection getSelection() {
+        return selection;
+    }
+
     public void resize(int rowCount) {
-        if (rowCount <= getRowCount()) {
-            getRows().remove(getRowCount(), rowCount);
+        int oldRows = rows.size();
+        Object event = FlightRecorderEvents.beginGridResize();
+        long start = System.nanoTime();
+        rows.resize(rowCount);
+        EditorMetrics.getInstance().gridResized(System.nanoTime() - start);
+        FlightRecorderEvents.endGridResize(event, oldRows, rowCount);
+    }
+
+    /**
+     * Sizes the row cache for a viewport of {@code visibleRows} rows.
+     *
+     * @param visibleRows the number of rows the view can show at once
+     */
+    public void setViewportRows(int visibleRows) {
+        rows.setCapacity(visibleRows * 2 + OVERSCAN_ROWS);
+    }
+
+    /**
+     * @return the number of rows which currently have cells allocated
+     */
+    public int getMaterializedRowCount() {
+        return rows.getCachedRowCount();
+    }
+
+    /**
+     * Reloads every materialized row overlapping the byte range {@code [from, to)}.
+     *
+     * @param from the first changed byte
+     * @param to   the end of the changed range, exclusive
+     */
+    public void refresh(long from, long to) {
+        rows.refresh(rowOf(from), rowsFor(to));
+    }
+
+    /**
+     * Adds highlights and redraws the rows they cover.
+     *
+     * @param added the highlights to add
+     */
+    public void addHighlights(Collection<Highlight> added) {
+        long from = Long.MAX_VALUE;
+        long to = Long.MIN_VALUE;
+        for (Highlight highlight : added) {
+            if (highlight.getFrom() == highlight.getTo()) {
+                continue;
+            }
+            highlights.computeIfAbsent(highlight.getFrom(), key -> new ArrayList<>(1)).add(highlight);
+            longestHighlight = Math.max(longestHighlight, highlight.getTo() - highlight.getFrom());
+            from = Math.min(from, highlight.getFrom());
+            to = Math.max(to, highlight.getTo());
+        }
+        if (from < to) {
+            refresh(from, to);
+        }
+    }
+
+    /**
+     * Removes a highlight and redraws the rows it covered.
+     *
+     * @param highlight the highlight to remove
+     * @return whether the highlight was present
+     */
+    public boolean removeHighlight(Highlight highlight) {
+        List<Highlight> list = highlights.get(highlight.getFrom());
+        if (list == null || !list.remove(highlight)) {
+            return false;
+        }
+        if (list.isEmpty()) {
+            highlights.remove(highlight.getFrom());
+        }
+        refresh(highlight.getFrom(), highlight.getTo());
+        return true;
+    }
+
+    public void clearHighlights() {
+        if (highlights.isEmpty()) {
             return;
         }
+        long from = highlights.firstKey();
+        long to = highlights.lastKey() + longestHighlight;
+        highlights.clear();
+        longestHighlight = 0;
+        refresh(from, to);
+    }
+
+    /**
+     * @return every highlight, ordered by their first byte
+     */
+    public List<Highlight> getHighlights() {
+        List<Highlight> result = new ArrayList<>();
+        highlights.values().forEach(result::addAll);
+        return result;
+    }
+
+    /**
+     * @param size the number of bytes to display
+     * @return the number of rows needed to display {@code size} bytes. Rows
+     * past {@link Integer#MAX_VALUE}, 32 GiB into the data, can't be shown
+     */
+    public static int rowsFor(long size) {
+        return (int) Math.min(size / 16 + (size % 16 == 0 ? 0 : 1), Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param offset an offset into the data
+     * @return the row displaying {@code offset}
+     */
+    public static int rowOf(long offset) {
+        return (int) Math.min(offset / 16, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param row    a row of the grid
+     * @param column a byte column of the grid
+     * @return the offset into the data displayed by the given cell
+     */
+    public static long offsetOf(int row, int column) {
+        return (long) row * 16 + column;
+    }
+
+    /**
+     * @param row a row of the grid
+     * @return the row header label for {@code row}, the offset of its first byte
+     */
+    String labelOf(int row) {
+        int slot = row & (LABEL_CACHE_SIZE - 1);
+        String label = labels[slot];
+        if (label == null || labelRows[slot] != row) {
+            label = ByteHelper.toOffsetString(offsetOf(row, 0));
+            labels[slot] = label;
+            labelRows[slot] = row;
+        }
+        return label;
+    }
+
+    ObservableList<SpreadsheetCell> createRow(int row) {
+        ObservableList<SpreadsheetCell> list = FXCollections.observableArrayList(new ArrayList<>(17));
+        for (int column = 0; column < getColumnCount() - 1; ++column) {
+            list.add(new SpreadsheetCellBase(row, column, 1, 1, BYTE));
+        }
+        SpreadsheetCell cell = new SpreadsheetCellBase(row, 16, 1, 1, SpreadsheetCellType.STRING);
+        cell.setEditable(false);
+        list.add(cell);
+        fillRow(row, list);
+        return list;
+    }
+
+    void fillRow(int row, List<SpreadsheetCell> cells) {
+        long offset = offsetOf(row, 0);
+        int length = (int) Math.max(0, Math.min(16, data.sizeLong() - offset));
+        data.copyTo(offset, rowBuffer, 0, length);
+        collectHighlights(offset, offset + 16);
+        boolean anySelected = selection.intersects(offset, offset + 16);
+
+        for (int column = 0; column < 16; column++) {
+            SpreadsheetCell cell = cells.get(column);
+            if (column < length) {
+                byte b = rowBuffer[column];
+                cell.itemProperty().set(b);
+                cell.setEditable(true);
+                asciiBuffer[column] = ByteHelper.toPrintable(b);
+            } else {
+                cell.itemProperty().set(null);
+                cell.setEditable(false);
+            }
+            cell.setStyle(anySelected && selection.contains(offset + column) ? SELECTED_STYLE : styleAt(offset + column));
+        }
 
-        ObservableList<ObservableList<SpreadsheetCell>> rows = FXCollections.observableArrayList(new ArrayList<>(rowCount - getRowCount()));
+        cells.get(16).itemProperty().set(new String(asciiBuffer, 0, length));
+        EditorMetrics.getInstance().rowFilled(length);
+    }
 
-        for (int row = getRowCount(); row < rowCount; ++row) {
-            ObservableList<SpreadsheetCell> list = FXCollections.observableArrayList(new ArrayList<>(17));
-            for (int column = 0; column < getColumnCount() - 1; ++column) {
-                list.add(new SpreadsheetCellBase(row, column, 1, 1, BYTE));
+    /**
+     * Collects the highlights overlapping {@code [from, to)} into {@link #rowHighlights}.
+     */
+    private void collectHighlights(long from, long to) {
+        rowHighlights.clear();
+        if (highlights.isEmpty()) {
+            return;
+        }
+        for (List<Highlight> list : highlights.subMap(Math.max(0, from - longestHighlight + 1), true, to, false).values()) {
+            for (Highlight highlight : list) {
+                if (highlight.getTo() > from) {
+                    rowHighlights.add(highlight);
+                }
             }
-            SpreadsheetCell cell = new SpreadsheetCellBase(row, 16, 1, 1, SpreadsheetCellType.STRING);
-            cell.setEditable(false);
-            list.add(cell);
-            rows.add(list);
         }
+    }
 
-        getRows().addAll(rows);
+    /**
+     * @return the style of the last highlight in {@link #rowHighlights} covering {@code offset}, or null
+     */
+    private String styleAt(long offset) {
+        String style = null;
+        for (int i = 0; i < rowHighlights.size(); i++) {
+            Highlight highlight = rowHighlights.get(i);
+            if (highlight.getFrom() <= offset && offset < highlight.getTo()) {
+                style = highlight.getStyle();
+            }
+        }
+        return style;
     }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+import org.controlsfx.control.spreadsheet.SpreadsheetCell;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A virtual list of grid rows. Only the size is tracked for the whole file;
+ * the cells of a row are built by the owning {@link HexGrid} the first time
+ * the row is requested and are kept in a bounded LRU cache, so the number of
+ * live cells depends on the viewport and not on the size of the data.
+ */
+class HexRowList extends ObservableListBase<ObservableList<SpreadsheetCell>> {
+    private final HexGrid grid;
+    private final LinkedHashMap<Integer, ObservableList<SpreadsheetCell>> cache;
+
+    private int capacity;
+    private int size;
+
+    HexRowList(HexGrid grid, int capacity) {
+        this.grid = grid;
+        this.capacity = capacity;
+        this.cache = new LinkedHashMap<Integer, ObservableList<SpreadsheetCell>>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ObservableList<SpreadsheetCell>> eldest) {
+                return size() > HexRowList.this.capacity;
+            }
+        };
+    }
+
+    @Override
+    public ObservableList<SpreadsheetCell> get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of bounds for " + size + " rows");
+        }
+        ObservableList<SpreadsheetCell> cells = cache.get(row);
+        if (cells == null) {
+            cells = grid.createRow(row);
+            cache.put(row, cells);
+        }
+        return cells;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of rows whose cells are currently materialized
+     */
+    int getCachedRowCount() {
+        return cache.size();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    void setCapacity(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        Iterator<Integer> it = cache.keySet().iterator();
+        while (cache.size() > this.capacity && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    void resize(int newSize) {
+        if (newSize < 0) {
+            throw new IllegalArgumentException("Can't resize to negative value: " + newSize);
+        }
+        int oldSize = size;
+        if (newSize == oldSize) {
+            return;
+        }
+        size = newSize;
+        if (newSize < oldSize) {
+            cache.keySet().removeIf(row -> row >= newSize);
+        }
+
+        beginChange();
+        if (newSize > oldSize) {
+            nextAdd(oldSize, newSize);
+        } else {
+            // The removed rows were never materialized as a whole, so report them as placeholders
+            nextRemove(newSize, Collections.<ObservableList<SpreadsheetCell>>nCopies(oldSize - newSize, null));
+        }
+        endChange();
+    }
+
+    /**
+     * Reloads the cached rows between {@code fromRow} (inclusive) and
+     * {@code toRow} (exclusive) from the backing data. Rows that are not
+     * materialized are left alone; they are read when they scroll into view.
+     */
+    void refresh(int fromRow, int toRow) {
+        toRow = Math.min(toRow, size);
+        if (fromRow >= toRow) {
+            return;
+        }
+        if (toRow - fromRow <= cache.size()) {
+            for (int row = fromRow; row < toRow; row++) {
+                ObservableList<SpreadsheetCell> cells = cache.get(row);
+                if (cells != null) {
+                    grid.fillRow(row, cells);
+                }
+            }
+        } else {
+            for (Map.Entry<Integer, ObservableList<SpreadsheetCell>> entry : cache.entrySet()) {
+                int row = entry.getKey();
+                if (row >= fromRow && row < toRow) {
+                    grid.fillRow(row, entry.getValue());
+                }
+            }
+        }
+    }
+}
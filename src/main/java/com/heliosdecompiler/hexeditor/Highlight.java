@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+import javafx.scene.paint.Color;
+
+/**
+ * A range of bytes drawn with a background color, such as a search result
+ * or a signature match.
+ */
+public class Highlight {
+    private final long from;
+    private final long to;
+    private final Color color;
+    private final String style;
+
+    /**
+     * @param from  the first highlighted byte
+     * @param to    the end of the range, exclusive
+     * @param color the background of the highlighted cells
+     */
+    public Highlight(long from, long to, Color color) {
+        if (from < 0 || to < from) {
+            throw new IllegalArgumentException("Invalid range [" + from + ", " + to + ")");
+        }
+        this.from = from;
+        this.to = to;
+        this.color = color;
+        this.style = String.format("-fx-background-color: rgba(%d, %d, %d, %s);",
+                (int) Math.round(color.getRed() * 255), (int) Math.round(color.getGreen() * 255),
+                (int) Math.round(color.getBlue() * 255), color.getOpacity());
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    public long getTo() {
+        return to;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    /**
+     * @return the inline style applied to highlighted cells
+     */
+    String getStyle() {
+        return style;
+    }
+}
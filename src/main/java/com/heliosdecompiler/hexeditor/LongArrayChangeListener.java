@@ -0,0 +1,37 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+/**
+ * Receives change notifications from an {@link ObservableByteArray} with
+ * 64-bit offsets, for arrays which may be larger than 2 GiB.
+ *
+ * @see ObservableByteArray#addLongListener(LongArrayChangeListener)
+ */
+@FunctionalInterface
+public interface LongArrayChangeListener {
+
+    /**
+     * Called after a change has been made to an {@link ObservableByteArray}.
+     *
+     * @param array       the array which changed
+     * @param sizeChanged whether the size of the array changed
+     * @param from        the first changed offset
+     * @param to          the end of the changed range, exclusive
+     */
+    void onChanged(ObservableByteArray array, boolean sizeChanged, long from, long to);
+}
@@ -0,0 +1,539 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An {@link ObservableByteArray} which reads its content from a file through
+ * memory mapped windows instead of loading it onto the heap. Only a bounded
+ * number of windows are mapped at once; the least recently used window is
+ * released when another one is needed.
+ * <p>
+ * The file itself is never written to. Edits are kept in an overlay of
+ * page sized blocks which shadow the mapped content, so the heap cost of an
+ * edit is proportional to the number of pages touched.
+ */
+public class MappedFileByteArray extends AbstractObservableByteArray implements Closeable {
+
+    /**
+     * The default size of a mapped window, 64 MiB
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+    /**
+     * The default number of windows which may be mapped at the same time
+     */
+    public static final int DEFAULT_MAX_WINDOWS = 8;
+
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    /**
+     * Size of the scratch buffer used when copying between observable arrays
+     */
+    private static final int TRANSFER_SIZE = 64 * 1024;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int windowSize;
+    private final Map<Long, MappedByteBuffer> windows;
+    private final Map<Long, byte[]> overlay = new HashMap<>();
+
+    /**
+     * Bytes at or past this position are never read from the file, either
+     * because they are past its end or because the array was truncated
+     */
+    private long backedSize;
+    private long size;
+
+    /**
+     * Maps {@code path} with the default window size and window count.
+     *
+     * @param path the file to open
+     * @throws IOException if the file could not be opened
+     */
+    public MappedFileByteArray(Path path) throws IOException {
+        this(path, DEFAULT_WINDOW_SIZE, DEFAULT_MAX_WINDOWS);
+    }
+
+    /**
+     * Maps {@code path} in windows of {@code windowSize} bytes, keeping at most
+     * {@code maxWindows} of them mapped at once.
+     *
+     * @param path       the file to open
+     * @param windowSize the size of a window, rounded up to a multiple of the page size
+     * @param maxWindows the maximum number of mapped windows
+     * @throws IOException if the file could not be opened
+     */
+    public MappedFileByteArray(Path path, int windowSize, int maxWindows) throws IOException {
+        if (windowSize <= 0) throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+        if (maxWindows <= 0) throw new IllegalArgumentException("Window count must be positive: " + maxWindows);
+
+        this.path = path;
+        this.windowSize = (int) Math.min(((long) windowSize + PAGE_MASK) & ~PAGE_MASK, Integer.MAX_VALUE & ~PAGE_MASK);
+        this.windows = new LinkedHashMap<Long, MappedByteBuffer>(maxWindows, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, MappedByteBuffer> eldest) {
+                // The mapping itself is released once the buffer is collected
+                return size() > maxWindows;
+            }
+        };
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.backedSize = fileSize;
+        this.size = fileSize;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return whether the content differs from the file on disk
+     */
+    public boolean isModified() {
+        return !overlay.isEmpty() || size != fileSize || backedSize != fileSize;
+    }
+
+    /**
+     * @return the number of pages currently held in the edit overlay
+     */
+    public int getOverlayPageCount() {
+        return overlay.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (windows) {
+            windows.clear();
+        }
+        channel.close();
+    }
+
+    @Override
+    public void clear() {
+        resize(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Files larger than 2 GiB report {@link Integer#MAX_VALUE}; use {@link #sizeLong()}.
+     */
+    @Override
+    public int size() {
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long sizeLong() {
+        return size;
+    }
+
+    @Override
+    public void addAll(ObservableByteArray src) {
+        addAll(src, 0, src.size());
+    }
+
+    @Override
+    public void addAll(byte... elements) {
+        addAll(elements, 0, elements.length);
+    }
+
+    @Override
+    public void addAll(ObservableByteArray src, int srcIndex, int length) {
+        rangeCheck(src, srcIndex, length);
+        growCheck(length);
+        willReplace(size, 0, length);
+        long start = size;
+        size += length;
+        transfer(src, srcIndex, start, length);
+        fireRangeChange(length != 0, start, size);
+    }
+
+    @Override
+    public void addAll(byte[] src, int srcIndex, int length) {
+        rangeCheck(src, srcIndex, length);
+        growCheck(length);
+        willReplace(size, 0, length);
+        long start = size;
+        size += length;
+        write(start, src, srcIndex, length);
+        fireRangeChange(length != 0, start, size);
+    }
+
+    @Override
+    public void setAll(ObservableByteArray src) {
+        setAll(src, 0, src.size());
+    }
+
+    @Override
+    public void setAll(ObservableByteArray src, int srcIndex, int length) {
+        rangeCheck(src, srcIndex, length);
+        boolean sizeChanged = size != length;
+        willReplace(0, size, length);
+        if (src == this) {
+            // Moving towards the start, so a forward copy never reads overwritten bytes
+            transfer(this, srcIndex, 0, length);
+            truncate(length);
+        } else {
+            discard();
+            size = length;
+            transfer(src, srcIndex, 0, length);
+        }
+        fireRangeChange(sizeChanged, 0, length);
+    }
+
+    @Override
+    public void setAll(byte[] src, int srcIndex, int length) {
+        rangeCheck(src, srcIndex, length);
+        boolean sizeChanged = size != length;
+        willReplace(0, size, length);
+        discard();
+        size = length;
+        write(0, src, srcIndex, length);
+        fireRangeChange(sizeChanged, 0, length);
+    }
+
+    @Override
+    public void setAll(byte[] src) {
+        setAll(src, 0, src.length);
+    }
+
+    @Override
+    public void set(int destIndex, byte[] src, int srcIndex, int length) {
+        set((long) destIndex, src, srcIndex, length);
+    }
+
+    @Override
+    public void set(long destIndex, byte[] src, int srcIndex, int length) {
+        rangeCheck(destIndex + length);
+        if (destIndex < 0) throw new ArrayIndexOutOfBoundsException((int) Math.max(destIndex, Integer.MIN_VALUE));
+        willReplace(destIndex, length, length);
+        write(destIndex, src, srcIndex, length);
+        fireRangeChange(false, destIndex, destIndex + length);
+    }
+
+    @Override
+    public void set(int destIndex, ObservableByteArray src, int srcIndex, int length) {
+        rangeCheck(destIndex + length);
+        if (src == this) {
+            rangeCheck((long) srcIndex + length);
+        }
+        willReplace(destIndex, length, length);
+        if (src == this) {
+            move(srcIndex, destIndex, length);
+        } else {
+            transfer(src, srcIndex, destIndex, length);
+        }
+        fireRangeChange(false, destIndex, destIndex + length);
+    }
+
+    @Override
+    public byte[] toArray(byte[] dest) {
+        if (size > Integer.MAX_VALUE) {
+            throw new OutOfMemoryError("Array of " + size + " bytes can't be copied to a byte[]");
+        }
+        if ((dest == null) || (size() > dest.length)) {
+            dest = new byte[size()];
+        }
+        read(0, dest, 0, size());
+        return dest;
+    }
+
+    @Override
+    public byte get(int index) {
+        return get((long) index);
+    }
+
+    @Override
+    public byte get(long index) {
+        indexCheck(index);
+        return read(index);
+    }
+
+    @Override
+    public void set(int index, byte value) {
+        set((long) index, value);
+    }
+
+    @Override
+    public void set(long index, byte value) {
+        indexCheck(index);
+        willReplace(index, 1, 1);
+        page(index >>> PAGE_SHIFT)[(int) (index & PAGE_MASK)] = value;
+        fireRangeChange(false, index, index + 1);
+    }
+
+    @Override
+    public byte[] toArray(int index, byte[] dest, int length) {
+        rangeCheck(index + length);
+        if ((dest == null) || (length > dest.length)) {
+            dest = new byte[length];
+        }
+        read(index, dest, 0, length);
+        return dest;
+    }
+
+    @Override
+    public void copyTo(int srcIndex, byte[] dest, int destIndex, int length) {
+        copyTo((long) srcIndex, dest, destIndex, length);
+    }
+
+    @Override
+    public void copyTo(long srcIndex, byte[] dest, int destIndex, int length) {
+        rangeCheck(srcIndex + length);
+        if (srcIndex < 0 || length < 0) throw new ArrayIndexOutOfBoundsException((int) Math.min(srcIndex, Integer.MAX_VALUE));
+        if (destIndex < 0 || destIndex + length > dest.length) throw new ArrayIndexOutOfBoundsException(destIndex);
+        read(srcIndex, dest, destIndex, length);
+    }
+
+    @Override
+    public void copyTo(int srcIndex, ObservableByteArray dest, int destIndex, int length) {
+        rangeCheck(srcIndex + length);
+        dest.set(destIndex, toArray(srcIndex, null, length), 0, length);
+    }
+
+    @Override
+    public void resize(int newSize) {
+        resize((long) newSize);
+    }
+
+    @Override
+    public void resize(long newSize) {
+        if (newSize < 0) {
+            throw new NegativeArraySizeException("Can't resize to negative value: " + newSize);
+        }
+        long minSize = Math.min(size, newSize);
+        boolean sizeChanged = size != newSize;
+        willReplace(minSize, size - minSize, newSize - minSize);
+        truncate(minSize);
+        size = newSize;
+        fireRangeChange(sizeChanged, minSize, newSize);
+    }
+
+    @Override
+    public void ensureCapacity(int capacity) {
+        // Capacity is allocated a page at a time as the overlay is written
+    }
+
+    @Override
+    public void trimToSize() {
+        // Pages past the end are already dropped when the array shrinks
+    }
+
+    private byte read(long pos) {
+        byte[] page = overlay.get(pos >>> PAGE_SHIFT);
+        if (page != null) {
+            return page[(int) (pos & PAGE_MASK)];
+        }
+        if (pos >= backedSize) {
+            return 0;
+        }
+        return window(pos / windowSize).get((int) (pos % windowSize));
+    }
+
+    private void read(long pos, byte[] dest, int destIndex, int length) {
+        while (length > 0) {
+            int offset = (int) (pos & PAGE_MASK);
+            int count = Math.min(length, PAGE_SIZE - offset);
+
+            byte[] page = overlay.get(pos >>> PAGE_SHIFT);
+            if (page != null) {
+                System.arraycopy(page, offset, dest, destIndex, count);
+            } else {
+                readBacked(pos, dest, destIndex, count);
+            }
+
+            pos += count;
+            destIndex += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Reads a range which lies within a single page from the file, filling
+     * anything past {@link #backedSize} with zeroes.
+     */
+    private void readBacked(long pos, byte[] dest, int destIndex, int length) {
+        int backed = (int) Math.max(0, Math.min(length, backedSize - pos));
+        if (backed > 0) {
+            ByteBuffer window = window(pos / windowSize).duplicate();
+            window.position((int) (pos % windowSize));
+            window.get(dest, destIndex, backed);
+        }
+        Arrays.fill(dest, destIndex + backed, destIndex + length, (byte) 0);
+    }
+
+    private void write(long pos, byte[] src, int srcIndex, int length) {
+        while (length > 0) {
+            int offset = (int) (pos & PAGE_MASK);
+            int count = Math.min(length, PAGE_SIZE - offset);
+            System.arraycopy(src, srcIndex, page(pos >>> PAGE_SHIFT), offset, count);
+
+            pos += count;
+            srcIndex += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Copies from an observable array into the overlay through a bounded scratch buffer.
+     */
+    private void transfer(ObservableByteArray src, int srcIndex, long destPos, int length) {
+        byte[] buffer = new byte[Math.min(length, TRANSFER_SIZE)];
+        while (length > 0) {
+            int count = Math.min(length, buffer.length);
+            src.copyTo(srcIndex, buffer, 0, count);
+            write(destPos, buffer, 0, count);
+
+            srcIndex += count;
+            destPos += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Copies {@code length} bytes of this array from {@code from} to
+     * {@code to}, in the direction which reads every byte before it is
+     * overwritten when the ranges overlap.
+     */
+    private void move(long from, long to, int length) {
+        if (from == to || length == 0) {
+            return;
+        }
+        byte[] buffer = new byte[Math.min(length, TRANSFER_SIZE)];
+        if (to < from) {
+            for (int done = 0; done < length; ) {
+                int count = Math.min(buffer.length, length - done);
+                read(from + done, buffer, 0, count);
+                write(to + done, buffer, 0, count);
+                done += count;
+            }
+        } else {
+            // Towards the end, so copy from the back to not overwrite what is still to be read
+            for (int left = length; left > 0; ) {
+                int count = Math.min(buffer.length, left);
+                left -= count;
+                read(from + left, buffer, 0, count);
+                write(to + left, buffer, 0, count);
+            }
+        }
+    }
+
+    /**
+     * @return the overlay page with the given index, copying it in from the file if needed
+     */
+    private byte[] page(long index) {
+        byte[] page = overlay.get(index);
+        if (page == null) {
+            page = new byte[PAGE_SIZE];
+            readBacked(index << PAGE_SHIFT, page, 0, PAGE_SIZE);
+            overlay.put(index, page);
+        }
+        return page;
+    }
+
+    private MappedByteBuffer window(long index) {
+        // Snapshots of a piece table over this array read it from other
+        // threads, and even a lookup reorders the access ordered map
+        synchronized (windows) {
+            MappedByteBuffer window = windows.get(index);
+            if (window == null) {
+                long start = index * windowSize;
+                long length = Math.min(windowSize, fileSize - start);
+                try {
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                windows.put(index, window);
+            }
+            return window;
+        }
+    }
+
+    /**
+     * Drops everything past {@code newSize} so that growing the array again reads zeroes.
+     */
+    private void truncate(long newSize) {
+        if (newSize < size) {
+            backedSize = Math.min(backedSize, newSize);
+            long lastPage = newSize >>> PAGE_SHIFT;
+            overlay.keySet().removeIf(page -> page > lastPage);
+            byte[] page = overlay.get(lastPage);
+            if (page != null) {
+                Arrays.fill(page, (int) (newSize & PAGE_MASK), PAGE_SIZE, (byte) 0);
+            }
+        }
+        size = newSize;
+    }
+
+    private void discard() {
+        overlay.clear();
+        backedSize = 0;
+        size = 0;
+    }
+
+    private void growCheck(int length) {
+        if (size + length < 0) {
+            throw new OutOfMemoryError(); // overflow
+        }
+    }
+
+    private void indexCheck(long index) {
+        if (index < 0 || index >= size) throw new ArrayIndexOutOfBoundsException("Index out of range: " + index);
+    }
+
+    private void rangeCheck(long size) {
+        if (size > this.size) throw new ArrayIndexOutOfBoundsException("Index out of range: " + this.size);
+    }
+
+    private void rangeCheck(ObservableByteArray src, int srcIndex, int length) {
+        if (src == null) throw new NullPointerException();
+        if (srcIndex < 0 || srcIndex + length > src.size()) {
+            throw new ArrayIndexOutOfBoundsException(src.size());
+        }
+        if (length < 0) throw new ArrayIndexOutOfBoundsException(-1);
+    }
+
+    private void rangeCheck(byte[] src, int srcIndex, int length) {
+        if (src == null) throw new NullPointerException();
+        if (srcIndex < 0 || srcIndex + length > src.length) {
+            throw new ArrayIndexOutOfBoundsException(src.length);
+        }
+        if (length < 0) throw new ArrayIndexOutOfBoundsException(-1);
+    }
+
+    @Override
+    public String toString() {
+        return "MappedFileByteArray[path=" + path + ", size=" + size + ", overlayPages=" + overlay.size() + "]";
+    }
+}
@@ -19,6 +19,9 @@ package com.heliosdecompiler.hexeditor;
 import javafx.collections.ArrayChangeListener;
 import javafx.collections.ObservableArray;
 
+import java.nio.ByteOrder;
+import java.util.function.Consumer;
+
 /**
  * {@code ObservableByteArray} is a {@code byte[]} array that allows listeners
  * to track changes when they occur. In order to track changes, the internal
@@ -204,4 +207,328 @@ public interface ObservableByteArray extends ObservableArray<ObservableByteArray
      * @return an int array containing the copy of specified portion the observable array
      */
     public byte[] toArray(int srcIndex, byte[] dest, int length);
+
+    /**
+     * Returns the size of this array as a {@code long}. Arrays larger than
+     * 2 GiB report {@link Integer#MAX_VALUE} from {@link #size()} and must be
+     * navigated through the long-addressed methods.
+     *
+     * @return the number of bytes in this array
+     */
+    public default long sizeLong() {
+        return size();
+    }
+
+    /**
+     * Gets a single value of array at a 64-bit offset.
+     *
+     * @param index index of element to get
+     * @return value at the given index
+     * @throws ArrayIndexOutOfBoundsException if {@code index} is outside
+     *                                        array bounds
+     * @see #get(int)
+     */
+    public default byte get(long index) {
+        if ((int) index != index) throw new ArrayIndexOutOfBoundsException("Index out of range: " + index);
+        return get((int) index);
+    }
+
+    /**
+     * Sets a single value in the array at a 64-bit offset.
+     *
+     * @param index index of the value to set
+     * @param value new value for the given index
+     * @throws ArrayIndexOutOfBoundsException if {@code index} is outside
+     *                                        array bounds
+     * @see #set(int, byte)
+     */
+    public default void set(long index, byte value) {
+        if ((int) index != index) throw new ArrayIndexOutOfBoundsException("Index out of range: " + index);
+        set((int) index, value);
+    }
+
+    /**
+     * Copies specified portion of array, starting at a 64-bit offset, into
+     * {@code dest} array.
+     *
+     * @param srcIndex  starting position in the observable array
+     * @param dest      destination array
+     * @param destIndex starting position in destination array
+     * @param length    length of portion to copy
+     * @see #copyTo(int, byte[], int, int)
+     */
+    public default void copyTo(long srcIndex, byte[] dest, int destIndex, int length) {
+        if ((int) srcIndex != srcIndex) throw new ArrayIndexOutOfBoundsException("Index out of range: " + srcIndex);
+        copyTo((int) srcIndex, dest, destIndex, length);
+    }
+
+    /**
+     * Copies a portion of specified array into this observable array,
+     * starting at a 64-bit offset.
+     *
+     * @param destIndex the starting destination position in this observable array
+     * @param src       source array to copy
+     * @param srcIndex  starting position in source array
+     * @param length    length of portion to copy
+     * @see #set(int, byte[], int, int)
+     */
+    public default void set(long destIndex, byte[] src, int srcIndex, int length) {
+        if ((int) destIndex != destIndex) throw new ArrayIndexOutOfBoundsException("Index out of range: " + destIndex);
+        set((int) destIndex, src, srcIndex, length);
+    }
+
+    /**
+     * Resizes the array to a 64-bit size. New bytes are zero.
+     *
+     * @param newSize the new size of the array
+     * @throws NegativeArraySizeException if {@code newSize} is negative
+     * @throws OutOfMemoryError if this array can't hold {@code newSize} bytes
+     * @see #resize(int)
+     */
+    public default void resize(long newSize) {
+        if (newSize < 0) throw new NegativeArraySizeException("Can't resize to negative value: " + newSize);
+        if (newSize > Integer.MAX_VALUE) throw new OutOfMemoryError(getClass().getName() + " can't hold " + newSize + " bytes");
+        resize((int) newSize);
+    }
+
+    /**
+     * @return whether this array supports {@link #insert(long, byte[], int, int)}
+     * and {@link #remove(long, long)}
+     */
+    public default boolean supportsInsert() {
+        return false;
+    }
+
+    /**
+     * Inserts a portion of specified array at {@code index}, shifting the
+     * bytes at and after {@code index} towards the end. Listeners are notified
+     * of a size change covering everything from {@code index} to the new end.
+     *
+     * @param index    position at which to insert, between 0 and the size inclusive
+     * @param src      source array to copy
+     * @param srcIndex starting position in source array
+     * @param length   length of portion to insert
+     * @throws UnsupportedOperationException if this array doesn't support insertion
+     * @throws ArrayIndexOutOfBoundsException if {@code index} is outside array bounds
+     */
+    public default void insert(long index, byte[] src, int srcIndex, int length) {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support insertion");
+    }
+
+    /**
+     * Removes the bytes between {@code from} inclusive and {@code to} exclusive,
+     * shifting the following bytes towards the start. Listeners are notified
+     * of a size change covering everything from {@code from} to the old end.
+     *
+     * @param from the first byte to remove
+     * @param to   the end of the range to remove, exclusive
+     * @throws UnsupportedOperationException if this array doesn't support removal
+     * @throws ArrayIndexOutOfBoundsException if the range is outside array bounds
+     */
+    public default void remove(long from, long to) {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support removal");
+    }
+
+    /**
+     * Reads {@code length} bytes from {@code index} as an unsigned integer.
+     * The range is checked once and copied in one call; implementations
+     * override this to read their storage directly. The typed accessors
+     * below are built on it.
+     *
+     * @param index  the first byte
+     * @param length the number of bytes, from 1 to 8
+     * @param order  the order of the bytes
+     * @return the value, zero extended
+     * @throws ArrayIndexOutOfBoundsException if the range is outside array bounds
+     */
+    public default long getUnsigned(long index, int length, ByteOrder order) {
+        if (length < 1 || length > 8) throw new IllegalArgumentException("Length must be from 1 to 8: " + length);
+        byte[] bytes = new byte[length];
+        copyTo(index, bytes, 0, length);
+        return ByteHelper.toUnsigned(bytes, 0, length, order);
+    }
+
+    /**
+     * @return the two bytes at {@code index} in the given order
+     * @throws ArrayIndexOutOfBoundsException if the range is outside array bounds
+     */
+    public default short getShort(long index, ByteOrder order) {
+        return (short) getUnsigned(index, Short.BYTES, order);
+    }
+
+    /**
+     * @return the four bytes at {@code index} in the given order
+     * @throws ArrayIndexOutOfBoundsException if the range is outside array bounds
+     */
+    public default int getInt(long index, ByteOrder order) {
+        return (int) getUnsigned(index, Integer.BYTES, order);
+    }
+
+    /**
+     * @return the eight bytes at {@code index} in the given order
+     * @throws ArrayIndexOutOfBoundsException if the range is outside array bounds
+     */
+    public default long getLong(long index, ByteOrder order) {
+        return getUnsigned(index, Long.BYTES, order);
+    }
+
+    /**
+     * @return the IEEE 754 single precision value at {@code index} in the given order
+     * @throws ArrayIndexOutOfBoundsException if the range is outside array bounds
+     */
+    public default float getFloat(long index, ByteOrder order) {
+        return Float.intBitsToFloat(getInt(index, order));
+    }
+
+    /**
+     * @return the IEEE 754 double precision value at {@code index} in the given order
+     * @throws ArrayIndexOutOfBoundsException if the range is outside array bounds
+     */
+    public default double getDouble(long index, ByteOrder order) {
+        return Double.longBitsToDouble(getLong(index, order));
+    }
+
+    /**
+     * @return the unsigned LEB128 value at {@code index}, truncated to 64 bits
+     * @throws ArrayIndexOutOfBoundsException if the value runs past the end of the array
+     * @throws IllegalArgumentException       if the value is longer than {@link ByteHelper#MAX_LEB128_LENGTH} bytes
+     * @see #getLeb128Length(long)
+     */
+    public default long getUnsignedLeb128(long index) {
+        return ByteHelper.fromLeb128(ByteHelper.leb128At(this, index), false);
+    }
+
+    /**
+     * @return the signed LEB128 value at {@code index}, truncated to 64 bits
+     * @throws ArrayIndexOutOfBoundsException if the value runs past the end of the array
+     * @throws IllegalArgumentException       if the value is longer than {@link ByteHelper#MAX_LEB128_LENGTH} bytes
+     * @see #getLeb128Length(long)
+     */
+    public default long getSignedLeb128(long index) {
+        return ByteHelper.fromLeb128(ByteHelper.leb128At(this, index), true);
+    }
+
+    /**
+     * @return the number of bytes taken by the LEB128 value at {@code index}
+     * @throws ArrayIndexOutOfBoundsException if the value runs past the end of the array
+     * @throws IllegalArgumentException       if the value is longer than {@link ByteHelper#MAX_LEB128_LENGTH} bytes
+     */
+    public default int getLeb128Length(long index) {
+        return ByteHelper.leb128Length(ByteHelper.leb128At(this, index));
+    }
+
+    /**
+     * Decodes {@code length} bytes of modified UTF-8, as written by
+     * {@link java.io.DataOutput#writeUTF(String)} after its two byte length.
+     *
+     * @param index  the first byte
+     * @param length the number of bytes
+     * @return the decoded string
+     * @throws ArrayIndexOutOfBoundsException if the range is outside array bounds
+     * @throws IllegalArgumentException       if the bytes are malformed
+     */
+    public default String getModifiedUtf8(long index, int length) {
+        if (length < 0) throw new ArrayIndexOutOfBoundsException(-1);
+        byte[] bytes = new byte[length];
+        copyTo(index, bytes, 0, length);
+        return ByteHelper.fromModifiedUtf8(bytes, 0, length);
+    }
+
+    /**
+     * Returns a read-only view of the current content which doesn't change
+     * when this array is modified afterwards. Implementations with paged
+     * storage share their pages with the snapshot and copy a page only when
+     * it is next written to, and a piece table shares its pieces, so taking a
+     * snapshot is O(1); others copy their content.
+     * <p>
+     * The snapshot may be read from any thread while this array is edited.
+     *
+     * @return an immutable copy of this array
+     * @throws OutOfMemoryError if the content has to be copied and doesn't fit in the free heap
+     */
+    public default ObservableByteArray snapshot() {
+        return ByteArraySnapshot.copyOf(this);
+    }
+
+    /**
+     * Add a listener which is notified of changes with 64-bit offsets.
+     *
+     * @param listener the listener to add
+     */
+    public void addLongListener(LongArrayChangeListener listener);
+
+    /**
+     * Tries to remove a listener added with {@link #addLongListener(LongArrayChangeListener)}.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeLongListener(LongArrayChangeListener listener);
+
+    /**
+     * Add a listener which is given the bytes each change replaced, and the
+     * bytes which replaced them. The bytes are only captured while such a
+     * listener is registered.
+     *
+     * @param listener the listener to add
+     */
+    public void addByteChangeListener(ByteChangeListener listener);
+
+    /**
+     * Tries to remove a listener added with {@link #addByteChangeListener(ByteChangeListener)}.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeByteChangeListener(ByteChangeListener listener);
+
+    /**
+     * Starts an update transaction. Until the matching {@link #endUpdate()},
+     * changes are not reported individually; they are merged into a single
+     * notification covering every changed range, which is sent when the
+     * outermost transaction commits. Transactions may be nested.
+     */
+    public void beginUpdate();
+
+    /**
+     * Ends an update transaction. When the outermost transaction ends, the
+     * merged change notification is sent, followed by one {@link DeltaState}
+     * to every {@link EditListener} describing everything that was changed.
+     *
+     * @throws IllegalStateException if no transaction is in progress
+     */
+    public void endUpdate();
+
+    /**
+     * @return whether an update transaction is in progress
+     */
+    public boolean isUpdating();
+
+    /**
+     * Runs {@code edits} against this array inside an update transaction.
+     *
+     * @param edits the edits to make
+     * @see #beginUpdate()
+     */
+    public default void batch(Consumer<? super ObservableByteArray> edits) {
+        beginUpdate();
+        try {
+            edits.accept(this);
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * Add a listener which is given an undoable {@link DeltaState} each time
+     * an update transaction commits.
+     *
+     * @param listener the listener to add
+     */
+    public void addEditListener(EditListener listener);
+
+    /**
+     * Tries to remove a listener added with {@link #addEditListener(EditListener)}.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeEditListener(EditListener listener);
 }
@@ -16,17 +16,23 @@
 
 package com.heliosdecompiler.hexeditor;
 
-import javafx.collections.ObservableArrayBase;
-
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
-public class ObservableByteArrayImpl extends ObservableArrayBase<ObservableByteArray> implements ObservableByteArray {
+public class ObservableByteArrayImpl extends AbstractObservableByteArray {
 
     private static final byte[] INITIAL = new byte[0];
 
     private byte[] array = INITIAL;
     private int size = 0;
 
+    /**
+     * Whether {@link #array} is referenced by a snapshot and must be copied
+     * before it is written to
+     */
+    private boolean shared;
+
     /**
      * Creates empty observable integer array
      */
@@ -61,18 +67,35 @@ public class ObservableByteArrayImpl extends ObservableArrayBase<ObservableByteA
         return size;
     }
 
+    /**
+     * Takes a snapshot in O(1) by sharing the backing array. The whole array
+     * is copied the next time this array is modified; use a
+     * {@link PagedByteArray} to copy only the pages which are modified.
+     *
+     * @return an immutable view of the current content
+     */
+    @Override
+    public ObservableByteArray snapshot() {
+        shared = true;
+        return new ByteArraySnapshot(new ByteBuffer[]{ByteBuffer.wrap(array)}, 31, size);
+    }
+
     private void addAllInternal(ObservableByteArray src, int srcIndex, int length) {
+        willReplace(size, 0, length);
         growCapacity(length);
+        unshare();
         src.copyTo(srcIndex, array, size, length);
         size += length;
-        fireChange(length != 0, size - length, size);
+        fireRangeChange(length != 0, size - length, size);
     }
 
     private void addAllInternal(byte[] src, int srcIndex, int length) {
+        willReplace(size, 0, length);
         growCapacity(length);
+        unshare();
         System.arraycopy(src, srcIndex, array, size, length);
         size += length;
-        fireChange(length != 0, size - length, size);
+        fireRangeChange(length != 0, size - length, size);
     }
 
     @Override
@@ -103,26 +126,32 @@ public class ObservableByteArrayImpl extends ObservableArrayBase<ObservableByteA
             if (srcIndex == 0) {
                 resize(length);
             } else {
+                willReplace(0, size, length);
+                unshare();
                 System.arraycopy(array, srcIndex, array, 0, length);
                 size = length;
-                fireChange(sizeChanged, 0, size);
+                fireRangeChange(sizeChanged, 0, size);
             }
         } else {
+            willReplace(0, size, length);
             size = 0;
             ensureCapacity(length);
+            unshare();
             src.copyTo(srcIndex, array, 0, length);
             size = length;
-            fireChange(sizeChanged, 0, size);
+            fireRangeChange(sizeChanged, 0, size);
         }
     }
 
     private void setAllInternal(byte[] src, int srcIndex, int length) {
         boolean sizeChanged = size() != length;
+        willReplace(0, size, length);
         size = 0;
         ensureCapacity(length);
+        unshare();
         System.arraycopy(src, srcIndex, array, 0, length);
         size = length;
-        fireChange(sizeChanged, 0, size);
+        fireRangeChange(sizeChanged, 0, size);
     }
 
     @Override
@@ -150,15 +179,19 @@ public class ObservableByteArrayImpl extends ObservableArrayBase<ObservableByteA
     @Override
     public void set(int destIndex, byte[] src, int srcIndex, int length) {
         rangeCheck(destIndex + length);
+        willReplace(destIndex, length, length);
+        unshare();
         System.arraycopy(src, srcIndex, array, destIndex, length);
-        fireChange(false, destIndex, destIndex + length);
+        fireRangeChange(false, destIndex, destIndex + length);
     }
 
     @Override
     public void set(int destIndex, ObservableByteArray src, int srcIndex, int length) {
         rangeCheck(destIndex + length);
+        willReplace(destIndex, length, length);
+        unshare();
         src.copyTo(srcIndex, array, destIndex, length);
-        fireChange(false, destIndex, destIndex + length);
+        fireRangeChange(false, destIndex, destIndex + length);
     }
 
     @Override
@@ -176,11 +209,20 @@ public class ObservableByteArrayImpl extends ObservableArrayBase<ObservableByteA
         return array[index];
     }
 
+    @Override
+    public long getUnsigned(long index, int length, ByteOrder order) {
+        if (length < 1 || length > 8) throw new IllegalArgumentException("Length must be from 1 to 8: " + length);
+        if (index < 0 || index + length > size) throw new ArrayIndexOutOfBoundsException("Index out of range: " + index);
+        return ByteHelper.toUnsigned(array, (int) index, length, order);
+    }
+
     @Override
     public void set(int index, byte value) {
         rangeCheck(index + 1);
+        willReplace(index, 1, 1);
+        unshare();
         array[index] = value;
-        fireChange(false, index, index + 1);
+        fireRangeChange(false, index, index + 1);
     }
 
     @Override
@@ -205,17 +247,49 @@ public class ObservableByteArrayImpl extends ObservableArrayBase<ObservableByteA
         dest.set(destIndex, array, srcIndex, length);
     }
 
+    @Override
+    public boolean supportsInsert() {
+        return true;
+    }
+
+    @Override
+    public void insert(long index, byte[] src, int srcIndex, int length) {
+        if (index < 0 || index > size) throw new ArrayIndexOutOfBoundsException(size);
+        rangeCheck(src, srcIndex, length);
+        int at = (int) index;
+        willReplace(at, 0, length);
+        growCapacity(length);
+        unshare();
+        System.arraycopy(array, at, array, at + length, size - at);
+        System.arraycopy(src, srcIndex, array, at, length);
+        size += length;
+        fireRangeChange(length != 0, at, size);
+    }
+
+    @Override
+    public void remove(long from, long to) {
+        if (from < 0 || from > to || to > size) throw new ArrayIndexOutOfBoundsException(size);
+        int oldSize = size;
+        willReplace(from, to - from, 0);
+        unshare();
+        System.arraycopy(array, (int) to, array, (int) from, size - (int) to);
+        size -= (int) (to - from);
+        fireRangeChange(from != to, from, oldSize);
+    }
+
     @Override
     public void resize(int newSize) {
         if (newSize < 0) {
             throw new NegativeArraySizeException("Can't resize to negative value: " + newSize);
         }
-        ensureCapacity(newSize);
         int minSize = Math.min(size, newSize);
+        willReplace(minSize, size - minSize, newSize - minSize);
+        ensureCapacity(newSize);
+        unshare();
         boolean sizeChanged = size != newSize;
         size = newSize;
         Arrays.fill(array, minSize, size, (byte) 0);
-        fireChange(sizeChanged, minSize, newSize);
+        fireRangeChange(sizeChanged, minSize, newSize);
     }
 
     /**
@@ -243,6 +317,14 @@ public class ObservableByteArrayImpl extends ObservableArrayBase<ObservableByteA
     public void ensureCapacity(int capacity) {
         if (array.length < capacity) {
             array = Arrays.copyOf(array, capacity);
+            shared = false;
+        }
+    }
+
+    private void unshare() {
+        if (shared) {
+            array = array.clone();
+            shared = false;
         }
     }
 
@@ -260,6 +342,7 @@ public class ObservableByteArrayImpl extends ObservableArrayBase<ObservableByteA
             byte[] newArray = new byte[size];
             System.arraycopy(array, 0, newArray, 0, size);
             array = newArray;
+            shared = false;
         }
     }
 
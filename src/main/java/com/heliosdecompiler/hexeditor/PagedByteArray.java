@@ -0,0 +1,625 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * An {@link ObservableByteArray} which stores its content in fixed size
+ * pages instead of one contiguous {@code byte[]}. Growing the array only
+ * allocates the pages it needs, so appending never copies the existing
+ * content and the array isn't limited to 2 GiB. Pages are either on the
+ * heap or direct {@link ByteBuffer}s outside of it.
+ * <p>
+ * Capacity is kept when the array shrinks; {@link #trimToSize()} releases
+ * the pages past the end.
+ * <p>
+ * {@link #snapshot()} shares the pages with the snapshot instead of copying
+ * them. Each page remembers the snapshot epoch it was allocated in, and a
+ * page from an earlier epoch is copied before it is written to.
+ */
+public class PagedByteArray extends AbstractObservableByteArray {
+
+    /**
+     * The default size of a page, 64 KiB
+     */
+    public static final int DEFAULT_PAGE_SIZE = 64 * 1024;
+
+    /**
+     * Size of the scratch buffer used when moving bytes within the array
+     */
+    private static final int TRANSFER_SIZE = 64 * 1024;
+
+    private final int pageShift;
+    private final int pageSize;
+    private final int pageMask;
+    private final boolean direct;
+
+    private ByteBuffer[] pages = new ByteBuffer[0];
+    private int pageCount;
+    private long size;
+
+    /**
+     * Incremented by every snapshot. A page may only be written to if it was
+     * allocated in the current epoch.
+     */
+    private int epoch;
+    private int[] pageEpochs = new int[0];
+
+    /**
+     * Whether {@link #pages} itself is referenced by a snapshot
+     */
+    private boolean tableShared;
+
+    /**
+     * Creates an empty array of {@link #DEFAULT_PAGE_SIZE} pages on the heap.
+     */
+    public PagedByteArray() {
+        this(DEFAULT_PAGE_SIZE, false);
+    }
+
+    /**
+     * Creates an empty array.
+     *
+     * @param pageSize the size of a page, rounded up to a power of two
+     * @param direct   whether to allocate the pages outside of the heap
+     */
+    public PagedByteArray(int pageSize, boolean direct) {
+        if (pageSize <= 0 || pageSize > 1 << 30) {
+            throw new IllegalArgumentException("Page size must be between 1 and 2^30: " + pageSize);
+        }
+        this.pageShift = 32 - Integer.numberOfLeadingZeros(pageSize - 1);
+        this.pageSize = 1 << pageShift;
+        this.pageMask = this.pageSize - 1;
+        this.direct = direct;
+    }
+
+    /**
+     * Creates an array of {@link #DEFAULT_PAGE_SIZE} pages on the heap with a
+     * copy of the given elements.
+     *
+     * @param elements initial values to copy
+     */
+    public PagedByteArray(byte... elements) {
+        this();
+        setAll(elements);
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return the number of pages currently allocated
+     */
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * @return whether the pages are allocated outside of the heap
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Takes a snapshot in O(1). The pages are copied one at a time as they
+     * are written to afterwards.
+     *
+     * @return an immutable view of the current content
+     */
+    @Override
+    public ObservableByteArray snapshot() {
+        tableShared = true;
+        epoch++;
+        return new ByteArraySnapshot(pages, pageShift, size);
+    }
+
+    /**
+     * @return true, since {@link #snapshot()} shares the storage
+     */
+    @Override
+    protected boolean snapshotsShareStorage() {
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        resize(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Arrays larger than 2 GiB report {@link Integer#MAX_VALUE}; use {@link #sizeLong()}.
+     */
+    @Override
+    public int size() {
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long sizeLong() {
+        return size;
+    }
+
+    @Override
+    public void addAll(ObservableByteArray src) {
+        addAll(src, 0, src.size());
+    }
+
+    @Override
+    public void addAll(byte... elements) {
+        addAll(elements, 0, elements.length);
+    }
+
+    @Override
+    public void addAll(ObservableByteArray src, int srcIndex, int length) {
+        rangeCheck(src, srcIndex, length);
+        willReplace(size, 0, length);
+        long start = size;
+        ensureCapacity(start + length);
+        transfer(src, srcIndex, start, length);
+        size += length;
+        fireRangeChange(length != 0, start, size);
+    }
+
+    @Override
+    public void addAll(byte[] src, int srcIndex, int length) {
+        rangeCheck(src, srcIndex, length);
+        willReplace(size, 0, length);
+        long start = size;
+        ensureCapacity(start + length);
+        write(start, src, srcIndex, length);
+        size += length;
+        fireRangeChange(length != 0, start, size);
+    }
+
+    @Override
+    public void setAll(ObservableByteArray src) {
+        setAll(src, 0, src.size());
+    }
+
+    @Override
+    public void setAll(ObservableByteArray src, int srcIndex, int length) {
+        rangeCheck(src, srcIndex, length);
+        boolean sizeChanged = size != length;
+        willReplace(0, size, length);
+        if (src == this) {
+            move(srcIndex, 0, length);
+        } else {
+            ensureCapacity(length);
+            transfer(src, srcIndex, 0, length);
+        }
+        size = length;
+        fireRangeChange(sizeChanged, 0, length);
+    }
+
+    @Override
+    public void setAll(byte[] src, int srcIndex, int length) {
+        rangeCheck(src, srcIndex, length);
+        boolean sizeChanged = size != length;
+        willReplace(0, size, length);
+        ensureCapacity(length);
+        write(0, src, srcIndex, length);
+        size = length;
+        fireRangeChange(sizeChanged, 0, length);
+    }
+
+    @Override
+    public void setAll(byte[] src) {
+        setAll(src, 0, src.length);
+    }
+
+    @Override
+    public void set(int destIndex, byte[] src, int srcIndex, int length) {
+        set((long) destIndex, src, srcIndex, length);
+    }
+
+    @Override
+    public void set(long destIndex, byte[] src, int srcIndex, int length) {
+        rangeCheck(destIndex + length);
+        if (destIndex < 0) throw new ArrayIndexOutOfBoundsException((int) Math.max(destIndex, Integer.MIN_VALUE));
+        rangeCheck(src, srcIndex, length);
+        willReplace(destIndex, length, length);
+        write(destIndex, src, srcIndex, length);
+        fireRangeChange(false, destIndex, destIndex + length);
+    }
+
+    @Override
+    public void set(int destIndex, ObservableByteArray src, int srcIndex, int length) {
+        rangeCheck((long) destIndex + length);
+        if (destIndex < 0) throw new ArrayIndexOutOfBoundsException(destIndex);
+        rangeCheck(src, srcIndex, length);
+        willReplace(destIndex, length, length);
+        if (src == this) {
+            move(srcIndex, destIndex, length);
+        } else {
+            transfer(src, srcIndex, destIndex, length);
+        }
+        fireRangeChange(false, destIndex, destIndex + length);
+    }
+
+    @Override
+    public byte[] toArray(byte[] dest) {
+        if (size > Integer.MAX_VALUE) {
+            throw new OutOfMemoryError("Array of " + size + " bytes can't be copied to a byte[]");
+        }
+        if ((dest == null) || (size() > dest.length)) {
+            dest = new byte[size()];
+        }
+        read(0, dest, 0, size());
+        return dest;
+    }
+
+    @Override
+    public byte get(int index) {
+        return get((long) index);
+    }
+
+    @Override
+    public byte get(long index) {
+        indexCheck(index);
+        return pages[(int) (index >>> pageShift)].get((int) (index & pageMask));
+    }
+
+    @Override
+    public long getUnsigned(long index, int length, ByteOrder order) {
+        if (length < 1 || length > 8) throw new IllegalArgumentException("Length must be from 1 to 8: " + length);
+        if (index < 0 || index + length > size) throw new ArrayIndexOutOfBoundsException("Index out of range: " + index);
+        int offset = (int) (index & pageMask);
+        if (offset + length > pageSize) {
+            // Split across two pages
+            byte[] bytes = new byte[length];
+            read(index, bytes, 0, length);
+            return ByteHelper.toUnsigned(bytes, 0, length, order);
+        }
+        ByteBuffer page = pages[(int) (index >>> pageShift)];
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            int shift = order == ByteOrder.BIG_ENDIAN ? (length - 1 - i) * 8 : i * 8;
+            value |= (page.get(offset + i) & 0xFFL) << shift;
+        }
+        return value;
+    }
+
+    @Override
+    public void set(int index, byte value) {
+        set((long) index, value);
+    }
+
+    @Override
+    public void set(long index, byte value) {
+        indexCheck(index);
+        willReplace(index, 1, 1);
+        writablePage((int) (index >>> pageShift)).put((int) (index & pageMask), value);
+        fireRangeChange(false, index, index + 1);
+    }
+
+    @Override
+    public byte[] toArray(int index, byte[] dest, int length) {
+        rangeCheck((long) index + length);
+        if (index < 0 || length < 0) throw new ArrayIndexOutOfBoundsException(Math.min(index, length));
+        if ((dest == null) || (length > dest.length)) {
+            dest = new byte[length];
+        }
+        read(index, dest, 0, length);
+        return dest;
+    }
+
+    @Override
+    public void copyTo(int srcIndex, byte[] dest, int destIndex, int length) {
+        copyTo((long) srcIndex, dest, destIndex, length);
+    }
+
+    @Override
+    public void copyTo(long srcIndex, byte[] dest, int destIndex, int length) {
+        rangeCheck(srcIndex + length);
+        if (srcIndex < 0 || length < 0) throw new ArrayIndexOutOfBoundsException((int) Math.min(srcIndex, Integer.MAX_VALUE));
+        if (destIndex < 0 || destIndex + length > dest.length) throw new ArrayIndexOutOfBoundsException(destIndex);
+        read(srcIndex, dest, destIndex, length);
+    }
+
+    @Override
+    public void copyTo(int srcIndex, ObservableByteArray dest, int destIndex, int length) {
+        rangeCheck((long) srcIndex + length);
+        if (srcIndex < 0 || length < 0) throw new ArrayIndexOutOfBoundsException(Math.min(srcIndex, length));
+        if (dest == this) {
+            set(destIndex, this, srcIndex, length);
+            return;
+        }
+        if (direct) {
+            dest.set(destIndex, toArray(srcIndex, null, length), 0, length);
+            return;
+        }
+        // Hand the pages over as they are, so nothing is copied twice
+        long pos = srcIndex;
+        while (length > 0) {
+            int offset = (int) (pos & pageMask);
+            int count = Math.min(length, pageSize - offset);
+            dest.set(destIndex, pages[(int) (pos >>> pageShift)].array(), offset, count);
+            pos += count;
+            destIndex += count;
+            length -= count;
+        }
+    }
+
+    @Override
+    public boolean supportsInsert() {
+        return true;
+    }
+
+    @Override
+    public void insert(long index, byte[] src, int srcIndex, int length) {
+        if (index < 0 || index > size) throw new ArrayIndexOutOfBoundsException("Index out of range: " + index);
+        rangeCheck(src, srcIndex, length);
+        willReplace(index, 0, length);
+        ensureCapacity(size + length);
+        move(index, index + length, size - index);
+        write(index, src, srcIndex, length);
+        size += length;
+        fireRangeChange(length != 0, index, size);
+    }
+
+    @Override
+    public void remove(long from, long to) {
+        if (from < 0 || from > to || to > size) throw new ArrayIndexOutOfBoundsException("Index out of range: " + size);
+        long oldSize = size;
+        willReplace(from, to - from, 0);
+        move(to, from, size - to);
+        size -= to - from;
+        fireRangeChange(from != to, from, oldSize);
+    }
+
+    @Override
+    public void resize(int newSize) {
+        resize((long) newSize);
+    }
+
+    @Override
+    public void resize(long newSize) {
+        if (newSize < 0) {
+            throw new NegativeArraySizeException("Can't resize to negative value: " + newSize);
+        }
+        long minSize = Math.min(size, newSize);
+        boolean sizeChanged = size != newSize;
+        willReplace(minSize, size - minSize, newSize - minSize);
+        if (newSize > size) {
+            // Pages allocated from here on are already zero
+            zero(size, Math.min(newSize, (long) pageCount << pageShift));
+            ensureCapacity(newSize);
+        }
+        size = newSize;
+        fireRangeChange(sizeChanged, minSize, newSize);
+    }
+
+    @Override
+    public void ensureCapacity(int capacity) {
+        ensureCapacity((long) capacity);
+    }
+
+    /**
+     * Allocates pages until {@code capacity} bytes fit. Existing pages are
+     * never moved or copied.
+     *
+     * @param capacity the number of bytes the array should be able to hold
+     */
+    public void ensureCapacity(long capacity) {
+        long needed = (capacity + pageMask) >>> pageShift;
+        if (needed <= pageCount) {
+            return;
+        }
+        if (needed > Integer.MAX_VALUE - 8) {
+            throw new OutOfMemoryError("Array of " + capacity + " bytes needs too many pages");
+        }
+        if (needed > pages.length) {
+            // Only the page references are copied
+            int length = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, pages.length + (pages.length >> 1)));
+            pages = Arrays.copyOf(pages, length);
+            pageEpochs = Arrays.copyOf(pageEpochs, length);
+            tableShared = false;
+        } else {
+            unshareTable();
+        }
+        while (pageCount < needed) {
+            pageEpochs[pageCount] = epoch;
+            pages[pageCount++] = allocatePage();
+        }
+    }
+
+    /**
+     * Releases the pages past the end of the array.
+     */
+    @Override
+    public void trimToSize() {
+        int needed = (int) ((size + pageMask) >>> pageShift);
+        unshareTable();
+        Arrays.fill(pages, needed, pageCount, null);
+        pageCount = needed;
+        if (pages.length > needed) {
+            pages = Arrays.copyOf(pages, needed);
+            pageEpochs = Arrays.copyOf(pageEpochs, needed);
+        }
+    }
+
+    private void read(long pos, byte[] dest, int destIndex, int length) {
+        while (length > 0) {
+            int offset = (int) (pos & pageMask);
+            int count = Math.min(length, pageSize - offset);
+            ByteBuffer page = pages[(int) (pos >>> pageShift)];
+            if (direct) {
+                ByteBuffer view = page.duplicate();
+                view.position(offset);
+                view.get(dest, destIndex, count);
+            } else {
+                System.arraycopy(page.array(), offset, dest, destIndex, count);
+            }
+
+            pos += count;
+            destIndex += count;
+            length -= count;
+        }
+    }
+
+    private void write(long pos, byte[] src, int srcIndex, int length) {
+        while (length > 0) {
+            int offset = (int) (pos & pageMask);
+            int count = Math.min(length, pageSize - offset);
+            ByteBuffer page = writablePage((int) (pos >>> pageShift));
+            if (direct) {
+                ByteBuffer view = page.duplicate();
+                view.position(offset);
+                view.put(src, srcIndex, count);
+            } else {
+                System.arraycopy(src, srcIndex, page.array(), offset, count);
+            }
+
+            pos += count;
+            srcIndex += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Copies from another observable array straight into the pages, through
+     * a scratch buffer only if they are direct.
+     */
+    private void transfer(ObservableByteArray src, int srcIndex, long destPos, int length) {
+        byte[] buffer = direct ? new byte[Math.min(length, pageSize)] : null;
+        while (length > 0) {
+            int offset = (int) (destPos & pageMask);
+            int count = Math.min(length, pageSize - offset);
+            ByteBuffer page = writablePage((int) (destPos >>> pageShift));
+            if (direct) {
+                src.copyTo(srcIndex, buffer, 0, count);
+                ByteBuffer view = page.duplicate();
+                view.position(offset);
+                view.put(buffer, 0, count);
+            } else {
+                src.copyTo(srcIndex, page.array(), offset, count);
+            }
+
+            srcIndex += count;
+            destPos += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Moves {@code length} bytes from {@code from} to {@code to} within the
+     * allocated pages, like {@link System#arraycopy} does for overlapping
+     * ranges.
+     */
+    private void move(long from, long to, long length) {
+        if (from == to || length == 0) {
+            return;
+        }
+        byte[] buffer = new byte[(int) Math.min(length, TRANSFER_SIZE)];
+        if (to < from) {
+            for (long done = 0; done < length; ) {
+                int count = (int) Math.min(buffer.length, length - done);
+                read(from + done, buffer, 0, count);
+                write(to + done, buffer, 0, count);
+                done += count;
+            }
+        } else {
+            // Towards the end, so copy from the back to not overwrite what is still to be read
+            for (long left = length; left > 0; ) {
+                int count = (int) Math.min(buffer.length, left);
+                left -= count;
+                read(from + left, buffer, 0, count);
+                write(to + left, buffer, 0, count);
+            }
+        }
+    }
+
+    private void zero(long from, long to) {
+        while (from < to) {
+            int offset = (int) (from & pageMask);
+            int count = (int) Math.min(to - from, pageSize - offset);
+            ByteBuffer page = writablePage((int) (from >>> pageShift));
+            if (direct) {
+                for (int i = 0; i < count; i++) {
+                    page.put(offset + i, (byte) 0);
+                }
+            } else {
+                Arrays.fill(page.array(), offset, offset + count, (byte) 0);
+            }
+            from += count;
+        }
+    }
+
+    private ByteBuffer allocatePage() {
+        return direct ? ByteBuffer.allocateDirect(pageSize) : ByteBuffer.allocate(pageSize);
+    }
+
+    /**
+     * @return page {@code index}, first copied if a snapshot shares it
+     */
+    private ByteBuffer writablePage(int index) {
+        ByteBuffer page = pages[index];
+        if (pageEpochs[index] != epoch) {
+            unshareTable();
+            ByteBuffer copy = allocatePage();
+            ByteBuffer view = page.duplicate();
+            view.clear();
+            copy.put(view);
+            copy.clear();
+            pages[index] = page = copy;
+            pageEpochs[index] = epoch;
+        }
+        return page;
+    }
+
+    private void unshareTable() {
+        if (tableShared) {
+            pages = pages.clone();
+            tableShared = false;
+        }
+    }
+
+    private void indexCheck(long index) {
+        if (index < 0 || index >= size) throw new ArrayIndexOutOfBoundsException("Index out of range: " + index);
+    }
+
+    private void rangeCheck(long size) {
+        if (size > this.size) throw new ArrayIndexOutOfBoundsException("Index out of range: " + this.size);
+    }
+
+    private void rangeCheck(ObservableByteArray src, int srcIndex, int length) {
+        if (src == null) throw new NullPointerException();
+        if (srcIndex < 0 || srcIndex + length > src.size()) {
+            throw new ArrayIndexOutOfBoundsException(src.size());
+        }
+        if (length < 0) throw new ArrayIndexOutOfBoundsException(-1);
+    }
+
+    private void rangeCheck(byte[] src, int srcIndex, int length) {
+        if (src == null) throw new NullPointerException();
+        if (srcIndex < 0 || srcIndex + length > src.length) {
+            throw new ArrayIndexOutOfBoundsException(src.length);
+        }
+        if (length < 0) throw new ArrayIndexOutOfBoundsException(-1);
+    }
+
+    @Override
+    public String toString() {
+        return "PagedByteArray[size=" + size + ", pages=" + pageCount + ", pageSize=" + pageSize + (direct ? ", direct" : "") + "]";
+    }
+}
@@ -0,0 +1,784 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An {@link ObservableByteArray} which stores its content as a piece table:
+ * a sequence of pieces, each referring to a run of bytes in either the
+ * read-only original array or an append-only buffer of added bytes.
+ * <p>
+ * The pieces are kept in a treap ordered by position, so locating an offset,
+ * inserting and removing bytes anywhere in the array are all O(log n) in the
+ * number of pieces, no matter how large the original content is. Writes to
+ * bytes which already live in the added buffer happen in place, and
+ * consecutive inserts or overwrites extend the previous piece instead of
+ * creating a new one.
+ * <p>
+ * {@link #snapshot()} is O(1): the snapshot shares the original, the added
+ * buffer and the pieces. Afterwards, pieces are copied before they are
+ * modified, and the bytes added before the snapshot are no longer
+ * overwritten in place.
+ * <p>
+ * The original array is never modified and must not be modified by anyone
+ * else while this table refers to it.
+ */
+public class PieceTableByteArray extends AbstractObservableByteArray implements Closeable {
+
+    private static final byte[] INITIAL = new byte[0];
+
+    /**
+     * The maximum size of array to allocate.
+     */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private final ObservableByteArray original;
+
+    private byte[] added = INITIAL;
+    private int addedSize = 0;
+
+    private Piece root;
+    private int seed = 0x2545F491;
+
+    /**
+     * Incremented by {@link #snapshot()}. Pieces of an older epoch may be
+     * shared with a snapshot, so they are copied before they are modified.
+     */
+    private int epoch;
+
+    /**
+     * The added bytes before this may be read by a snapshot, so they are
+     * never overwritten in place
+     */
+    private int sharedAddedSize;
+
+    /**
+     * The content of every snapshot taken, which is collected once no
+     * snapshot reads it anymore
+     */
+    private final List<WeakReference<Frozen>> snapshots = new ArrayList<>();
+
+    /**
+     * Results of the last call to {@link #split(Piece, long)}
+     */
+    private Piece splitLeft;
+    private Piece splitRight;
+
+    /**
+     * Offset into the piece returned by the last call to {@link #locate(long)}
+     */
+    private long locatedOffset;
+
+    private final byte[] single = new byte[1];
+
+    /**
+     * Creates an empty piece table
+     */
+    public PieceTableByteArray() {
+        this(new ObservableByteArrayImpl());
+    }
+
+    /**
+     * Creates a piece table with a copy of given initial values
+     *
+     * @param elements initial values to copy to the piece table
+     */
+    public PieceTableByteArray(byte... elements) {
+        this(new ObservableByteArrayImpl(elements));
+    }
+
+    /**
+     * Creates a piece table whose initial content is {@code original}. No data
+     * is copied; {@code original} is read whenever unmodified bytes are requested.
+     *
+     * @param original the initial content
+     */
+    public PieceTableByteArray(ObservableByteArray original) {
+        this.original = original;
+        if (original.sizeLong() > 0) {
+            root = newPiece(false, 0, original.sizeLong());
+        }
+    }
+
+    public ObservableByteArray getOriginal() {
+        return original;
+    }
+
+    /**
+     * A snapshot reads the original, so writing to the storage behind it,
+     * for example saving into the file it maps, would change the snapshot.
+     * Snapshots which are no longer referenced only stop counting once they
+     * are garbage collected.
+     *
+     * @return whether a snapshot of this table may still read the original
+     */
+    public boolean isOriginalShared() {
+        snapshots.removeIf(ref -> ref.get() == null);
+        return !snapshots.isEmpty();
+    }
+
+    /**
+     * @return the number of pieces the content is currently split into
+     */
+    public int getPieceCount() {
+        return root == null ? 0 : root.count;
+    }
+
+    /**
+     * Closes the original array if it is {@link Closeable}.
+     */
+    @Override
+    public void close() throws IOException {
+        if (original instanceof Closeable) {
+            ((Closeable) original).close();
+        }
+    }
+
+    @Override
+    public boolean supportsInsert() {
+        return true;
+    }
+
+    @Override
+    public ObservableByteArray snapshot() {
+        epoch++;
+        sharedAddedSize = addedSize;
+        Frozen content = new Frozen(original, added, root);
+        snapshots.removeIf(ref -> ref.get() == null);
+        snapshots.add(new WeakReference<>(content));
+        return new ByteArraySnapshot(content, sizeLong());
+    }
+
+    /**
+     * @return true, since {@link #snapshot()} shares the storage
+     */
+    @Override
+    protected boolean snapshotsShareStorage() {
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        resize(0);
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(sizeLong(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long sizeLong() {
+        return total(root);
+    }
+
+    @Override
+    public void insert(long index, byte[] src, int srcIndex, int length) {
+        if (index < 0 || index > sizeLong()) throw new ArrayIndexOutOfBoundsException("Index out of range: " + index);
+        rangeCheck(src, srcIndex, length);
+        willReplace(index, 0, length);
+        insertInternal(index, src, srcIndex, length);
+        fireRangeChange(length != 0, index, sizeLong());
+    }
+
+    @Override
+    public void remove(long from, long to) {
+        long size = sizeLong();
+        if (from < 0 || from > to || to > size) {
+            throw new ArrayIndexOutOfBoundsException("Range out of bounds: " + from + " to " + to);
+        }
+        willReplace(from, to - from, 0);
+        removeInternal(from, to);
+        fireRangeChange(from != to, from, size);
+    }
+
+    @Override
+    public void addAll(ObservableByteArray src) {
+        addAll(src, 0, src.size());
+    }
+
+    @Override
+    public void addAll(byte... elements) {
+        addAll(elements, 0, elements.length);
+    }
+
+    @Override
+    public void addAll(ObservableByteArray src, int srcIndex, int length) {
+        rangeCheck(src, srcIndex, length);
+        // Always copy, pieces must never share bytes in the added buffer
+        byte[] elements = src.toArray(srcIndex, null, length);
+        addAll(elements, 0, length);
+    }
+
+    @Override
+    public void addAll(byte[] src, int srcIndex, int length) {
+        rangeCheck(src, srcIndex, length);
+        long start = sizeLong();
+        willReplace(start, 0, length);
+        insertInternal(start, src, srcIndex, length);
+        fireRangeChange(length != 0, start, sizeLong());
+    }
+
+    @Override
+    public void setAll(ObservableByteArray src) {
+        setAll(src, 0, src.size());
+    }
+
+    @Override
+    public void setAll(ObservableByteArray src, int srcIndex, int length) {
+        rangeCheck(src, srcIndex, length);
+        boolean sizeChanged = sizeLong() != length;
+        willReplace(0, sizeLong(), length);
+        if (src == this) {
+            // Keep only the pieces covering the requested range
+            split(root, srcIndex);
+            split(splitRight, length);
+            root = splitLeft;
+        } else {
+            byte[] elements = src.toArray(srcIndex, null, length);
+            root = null;
+            clearAdded();
+            insertInternal(0, elements, 0, length);
+        }
+        fireRangeChange(sizeChanged, 0, length);
+    }
+
+    @Override
+    public void setAll(byte[] src, int srcIndex, int length) {
+        rangeCheck(src, srcIndex, length);
+        boolean sizeChanged = sizeLong() != length;
+        willReplace(0, sizeLong(), length);
+        root = null;
+        clearAdded();
+        insertInternal(0, src, srcIndex, length);
+        fireRangeChange(sizeChanged, 0, length);
+    }
+
+    @Override
+    public void setAll(byte[] src) {
+        setAll(src, 0, src.length);
+    }
+
+    @Override
+    public void set(int destIndex, byte[] src, int srcIndex, int length) {
+        set((long) destIndex, src, srcIndex, length);
+    }
+
+    @Override
+    public void set(long destIndex, byte[] src, int srcIndex, int length) {
+        rangeCheck(destIndex, length);
+        rangeCheck(src, srcIndex, length);
+        willReplace(destIndex, length, length);
+        setInternal(destIndex, src, srcIndex, length);
+        fireRangeChange(false, destIndex, destIndex + length);
+    }
+
+    @Override
+    public void set(int destIndex, ObservableByteArray src, int srcIndex, int length) {
+        rangeCheck(destIndex, length);
+        set(destIndex, src.toArray(srcIndex, null, length), 0, length);
+    }
+
+    @Override
+    public byte[] toArray(byte[] dest) {
+        long size = sizeLong();
+        if (size > MAX_ARRAY_SIZE) {
+            throw new OutOfMemoryError("Array of " + size + " bytes can't be copied to a byte[]");
+        }
+        if ((dest == null) || (size > dest.length)) {
+            dest = new byte[(int) size];
+        }
+        read(0, dest, 0, (int) size);
+        return dest;
+    }
+
+    @Override
+    public byte get(int index) {
+        return get((long) index);
+    }
+
+    @Override
+    public byte get(long index) {
+        if (index < 0 || index >= sizeLong()) throw new ArrayIndexOutOfBoundsException("Index out of range: " + index);
+        Piece piece = locate(index);
+        long pos = piece.start + locatedOffset;
+        return piece.isAdded ? added[(int) pos] : original.get(pos);
+    }
+
+    @Override
+    public void set(int index, byte value) {
+        set((long) index, value);
+    }
+
+    @Override
+    public void set(long index, byte value) {
+        if (index < 0 || index >= sizeLong()) throw new ArrayIndexOutOfBoundsException("Index out of range: " + index);
+        single[0] = value;
+        willReplace(index, 1, 1);
+        setInternal(index, single, 0, 1);
+        fireRangeChange(false, index, index + 1);
+    }
+
+    @Override
+    public byte[] toArray(int index, byte[] dest, int length) {
+        rangeCheck(index, length);
+        if ((dest == null) || (length > dest.length)) {
+            dest = new byte[length];
+        }
+        read(index, dest, 0, length);
+        return dest;
+    }
+
+    @Override
+    public void copyTo(int srcIndex, byte[] dest, int destIndex, int length) {
+        copyTo((long) srcIndex, dest, destIndex, length);
+    }
+
+    @Override
+    public void copyTo(long srcIndex, byte[] dest, int destIndex, int length) {
+        rangeCheck(srcIndex, length);
+        if (destIndex < 0 || destIndex + length > dest.length) throw new ArrayIndexOutOfBoundsException(destIndex);
+        read(srcIndex, dest, destIndex, length);
+    }
+
+    @Override
+    public void copyTo(int srcIndex, ObservableByteArray dest, int destIndex, int length) {
+        rangeCheck(srcIndex, length);
+        dest.set(destIndex, toArray(srcIndex, null, length), 0, length);
+    }
+
+    @Override
+    public void resize(int newSize) {
+        resize((long) newSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The new bytes are kept in the added buffer, so the array can grow by
+     * less than 2 GiB in total, while it can shrink to any size.
+     */
+    @Override
+    public void resize(long newSize) {
+        if (newSize < 0) {
+            throw new NegativeArraySizeException("Can't resize to negative value: " + newSize);
+        }
+        long size = sizeLong();
+        if (newSize - size > MAX_ARRAY_SIZE - addedSize) {
+            throw new OutOfMemoryError("Can't add " + (newSize - size) + " bytes to the " + addedSize + " bytes already added");
+        }
+        long minSize = Math.min(size, newSize);
+        willReplace(minSize, size - minSize, newSize - minSize);
+        if (newSize < size) {
+            removeInternal(newSize, size);
+        } else if (newSize > size) {
+            int length = (int) (newSize - size);
+            int start = reserveAdded(length);
+            Arrays.fill(added, start, start + length, (byte) 0);
+            appendPiece(size, start, length);
+        }
+        fireRangeChange(size != newSize, minSize, newSize);
+    }
+
+    @Override
+    public void ensureCapacity(int capacity) {
+        long needed = capacity - sizeLong();
+        if (needed > 0 && addedSize + needed > added.length) {
+            added = Arrays.copyOf(added, (int) Math.min(addedSize + needed, MAX_ARRAY_SIZE));
+        }
+    }
+
+    @Override
+    public void trimToSize() {
+        if (added.length != addedSize) {
+            added = Arrays.copyOf(added, addedSize);
+        }
+    }
+
+    private void read(long pos, byte[] dest, int destIndex, int length) {
+        while (length > 0) {
+            Piece piece = locate(pos);
+            int count = (int) Math.min(length, piece.length - locatedOffset);
+            long start = piece.start + locatedOffset;
+            if (piece.isAdded) {
+                System.arraycopy(added, (int) start, dest, destIndex, count);
+            } else {
+                original.copyTo(start, dest, destIndex, count);
+            }
+
+            pos += count;
+            destIndex += count;
+            length -= count;
+        }
+    }
+
+    private void setInternal(long pos, byte[] src, int srcIndex, int length) {
+        if (isWritableInPlace(pos, length)) {
+            // Every byte is already private to this table, so overwrite it in place
+            while (length > 0) {
+                Piece piece = locate(pos);
+                int count = (int) Math.min(length, piece.length - locatedOffset);
+                System.arraycopy(src, srcIndex, added, (int) (piece.start + locatedOffset), count);
+
+                pos += count;
+                srcIndex += count;
+                length -= count;
+            }
+        } else {
+            removeInternal(pos, pos + length);
+            insertInternal(pos, src, srcIndex, length);
+        }
+    }
+
+    /**
+     * @return whether the whole range is backed by added bytes which no
+     * snapshot can read
+     */
+    private boolean isWritableInPlace(long pos, int length) {
+        while (length > 0) {
+            Piece piece = locate(pos);
+            if (!piece.isAdded || piece.start + locatedOffset < sharedAddedSize) {
+                return false;
+            }
+            long count = Math.min(length, piece.length - locatedOffset);
+            pos += count;
+            length -= count;
+        }
+        return true;
+    }
+
+    private void insertInternal(long pos, byte[] src, int srcIndex, int length) {
+        if (length == 0) {
+            return;
+        }
+        int start = reserveAdded(length);
+        System.arraycopy(src, srcIndex, added, start, length);
+        appendPiece(pos, start, length);
+    }
+
+    /**
+     * Inserts a piece referring to {@code [start, start + length)} of the
+     * added buffer at {@code pos}, extending the preceding piece if it ends
+     * exactly where the new bytes begin.
+     */
+    private void appendPiece(long pos, int start, int length) {
+        split(root, pos);
+        Piece left = splitLeft;
+        Piece right = splitRight;
+        Piece extended = extendLast(left, start, length);
+        left = extended != null ? extended : merge(left, newPiece(true, start, length));
+        root = merge(left, right);
+    }
+
+    private void removeInternal(long from, long to) {
+        if (from == to) {
+            return;
+        }
+        split(root, from);
+        Piece left = splitLeft;
+        split(splitRight, to - from);
+        root = merge(left, splitRight);
+    }
+
+    /**
+     * Empties the added buffer once no piece refers to it anymore.
+     */
+    private void clearAdded() {
+        if (sharedAddedSize > 0) {
+            // A snapshot may still read the old bytes, so start a new buffer
+            added = INITIAL;
+            sharedAddedSize = 0;
+        }
+        addedSize = 0;
+    }
+
+    /**
+     * @return the offset in the added buffer where {@code length} new bytes may be written
+     */
+    private int reserveAdded(int length) {
+        int minCapacity = addedSize + length;
+        if (minCapacity < 0 || minCapacity > MAX_ARRAY_SIZE) {
+            throw new OutOfMemoryError();
+        }
+        if (minCapacity > added.length) {
+            int newCapacity = added.length + (added.length >> 1);
+            if (newCapacity < minCapacity || newCapacity > MAX_ARRAY_SIZE) newCapacity = minCapacity;
+            added = Arrays.copyOf(added, newCapacity);
+        }
+        int start = addedSize;
+        addedSize = minCapacity;
+        return start;
+    }
+
+    private Piece newPiece(boolean isAdded, long start, long length) {
+        // xorshift, only needs to be good enough to balance the treap
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        Piece piece = new Piece(isAdded, start, length, seed, epoch);
+        update(piece);
+        return piece;
+    }
+
+    /**
+     * @return {@code piece}, or a copy of it to modify instead if a snapshot may share it
+     */
+    private Piece own(Piece piece) {
+        if (piece.epoch == epoch) {
+            return piece;
+        }
+        Piece copy = new Piece(piece.isAdded, piece.start, piece.length, piece.priority, epoch);
+        copy.left = piece.left;
+        copy.right = piece.right;
+        copy.total = piece.total;
+        copy.count = piece.count;
+        return copy;
+    }
+
+    /**
+     * @return the piece containing {@code pos}, with the offset into it stored in {@link #locatedOffset}
+     */
+    private Piece locate(long pos) {
+        Piece piece = root;
+        while (piece != null) {
+            long leftTotal = total(piece.left);
+            if (pos < leftTotal) {
+                piece = piece.left;
+            } else if (pos < leftTotal + piece.length) {
+                locatedOffset = pos - leftTotal;
+                return piece;
+            } else {
+                pos -= leftTotal + piece.length;
+                piece = piece.right;
+            }
+        }
+        throw new ArrayIndexOutOfBoundsException("Index out of range: " + pos);
+    }
+
+    /**
+     * Splits {@code piece} so that {@link #splitLeft} holds the first {@code pos}
+     * bytes and {@link #splitRight} holds the rest, cutting a piece in two if needed.
+     */
+    private void split(Piece piece, long pos) {
+        if (piece == null) {
+            splitLeft = null;
+            splitRight = null;
+            return;
+        }
+        piece = own(piece);
+        long leftTotal = total(piece.left);
+        if (pos <= leftTotal) {
+            split(piece.left, pos);
+            piece.left = splitRight;
+            update(piece);
+            splitRight = piece;
+        } else if (pos >= leftTotal + piece.length) {
+            split(piece.right, pos - leftTotal - piece.length);
+            piece.right = splitLeft;
+            update(piece);
+            splitLeft = piece;
+        } else {
+            long offset = pos - leftTotal;
+            Piece tail = newPiece(piece.isAdded, piece.start + offset, piece.length - offset);
+            Piece right = piece.right;
+            piece.length = offset;
+            piece.right = null;
+            update(piece);
+            splitRight = merge(tail, right);
+            splitLeft = piece;
+        }
+    }
+
+    private Piece merge(Piece left, Piece right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (left.priority > right.priority) {
+            left = own(left);
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        } else {
+            right = own(right);
+            right.left = merge(left, right.left);
+            update(right);
+            return right;
+        }
+    }
+
+    /**
+     * Extends the last piece of the tree rooted at {@code piece} by
+     * {@code length} bytes if its added bytes end at {@code start}.
+     *
+     * @return the root of the extended tree, or null if it couldn't be extended
+     */
+    private Piece extendLast(Piece piece, int start, int length) {
+        if (piece == null) {
+            return null;
+        }
+        if (piece.right != null) {
+            Piece right = extendLast(piece.right, start, length);
+            if (right == null) {
+                return null;
+            }
+            piece = own(piece);
+            piece.right = right;
+        } else if (piece.isAdded && piece.start + piece.length == start) {
+            piece = own(piece);
+            piece.length += length;
+        } else {
+            return null;
+        }
+        update(piece);
+        return piece;
+    }
+
+    private static long total(Piece piece) {
+        return piece == null ? 0 : piece.total;
+    }
+
+    private static void update(Piece piece) {
+        piece.total = total(piece.left) + piece.length + total(piece.right);
+        piece.count = 1 + (piece.left == null ? 0 : piece.left.count) + (piece.right == null ? 0 : piece.right.count);
+    }
+
+    private void rangeCheck(long index, int length) {
+        if (index < 0 || length < 0 || index + length > sizeLong()) {
+            throw new ArrayIndexOutOfBoundsException("Range out of bounds: " + index + " + " + length);
+        }
+    }
+
+    private void rangeCheck(ObservableByteArray src, int srcIndex, int length) {
+        if (src == null) throw new NullPointerException();
+        if (srcIndex < 0 || srcIndex + length > src.size()) {
+            throw new ArrayIndexOutOfBoundsException(src.size());
+        }
+        if (length < 0) throw new ArrayIndexOutOfBoundsException(-1);
+    }
+
+    private void rangeCheck(byte[] src, int srcIndex, int length) {
+        if (src == null) throw new NullPointerException();
+        if (srcIndex < 0 || srcIndex + length > src.length) {
+            throw new ArrayIndexOutOfBoundsException(src.length);
+        }
+        if (length < 0) throw new ArrayIndexOutOfBoundsException(-1);
+    }
+
+    @Override
+    public String toString() {
+        return "PieceTableByteArray[size=" + sizeLong() + ", pieces=" + getPieceCount() + ", added=" + addedSize + "]";
+    }
+
+    private static final class Piece {
+        private final boolean isAdded;
+        private final int priority;
+        private final int epoch;
+        private long start;
+        private long length;
+
+        /**
+         * Total length and number of pieces in the subtree rooted at this piece
+         */
+        private long total;
+        private int count;
+
+        private Piece left;
+        private Piece right;
+
+        private Piece(boolean isAdded, long start, long length, int priority, int epoch) {
+            this.isAdded = isAdded;
+            this.start = start;
+            this.length = length;
+            this.priority = priority;
+            this.epoch = epoch;
+        }
+    }
+
+    /**
+     * The content of a snapshot: the pieces and the added buffer as they
+     * were, which the table no longer modifies. Reads keep their position in
+     * locals, so any number of threads may read at once.
+     */
+    private static final class Frozen implements ByteArraySnapshot.Content {
+        private final ObservableByteArray original;
+        private final byte[] added;
+        private final Piece root;
+
+        Frozen(ObservableByteArray original, byte[] added, Piece root) {
+            this.original = original;
+            this.added = added;
+            this.root = root;
+        }
+
+        @Override
+        public byte get(long index) {
+            Piece piece = root;
+            while (true) {
+                long leftTotal = total(piece.left);
+                if (index < leftTotal) {
+                    piece = piece.left;
+                } else if (index < leftTotal + piece.length) {
+                    long pos = piece.start + index - leftTotal;
+                    return piece.isAdded ? added[(int) pos] : original.get(pos);
+                } else {
+                    index -= leftTotal + piece.length;
+                    piece = piece.right;
+                }
+            }
+        }
+
+        @Override
+        public void read(long pos, byte[] dest, int destIndex, int length) {
+            read(root, pos, dest, destIndex, length);
+        }
+
+        /**
+         * Reads the part of the range starting {@code pos} bytes into the tree rooted at {@code piece}.
+         */
+        private void read(Piece piece, long pos, byte[] dest, int destIndex, int length) {
+            while (piece != null && length > 0) {
+                long leftTotal = total(piece.left);
+                if (pos < leftTotal) {
+                    int count = (int) Math.min(length, leftTotal - pos);
+                    read(piece.left, pos, dest, destIndex, count);
+                    pos += count;
+                    destIndex += count;
+                    length -= count;
+                }
+                long offset = pos - leftTotal;
+                if (length > 0 && offset < piece.length) {
+                    int count = (int) Math.min(length, piece.length - offset);
+                    long start = piece.start + offset;
+                    if (piece.isAdded) {
+                        System.arraycopy(added, (int) start, dest, destIndex, count);
+                    } else {
+                        original.copyTo(start, dest, destIndex, count);
+                    }
+                    pos += count;
+                    destIndex += count;
+                    length -= count;
+                }
+                pos -= leftTotal + piece.length;
+                piece = piece.right;
+            }
+        }
+    }
+}
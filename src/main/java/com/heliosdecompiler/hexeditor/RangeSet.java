@@ -0,0 +1,182 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A set of disjoint byte ranges. Adjacent and overlapping ranges are merged
+ * as they are added, so the set stays as small as the number of separate
+ * regions. Lookups take O(log n) in the number of ranges; the length and
+ * bounds are kept up to date and take O(1).
+ */
+public class RangeSet {
+    /**
+     * Start of each range to its end, exclusive
+     */
+    private final TreeMap<Long, Long> ranges = new TreeMap<>();
+    private long length;
+    private long start = -1;
+    private long end = -1;
+
+    public RangeSet() {
+    }
+
+    /**
+     * Creates a set with the same ranges as {@code src}.
+     */
+    public RangeSet(RangeSet src) {
+        ranges.putAll(src.ranges);
+        length = src.length;
+        start = src.start;
+        end = src.end;
+    }
+
+    /**
+     * Adds {@code [from, to)}, merging it with any range it touches.
+     */
+    public void add(long from, long to) {
+        if (from >= to) {
+            return;
+        }
+        Map.Entry<Long, Long> before = ranges.floorEntry(from);
+        if (before != null && before.getValue() >= from) {
+            if (before.getValue() >= to) {
+                return;
+            }
+            from = before.getKey();
+        }
+        // Absorb every range starting inside the new one
+        for (Map.Entry<Long, Long> entry = ranges.ceilingEntry(from); entry != null && entry.getKey() <= to;
+             entry = ranges.ceilingEntry(from)) {
+            to = Math.max(to, entry.getValue());
+            length -= entry.getValue() - entry.getKey();
+            ranges.remove(entry.getKey());
+        }
+        ranges.put(from, to);
+        length += to - from;
+        start = start < 0 ? from : Math.min(start, from);
+        end = Math.max(end, to);
+    }
+
+    /**
+     * Removes {@code [from, to)}, splitting a range which extends past both ends.
+     */
+    public void remove(long from, long to) {
+        if (from >= to) {
+            return;
+        }
+        Map.Entry<Long, Long> before = ranges.lowerEntry(from);
+        if (before != null && before.getValue() > from) {
+            ranges.put(before.getKey(), from);
+            length -= before.getValue() - from;
+            if (before.getValue() > to) {
+                ranges.put(to, before.getValue());
+                length += before.getValue() - to;
+            }
+        }
+        for (Map.Entry<Long, Long> entry = ranges.ceilingEntry(from); entry != null && entry.getKey() < to;
+             entry = ranges.ceilingEntry(from)) {
+            ranges.remove(entry.getKey());
+            length -= entry.getValue() - entry.getKey();
+            if (entry.getValue() > to) {
+                ranges.put(to, entry.getValue());
+                length += entry.getValue() - to;
+            }
+        }
+        start = ranges.isEmpty() ? -1 : ranges.firstKey();
+        end = ranges.isEmpty() ? -1 : ranges.lastEntry().getValue();
+    }
+
+    public boolean contains(long offset) {
+        Map.Entry<Long, Long> entry = ranges.floorEntry(offset);
+        return entry != null && entry.getValue() > offset;
+    }
+
+    /**
+     * @return whether any byte of {@code [from, to)} is in the set
+     */
+    public boolean intersects(long from, long to) {
+        if (from >= to) {
+            return false;
+        }
+        Map.Entry<Long, Long> entry = ranges.lowerEntry(to);
+        return entry != null && entry.getValue() > from;
+    }
+
+    public void clear() {
+        ranges.clear();
+        length = 0;
+        start = -1;
+        end = -1;
+    }
+
+    public boolean isEmpty() {
+        return ranges.isEmpty();
+    }
+
+    /**
+     * @return the number of separate ranges
+     */
+    public int getRangeCount() {
+        return ranges.size();
+    }
+
+    /**
+     * @return the number of bytes covered by the ranges
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return the first byte in the set, or -1 if it is empty
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return the end of the last range, exclusive, or -1 if the set is empty
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * @return the start of every range mapped to its end, exclusive
+     */
+    public NavigableMap<Long, Long> getRanges() {
+        return Collections.unmodifiableNavigableMap(ranges);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (Map.Entry<Long, Long> entry : ranges.entrySet()) {
+            if (builder.length() > 1) {
+                builder.append(", ");
+            }
+            builder.append('[').append(entry.getKey()).append(", ").append(entry.getValue()).append(')');
+        }
+        return builder.append(']').toString();
+    }
+}
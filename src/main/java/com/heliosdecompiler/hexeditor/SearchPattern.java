@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A sequence of bytes to search for. Every byte of the pattern has a mask
+ * selecting the bits which have to match, so single nibbles or whole bytes
+ * can be left as wildcards.
+ */
+public class SearchPattern {
+    private final byte[] values;
+    private final byte[] masks;
+
+    /**
+     * @param values the bytes to match, already masked
+     * @param masks  the bits of each byte which have to match
+     */
+    public SearchPattern(byte[] values, byte[] masks) {
+        if (values.length != masks.length) {
+            throw new IllegalArgumentException("Got " + values.length + " values but " + masks.length + " masks");
+        }
+        if (values.length == 0) {
+            throw new IllegalArgumentException("Empty pattern");
+        }
+        this.values = new byte[values.length];
+        this.masks = masks.clone();
+        for (int i = 0; i < values.length; i++) {
+            this.values[i] = (byte) (values[i] & masks[i]);
+        }
+    }
+
+    /**
+     * Parses a pattern of hex digits such as {@code "4D 5A ?? ?0"}. Whitespace
+     * is ignored and {@code ?} matches any nibble.
+     *
+     * @param pattern the pattern to parse
+     * @return the parsed pattern
+     * @throws IllegalArgumentException if the pattern contains anything else
+     *                                  or an odd number of digits
+     */
+    public static SearchPattern hex(String pattern) {
+        // Rounded up, so an odd number of digits reaches the check below
+        byte[] values = new byte[(pattern.length() + 1) / 2];
+        byte[] masks = new byte[values.length];
+        int nibbles = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            char chr = pattern.charAt(i);
+            if (Character.isWhitespace(chr)) {
+                continue;
+            }
+            int value;
+            int mask;
+            if (chr == '?') {
+                value = 0;
+                mask = 0;
+            } else {
+                value = Character.digit(chr, 16);
+                mask = 0xF;
+                if (value < 0) {
+                    throw new IllegalArgumentException("Unexpected '" + chr + "' at " + i + " in hex pattern " + pattern);
+                }
+            }
+            int shift = nibbles % 2 == 0 ? 4 : 0;
+            values[nibbles / 2] |= value << shift;
+            masks[nibbles / 2] |= mask << shift;
+            nibbles++;
+        }
+        if (nibbles % 2 != 0) {
+            throw new IllegalArgumentException("Hex pattern " + pattern + " has an odd number of digits");
+        }
+        return new SearchPattern(Arrays.copyOf(values, nibbles / 2), Arrays.copyOf(masks, nibbles / 2));
+    }
+
+    /**
+     * @param bytes the bytes to match exactly
+     * @return a pattern without wildcards
+     */
+    public static SearchPattern bytes(byte... bytes) {
+        byte[] masks = new byte[bytes.length];
+        Arrays.fill(masks, (byte) 0xFF);
+        return new SearchPattern(bytes, masks);
+    }
+
+    /**
+     * @param text the text to match, characters outside ASCII are encoded as {@code '?'}
+     * @return a pattern matching {@code text} encoded as ASCII
+     */
+    public static SearchPattern ascii(String text) {
+        return text(text, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @param text the text to match
+     * @return a pattern matching {@code text} encoded as little endian UTF-16
+     */
+    public static SearchPattern utf16le(String text) {
+        return text(text, StandardCharsets.UTF_16LE);
+    }
+
+    /**
+     * @param text the text to match
+     * @return a pattern matching {@code text} encoded as big endian UTF-16
+     */
+    public static SearchPattern utf16be(String text) {
+        return text(text, StandardCharsets.UTF_16BE);
+    }
+
+    /**
+     * @param text    the text to match
+     * @param charset the encoding of the text in the data
+     * @return a pattern matching {@code text} encoded with {@code charset}
+     */
+    public static SearchPattern text(String text, Charset charset) {
+        return bytes(text.getBytes(charset));
+    }
+
+    public int length() {
+        return values.length;
+    }
+
+    /**
+     * @return the bytes to match, with the wildcard bits cleared
+     */
+    public byte[] getValues() {
+        return values.clone();
+    }
+
+    /**
+     * @return the bits of each byte which have to match
+     */
+    public byte[] getMasks() {
+        return masks.clone();
+    }
+
+    /**
+     * @param index an index into the pattern
+     * @param b     a byte of the data
+     * @return whether {@code b} matches the pattern at {@code index}
+     */
+    public boolean matches(int index, byte b) {
+        return (b & masks[index]) == values[index];
+    }
+
+    byte[] values() {
+        return values;
+    }
+
+    byte[] masks() {
+        return masks;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(values.length * 3);
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append((masks[i] & 0xF0) == 0 ? "?" : ByteHelper.toString(values[i]).substring(0, 1));
+            builder.append((masks[i] & 0x0F) == 0 ? "?" : ByteHelper.toString(values[i]).substring(1));
+        }
+        return builder.toString();
+    }
+}
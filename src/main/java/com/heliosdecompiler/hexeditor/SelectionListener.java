@@ -0,0 +1,36 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+/**
+ * Receives change notifications from a {@link ByteSelection}.
+ *
+ * @see ByteSelection#addListener(SelectionListener)
+ */
+@FunctionalInterface
+public interface SelectionListener {
+
+    /**
+     * Called after bytes were added to or removed from {@code selection}.
+     *
+     * @param selection the selection which changed
+     * @param from      the first byte whose selection may have changed
+     * @param to        the end of the changed range, exclusive
+     */
+    void onChanged(ByteSelection selection, long from, long to);
+}
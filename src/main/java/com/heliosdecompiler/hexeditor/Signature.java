@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+import java.util.Arrays;
+
+/**
+ * A named byte sequence, such as a magic number or a malware signature,
+ * which a {@link SignatureScanner} looks for.
+ */
+public class Signature {
+    private final String name;
+    private final byte[] bytes;
+
+    public Signature(String name, byte[] bytes) {
+        if (bytes.length == 0) {
+            throw new IllegalArgumentException("Signature " + name + " is empty");
+        }
+        this.name = name;
+        this.bytes = bytes.clone();
+    }
+
+    /**
+     * @param name    the name of the signature
+     * @param pattern hex digits such as {@code "CA FE BA BE"}
+     * @return the parsed signature
+     * @throws IllegalArgumentException if the pattern isn't valid hex or has wildcards
+     */
+    public static Signature hex(String name, String pattern) {
+        SearchPattern parsed = SearchPattern.hex(pattern);
+        for (byte mask : parsed.masks()) {
+            if (mask != (byte) 0xFF) {
+                throw new IllegalArgumentException("Signature " + name + " can't contain wildcards: " + pattern);
+            }
+        }
+        return new Signature(name, parsed.values());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public byte[] getBytes() {
+        return bytes.clone();
+    }
+
+    public int length() {
+        return bytes.length;
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + SearchPattern.bytes(bytes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Signature)) return false;
+        Signature that = (Signature) o;
+        return name.equals(that.name) && Arrays.equals(bytes, that.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * name.hashCode() + Arrays.hashCode(bytes);
+    }
+}
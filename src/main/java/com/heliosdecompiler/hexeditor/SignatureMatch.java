@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+/**
+ * An occurrence of a {@link Signature} in the data.
+ */
+public class SignatureMatch {
+    private final Signature signature;
+    private final long offset;
+
+    public SignatureMatch(Signature signature, long offset) {
+        this.signature = signature;
+        this.offset = offset;
+    }
+
+    public Signature getSignature() {
+        return signature;
+    }
+
+    /**
+     * @return the offset of the first byte of the match
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the end of the match, exclusive
+     */
+    public long getEnd() {
+        return offset + signature.length();
+    }
+
+    @Override
+    public String toString() {
+        return signature.getName() + "@" + Long.toHexString(offset);
+    }
+}
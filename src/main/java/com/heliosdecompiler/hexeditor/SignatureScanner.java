@@ -0,0 +1,242 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Finds every occurrence of a set of {@link Signature}s in one pass over the
+ * data, using an Aho-Corasick automaton built once when the scanner is
+ * created. The automaton is compiled into a full transition table, so each
+ * byte costs a single lookup however many signatures there are.
+ * <p>
+ * Large ranges are scanned in parallel chunks. Each chunk reads past its end
+ * by the length of the longest signature, so matches which straddle a
+ * boundary are found by the chunk they start in. A scanner can be shared
+ * between threads. The scanned array isn't locked, so it must not be
+ * modified during a scan; scan a {@link ObservableByteArray#snapshot()} if
+ * it may be.
+ */
+public class SignatureScanner {
+    /**
+     * Number of bytes read from the array at once
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Number of match start offsets scanned by one parallel task
+     */
+    private static final long CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final Comparator<SignatureMatch> ORDER = Comparator.comparingLong(SignatureMatch::getOffset)
+            .thenComparingLong(SignatureMatch::getEnd);
+
+    private final Signature[] signatures;
+    private final int maxLength;
+
+    /**
+     * The transition from {@code state} on byte {@code b} is at {@code (state << 8) | b}
+     */
+    private final int[] transitions;
+
+    /**
+     * Indices of the signatures which end at each state, or null
+     */
+    private final int[][] outputs;
+
+    /**
+     * The nearest state along the failure links which has outputs, or -1
+     */
+    private final int[] outputLinks;
+
+    public SignatureScanner(Collection<Signature> signatures) {
+        if (signatures.isEmpty()) {
+            throw new IllegalArgumentException("No signatures");
+        }
+        this.signatures = signatures.toArray(new Signature[signatures.size()]);
+
+        int maxStates = 1;
+        int longest = 0;
+        for (Signature signature : this.signatures) {
+            maxStates += signature.length();
+            longest = Math.max(longest, signature.length());
+        }
+        this.maxLength = longest;
+
+        // Build the trie, with -1 for missing edges
+        int[] delta = new int[256];
+        Arrays.fill(delta, -1);
+        List<int[]> ends = new ArrayList<>();
+        ends.add(null);
+        int states = 1;
+        for (int id = 0; id < this.signatures.length; id++) {
+            int state = 0;
+            for (byte b : this.signatures[id].bytes()) {
+                int edge = (state << 8) | (b & 0xFF);
+                if (delta[edge] < 0) {
+                    if ((states << 8) >= delta.length) {
+                        int grown = Math.min(maxStates, states * 2) << 8;
+                        int oldLength = delta.length;
+                        delta = Arrays.copyOf(delta, grown);
+                        Arrays.fill(delta, oldLength, grown, -1);
+                    }
+                    delta[edge] = states++;
+                    ends.add(null);
+                }
+                state = delta[edge];
+            }
+            int[] end = ends.get(state);
+            end = end == null ? new int[]{id} : append(end, id);
+            ends.set(state, end);
+        }
+
+        // Breadth first, point every missing edge at the transition of the failure state
+        int[] failures = new int[states];
+        int[] links = new int[states];
+        Arrays.fill(links, -1);
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int b = 0; b < 256; b++) {
+            int child = delta[b];
+            if (child < 0) {
+                delta[b] = 0;
+            } else {
+                failures[child] = 0;
+                queue[tail++] = child;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            int failure = failures[state];
+            links[state] = ends.get(failure) != null ? failure : links[failure];
+            for (int b = 0; b < 256; b++) {
+                int edge = (state << 8) | b;
+                int child = delta[edge];
+                if (child < 0) {
+                    delta[edge] = delta[(failure << 8) | b];
+                } else {
+                    failures[child] = delta[(failure << 8) | b];
+                    queue[tail++] = child;
+                }
+            }
+        }
+
+        this.transitions = delta.length == states << 8 ? delta : Arrays.copyOf(delta, states << 8);
+        this.outputs = ends.toArray(new int[states][]);
+        this.outputLinks = links;
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = value;
+        return result;
+    }
+
+    public List<Signature> getSignatures() {
+        return Collections.unmodifiableList(Arrays.asList(signatures));
+    }
+
+    /**
+     * @return the number of states in the automaton
+     */
+    public int getStateCount() {
+        return outputs.length;
+    }
+
+    /**
+     * Scans the whole array, in parallel if it is large.
+     *
+     * @param data the array to scan
+     * @return every match, ordered by offset
+     */
+    public List<SignatureMatch> scan(ObservableByteArray data) {
+        return scan(data, 0, data.sizeLong(), data.sizeLong() > CHUNK_SIZE);
+    }
+
+    /**
+     * Finds every match starting between {@code from} and {@code to},
+     * including overlapping ones.
+     *
+     * @param data     the array to scan
+     * @param from     the first offset at which a match may start
+     * @param to       the end, exclusive, of the offsets at which a match may start
+     * @param parallel whether to scan chunks of the range in parallel
+     * @return the matches, ordered by offset
+     */
+    public List<SignatureMatch> scan(ObservableByteArray data, long from, long to, boolean parallel) {
+        long start = Math.max(0, from);
+        long end = Math.min(to, data.sizeLong());
+        if (start >= end) {
+            return new ArrayList<>();
+        }
+        long chunks = (end - start + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        LongStream indices = LongStream.range(0, chunks);
+        if (parallel) {
+            indices = indices.parallel();
+        }
+        return indices.mapToObj(chunk -> {
+            long chunkStart = start + chunk * CHUNK_SIZE;
+            return scanChunk(data, chunkStart, Math.min(end, chunkStart + CHUNK_SIZE));
+        }).flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    private List<SignatureMatch> scanChunk(ObservableByteArray data, long from, long to) {
+        List<SignatureMatch> matches = new ArrayList<>();
+        long limit = Math.min(data.sizeLong(), to + maxLength - 1);
+        byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, limit - from)];
+        int[] transitions = this.transitions;
+        int[] links = outputLinks;
+        int state = 0;
+        for (long position = from; position < limit; ) {
+            int length = (int) Math.min(buffer.length, limit - position);
+            data.copyTo(position, buffer, 0, length);
+            for (int i = 0; i < length; i++) {
+                state = transitions[(state << 8) | (buffer[i] & 0xFF)];
+                if (outputs[state] != null || links[state] >= 0) {
+                    collect(matches, state, position + i + 1, from, to);
+                }
+            }
+            position += length;
+        }
+        matches.sort(ORDER);
+        return matches;
+    }
+
+    /**
+     * Adds the signatures recognized at {@code state} which end at {@code end}
+     * and start inside the chunk.
+     */
+    private void collect(List<SignatureMatch> matches, int state, long end, long from, long to) {
+        for (int current = outputs[state] != null ? state : outputLinks[state]; current >= 0; current = outputLinks[current]) {
+            for (int id : outputs[current]) {
+                long start = end - signatures[id].length();
+                if (start >= from && start < to) {
+                    matches.add(new SignatureMatch(signatures[id], start));
+                }
+            }
+        }
+    }
+}
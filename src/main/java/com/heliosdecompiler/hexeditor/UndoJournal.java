@@ -0,0 +1,289 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.heliosdecompiler.hexeditor;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * The undo and redo history of an editor. Entries are kept in a ring buffer
+ * which drops the oldest entries once either the entry limit or the byte
+ * limit is exceeded.
+ * <p>
+ * Single byte edits are recorded without allocating a {@link DeltaState}
+ * each. Consecutive overwrites, inserts or forward deletes are coalesced
+ * into one run which is undone as a single entry.
+ * <p>
+ * The journal only does the bookkeeping: {@link #undo()} and {@link #redo()}
+ * return the entry to revert or apply, and the caller makes the change.
+ */
+public class UndoJournal {
+    /**
+     * Bytes charged for every entry on top of its content, roughly the
+     * size of the entry object and its arrays
+     */
+    static final int ENTRY_OVERHEAD = 64;
+
+    /**
+     * Longest run before it is sealed and a new one is started
+     */
+    static final int MAX_RUN_LENGTH = 4096;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private enum RunKind {
+        NONE, OVERWRITE, INSERT, REMOVE
+    }
+
+    private DeltaState[] entries = new DeltaState[16];
+    private int head;
+    private int count;
+
+    private final ArrayDeque<DeltaState> redoHistory = new ArrayDeque<>();
+
+    private int entryLimit;
+    private long byteLimit;
+    private long bytes;
+
+    private RunKind runKind = RunKind.NONE;
+    private long runFrom;
+    private int runLength;
+    private byte[] runBefore = new byte[16];
+    private byte[] runAfter = new byte[16];
+
+    /**
+     * @param entryLimit the maximum number of undo entries, or 0 for no limit
+     * @param byteLimit  the maximum number of bytes held by undo entries, or 0 for no limit
+     */
+    public UndoJournal(int entryLimit, long byteLimit) {
+        this.entryLimit = entryLimit;
+        this.byteLimit = byteLimit;
+    }
+
+    /**
+     * Records that the byte at {@code offset} was overwritten.
+     */
+    public void recordOverwrite(long offset, byte before, byte after) {
+        if (!extendRun(RunKind.OVERWRITE, offset, runFrom + runLength)) {
+            startRun(RunKind.OVERWRITE, offset);
+        }
+        appendRun(before, after);
+    }
+
+    /**
+     * Records that {@code value} was inserted at {@code offset}.
+     */
+    public void recordInsert(long offset, byte value) {
+        if (!extendRun(RunKind.INSERT, offset, runFrom + runLength)) {
+            startRun(RunKind.INSERT, offset);
+        }
+        appendRun((byte) 0, value);
+    }
+
+    /**
+     * Records that {@code value} was removed from {@code offset}.
+     */
+    public void recordRemove(long offset, byte value) {
+        // Deleting forward removes every byte of the run from the same offset
+        if (!extendRun(RunKind.REMOVE, offset, runFrom)) {
+            startRun(RunKind.REMOVE, offset);
+        }
+        appendRun(value, (byte) 0);
+    }
+
+    /**
+     * Records an arbitrary change as its own entry.
+     */
+    public void record(DeltaState delta) {
+        sealRun();
+        redoHistory.clear();
+        push(delta);
+        trim();
+    }
+
+    /**
+     * @return the newest entry, now moved to the redo history, or null if
+     * there is nothing to undo. The caller reverts it.
+     */
+    public DeltaState undo() {
+        sealRun();
+        if (count == 0) {
+            return null;
+        }
+        int tail = index(count - 1);
+        DeltaState delta = entries[tail];
+        entries[tail] = null;
+        count--;
+        charge(-cost(delta));
+        redoHistory.push(delta);
+        return delta;
+    }
+
+    /**
+     * @return the most recently undone entry, now moved back to the undo
+     * history, or null if there is nothing to redo. The caller applies it.
+     */
+    public DeltaState redo() {
+        sealRun();
+        DeltaState delta = redoHistory.poll();
+        if (delta != null) {
+            push(delta);
+            trim();
+        }
+        return delta;
+    }
+
+    public boolean canUndo() {
+        return count > 0 || runKind != RunKind.NONE;
+    }
+
+    public boolean canRedo() {
+        return !redoHistory.isEmpty();
+    }
+
+    public void clear() {
+        Arrays.fill(entries, null);
+        head = 0;
+        count = 0;
+        charge(-bytes);
+        runKind = RunKind.NONE;
+        redoHistory.clear();
+    }
+
+    /**
+     * @return the number of undo entries, counting an unfinished run as one
+     */
+    public int size() {
+        return count + (runKind == RunKind.NONE ? 0 : 1);
+    }
+
+    /**
+     * @return the number of bytes charged for the undo entries
+     */
+    public long getByteSize() {
+        return bytes;
+    }
+
+    public int getEntryLimit() {
+        return entryLimit;
+    }
+
+    public void setEntryLimit(int entryLimit) {
+        this.entryLimit = entryLimit;
+        trim();
+    }
+
+    public long getByteLimit() {
+        return byteLimit;
+    }
+
+    public void setByteLimit(long byteLimit) {
+        this.byteLimit = byteLimit;
+        trim();
+    }
+
+    private boolean extendRun(RunKind kind, long offset, long expected) {
+        return runKind == kind && offset == expected && runLength < MAX_RUN_LENGTH;
+    }
+
+    private void startRun(RunKind kind, long offset) {
+        sealRun();
+        redoHistory.clear();
+        runKind = kind;
+        runFrom = offset;
+        runLength = 0;
+        charge(ENTRY_OVERHEAD);
+    }
+
+    private void appendRun(byte before, byte after) {
+        if (runLength == runBefore.length) {
+            runBefore = Arrays.copyOf(runBefore, runLength * 2);
+            runAfter = Arrays.copyOf(runAfter, runLength * 2);
+        }
+        runBefore[runLength] = before;
+        runAfter[runLength] = after;
+        runLength++;
+        charge(runKind == RunKind.OVERWRITE ? 2 : 1);
+        redoHistory.clear();
+        trim();
+    }
+
+    /**
+     * Turns the current run, if any, into an entry. Its bytes were already
+     * charged while it was built.
+     */
+    private void sealRun() {
+        if (runKind == RunKind.NONE) {
+            return;
+        }
+        byte[] before = runKind == RunKind.INSERT ? EMPTY : Arrays.copyOf(runBefore, runLength);
+        byte[] after = runKind == RunKind.REMOVE ? EMPTY : Arrays.copyOf(runAfter, runLength);
+        runKind = RunKind.NONE;
+        charge(-ENTRY_OVERHEAD - runLength * (before.length > 0 && after.length > 0 ? 2L : 1L));
+        push(new DeltaState(runFrom, runFrom + runLength, before, after));
+    }
+
+    private void push(DeltaState delta) {
+        if (count == entries.length) {
+            DeltaState[] grown = new DeltaState[entries.length * 2];
+            for (int i = 0; i < count; i++) {
+                grown[i] = entries[index(i)];
+            }
+            entries = grown;
+            head = 0;
+        }
+        entries[index(count)] = delta;
+        count++;
+        charge(cost(delta));
+    }
+
+    /**
+     * Drops the oldest entries until the history is within its limits. An
+     * entry which doesn't fit in the byte limit on its own is dropped as
+     * well, leaving nothing to undo.
+     */
+    private void trim() {
+        while (count > 0 && ((entryLimit > 0 && size() > entryLimit) || (byteLimit > 0 && bytes > byteLimit))) {
+            charge(-cost(entries[head]));
+            entries[head] = null;
+            head = index(1);
+            count--;
+        }
+        if (runKind != RunKind.NONE && byteLimit > 0 && bytes > byteLimit) {
+            runKind = RunKind.NONE;
+            charge(-bytes);
+        }
+    }
+
+    /**
+     * Adjusts the byte size, keeping the undo history gauge of
+     * {@link EditorMetrics} in step.
+     */
+    private void charge(long delta) {
+        bytes += delta;
+        EditorMetrics.getInstance().undoHistoryChanged(delta);
+    }
+
+    private int index(int i) {
+        return (head + i) % entries.length;
+    }
+
+    private static long cost(DeltaState delta) {
+        return ENTRY_OVERHEAD + delta.getSize();
+    }
+}
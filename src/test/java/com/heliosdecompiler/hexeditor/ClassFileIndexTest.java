@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+import com.heliosdecompiler.hexeditor.ClassFileStructure.Kind;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the incrementally updated index always matches a fresh parse
+ * of the same bytes.
+ */
+public class ClassFileIndexTest {
+    /**
+     * A small class, so that random edits often hit the counts and lengths
+     */
+    private static final Class<?> SAMPLE = ByteHelper.class;
+
+    private static final int EDITS = 3000;
+
+    /**
+     * Edits made to a copy of the class before it is restored, so that most
+     * edits are made to a mostly valid file
+     */
+    private static final int EDITS_PER_ROUND = 5;
+
+    /**
+     * Edits between comparisons of every structure and label, rather than
+     * just the ranges of the units
+     */
+    private static final int EDITS_PER_FULL_CHECK = 50;
+
+    @Test
+    public void incrementalUpdatesMatchFreshParse() throws IOException {
+        byte[] original = readClass(SAMPLE);
+        ObservableByteArrayImpl data = new ObservableByteArrayImpl();
+        data.addAll(original);
+        ClassFileIndex index = new ClassFileIndex(data);
+        assertEquals(null, index.getError());
+
+        Random random = new Random(0x19);
+        for (int edit = 0; edit < EDITS; edit++) {
+            if (edit % EDITS_PER_ROUND == 0) {
+                data.setAll(original);
+            }
+            long size = data.sizeLong();
+            long at = (long) (random.nextDouble() * size);
+            byte[] bytes = new byte[1 + random.nextInt(8)];
+            random.nextBytes(bytes);
+            switch (random.nextInt(4)) {
+                case 0:
+                    data.insert(at, bytes, 0, bytes.length);
+                    break;
+                case 1:
+                    data.remove(at, Math.min(size, at + bytes.length));
+                    break;
+                default:
+                    int length = (int) Math.min(bytes.length, size - at);
+                    data.set(at, bytes, 0, length);
+                    break;
+            }
+
+            ClassFileIndex fresh = new ClassFileIndex(data.snapshot());
+            if (edit % EDITS_PER_FULL_CHECK == 0) {
+                assertEquals("after edit " + edit + " at " + at, dump(fresh), dump(index));
+            } else {
+                assertEquals("after edit " + edit + " at " + at, dumpUnits(fresh), dumpUnits(index));
+            }
+            fresh.close();
+        }
+        index.close();
+    }
+
+    @Test
+    public void overwriteReusesUnchangedUnits() throws IOException {
+        byte[] original = readClass(SAMPLE);
+        ObservableByteArrayImpl data = new ObservableByteArrayImpl();
+        data.addAll(original);
+        ClassFileIndex index = new ClassFileIndex(data);
+        List<ClassFileStructure> sections = index.getChildren(index.getRoot());
+        List<ClassFileStructure> constants = index.getChildren(sections.get(1));
+        List<ClassFileStructure> methods = index.getChildren(sections.get(5));
+
+        // Rename a Utf8 constant in the middle of the pool, which keeps the file valid
+        ClassFileStructure changed = null;
+        for (ClassFileStructure constant : constants.subList(constants.size() / 2, constants.size())) {
+            if (constant.getKind() == Kind.CONSTANT && data.get(constant.getFrom()) == 1
+                    && constant.getTo() - constant.getFrom() > 3) {
+                changed = constant;
+                break;
+            }
+        }
+        data.set(changed.getFrom() + 3, (byte) 'x');
+
+        List<ClassFileStructure> newSections = index.getChildren(index.getRoot());
+        List<ClassFileStructure> newConstants = index.getChildren(newSections.get(1));
+        List<ClassFileStructure> newMethods = index.getChildren(newSections.get(5));
+        assertEquals(null, index.getError());
+        assertEquals(dump(new ClassFileIndex(data.snapshot())), dump(index));
+        assertTrue("units before the change are reused", newConstants.get(0) == constants.get(0));
+        assertTrue("units after the change are reused", newMethods.get(newMethods.size() - 1) == methods.get(methods.size() - 1));
+        index.close();
+    }
+
+    /**
+     * @return every structure of the index with its range and label, one per line
+     */
+    private static String dump(ClassFileIndex index) {
+        StringBuilder out = new StringBuilder();
+        out.append(index.getError()).append('\n');
+        dump(index, index.getRoot(), 0, out);
+        return out.toString();
+    }
+
+    /**
+     * @return the range of every top level unit, without reading their contents
+     */
+    private static String dumpUnits(ClassFileIndex index) {
+        StringBuilder out = new StringBuilder();
+        out.append(index.getError()).append('\n');
+        for (ClassFileStructure section : index.getChildren(index.getRoot())) {
+            out.append(section.getKind()).append(' ').append(section.getFrom()).append('-').append(section.getTo()).append('\n');
+            if (section.getKind() != Kind.HEADER && section.getKind() != Kind.CLASS_INFO && section.getKind() != Kind.UNPARSED) {
+                for (ClassFileStructure unit : index.getChildren(section)) {
+                    out.append("  ").append(unit.getKind()).append(' ').append(unit.getIndex())
+                            .append(' ').append(unit.getFrom()).append('-').append(unit.getTo()).append('\n');
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void dump(ClassFileIndex index, ClassFileStructure structure, int depth, StringBuilder out) {
+        for (int i = 0; i < depth; i++) {
+            out.append("  ");
+        }
+        out.append(structure.getKind()).append(' ').append(structure.getIndex())
+                .append(' ').append(structure.getFrom()).append('-').append(structure.getTo())
+                .append(' ').append(index.getLabel(structure)).append('\n');
+        for (ClassFileStructure child : index.getChildren(structure)) {
+            dump(index, child, depth + 1, out);
+        }
+    }
+
+    private static byte[] readClass(Class<?> type) throws IOException {
+        try (InputStream in = type.getResourceAsStream(type.getSimpleName() + ".class")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+import com.sun.javafx.application.PlatformImpl;
+import javafx.application.Platform;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Hammers a {@link ConcurrentByteArray} from several threads and checks that
+ * reads never see half of a write and that listeners only run on the FX
+ * thread.
+ */
+public class ConcurrentByteArrayTest {
+    private static final int BLOCK_SIZE = 4096;
+    private static final int BLOCKS = 64;
+    private static final int WRITERS = 3;
+    private static final int READERS = 3;
+    private static final long DURATION_MILLIS = 2000;
+
+    @BeforeClass
+    public static void startToolkit() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        try {
+            PlatformImpl.startup(started::countDown);
+        } catch (IllegalStateException ex) {
+            // Already started by another test
+            started.countDown();
+        }
+        started.await();
+    }
+
+    @Test
+    public void concurrentWritesAreAtomicAndNotifyOnFxThread() throws Exception {
+        // Pages smaller than a block, so that every write and read spans several pages
+        ConcurrentByteArray data = new ConcurrentByteArray(new PagedByteArray(1000, false));
+        data.resize((long) BLOCK_SIZE * BLOCKS);
+        runAndWait(() -> {
+        });
+
+        AtomicInteger offFxThread = new AtomicInteger();
+        AtomicInteger changes = new AtomicInteger();
+        AtomicInteger edits = new AtomicInteger();
+        data.addLongListener((array, sizeChanged, from, to) -> {
+            if (!Platform.isFxApplicationThread()) {
+                offFxThread.incrementAndGet();
+            }
+            changes.incrementAndGet();
+        });
+        data.addEditListener((array, edit) -> {
+            if (!Platform.isFxApplicationThread()) {
+                offFxThread.incrementAndGet();
+            }
+            edits.incrementAndGet();
+        });
+
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong writes = new AtomicLong();
+        AtomicLong reads = new AtomicLong();
+        AtomicInteger torn = new AtomicInteger();
+        List<Throwable> failures = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int writer = 0; writer < WRITERS; writer++) {
+            Random random = new Random(writer);
+            threads.add(new Thread(() -> {
+                byte[] block = new byte[BLOCK_SIZE];
+                while (!stop.get()) {
+                    // Every block always holds a single repeated value
+                    Arrays.fill(block, (byte) random.nextInt());
+                    long at = (long) random.nextInt(BLOCKS) * BLOCK_SIZE;
+                    if (random.nextInt(10) == 0) {
+                        data.batch(array -> array.set(at, block, 0, BLOCK_SIZE));
+                    } else {
+                        data.set(at, block, 0, BLOCK_SIZE);
+                    }
+                    writes.incrementAndGet();
+                }
+            }));
+        }
+        for (int reader = 0; reader < READERS; reader++) {
+            Random random = new Random(100 + reader);
+            threads.add(new Thread(() -> {
+                byte[] block = new byte[BLOCK_SIZE];
+                while (!stop.get()) {
+                    long at = (long) random.nextInt(BLOCKS) * BLOCK_SIZE;
+                    data.copyTo(at, block, 0, BLOCK_SIZE);
+                    for (int i = 1; i < BLOCK_SIZE; i++) {
+                        if (block[i] != block[0]) {
+                            torn.incrementAndGet();
+                            break;
+                        }
+                    }
+                    long value = data.getLong(at + BLOCK_SIZE - Long.BYTES, ByteOrder.BIG_ENDIAN);
+                    if (value != (value & 0xFF) * 0x0101010101010101L) {
+                        torn.incrementAndGet();
+                    }
+                    reads.incrementAndGet();
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.setUncaughtExceptionHandler((t, ex) -> {
+                synchronized (failures) {
+                    failures.add(ex);
+                }
+            });
+            thread.start();
+        }
+        Thread.sleep(DURATION_MILLIS);
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        runAndWait(() -> {
+        });
+
+        assertEquals("failures " + failures, 0, failures.size());
+        assertTrue("nothing was read", reads.get() > 0);
+        assertEquals("torn reads", 0, torn.get());
+        assertEquals("notifications off the FX thread", 0, offFxThread.get());
+        assertEquals("one edit per write", writes.get(), edits.get());
+        assertTrue(changes.get() + " change events for " + writes.get() + " writes weren't merged",
+                changes.get() < writes.get());
+    }
+
+    @Test
+    public void writesOnFxThreadNotifyBeforeReturning() throws Exception {
+        ConcurrentByteArray data = new ConcurrentByteArray();
+        data.resize(16);
+        AtomicInteger changes = new AtomicInteger();
+        data.addLongListener((array, sizeChanged, from, to) -> changes.incrementAndGet());
+
+        CompletableFuture<Integer> notified = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            data.set(0, (byte) 1);
+            notified.complete(changes.get());
+        });
+        assertEquals(1, (long) notified.get());
+    }
+
+    @Test
+    public void failedDeliveryIsRetried() {
+        AtomicBoolean reject = new AtomicBoolean(true);
+        ConcurrentByteArray data = new ConcurrentByteArray(new PagedByteArray(), command -> {
+            if (reject.get()) {
+                throw new IllegalStateException("not running");
+            }
+            command.run();
+        });
+        AtomicInteger changes = new AtomicInteger();
+        data.addLongListener((array, sizeChanged, from, to) -> changes.incrementAndGet());
+
+        try {
+            data.resize(16);
+        } catch (IllegalStateException expected) {
+        }
+        reject.set(false);
+        data.set(0, (byte) 1);
+        assertEquals(1, changes.get());
+    }
+
+    @Test
+    public void writesOffFxThreadProduceEdits() {
+        ConcurrentByteArray data = new ConcurrentByteArray(new PagedByteArray(), Runnable::run);
+        data.resize(16);
+        List<DeltaState> edits = new ArrayList<>();
+        data.addEditListener((array, edit) -> edits.add(edit));
+
+        data.set(3, (byte) 7);
+        data.remove(0, 2);
+        assertEquals(2, edits.size());
+
+        edits.get(1).revert(data);
+        edits.get(0).revert(data);
+        assertEquals(16, data.size());
+        assertEquals(0, data.get(3));
+    }
+
+    private static void runAndWait(Runnable runnable) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        Platform.runLater(() -> {
+            try {
+                runnable.run();
+            } finally {
+                done.countDown();
+            }
+        });
+        done.await();
+    }
+}
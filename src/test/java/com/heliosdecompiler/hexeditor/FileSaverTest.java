@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Saves arrays back to a temporary file and checks the file and the
+ * snapshots taken before the save.
+ */
+public class FileSaverTest {
+
+    @Test
+    public void savesOnlyTheDirtyRangesInPlace() throws IOException {
+        Path file = Files.createTempFile("FileSaverTest", ".bin");
+        try {
+            Files.write(file, new byte[16]);
+            PagedByteArray data = new PagedByteArray();
+            data.addAll(Files.readAllBytes(file));
+            try (FileSaver saver = new FileSaver(data, file)) {
+                data.batch(array -> {
+                    array.set(2L, (byte) 1);
+                    array.set(12L, (byte) 2);
+                });
+                assertEquals("[[2, 3), [12, 13)]", saver.getDirtyRanges().toString());
+                assertTrue(saver.canSaveInPlace());
+
+                // A byte changed on disk outside the dirty ranges survives an in-place save
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.write(ByteBuffer.wrap(new byte[]{7}), 7);
+                }
+                saver.save(false);
+                byte[] expected = new byte[16];
+                expected[2] = 1;
+                expected[7] = 7;
+                expected[12] = 2;
+                assertArrayEquals(expected, Files.readAllBytes(file));
+                assertFalse(saver.isModified());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void insertRewritesTheFile() throws IOException {
+        Path file = Files.createTempFile("FileSaverTest", ".bin");
+        try {
+            Files.write(file, new byte[]{1, 2, 3});
+            PagedByteArray data = new PagedByteArray();
+            data.addAll(Files.readAllBytes(file));
+            try (FileSaver saver = new FileSaver(data, file)) {
+                data.insert(1, new byte[]{9, 9}, 0, 2);
+                assertFalse(saver.canSaveInPlace());
+                saver.save(true);
+                assertArrayEquals(new byte[]{1, 9, 9, 2, 3}, Files.readAllBytes(file));
+                assertTrue(saver.canSaveInPlace());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void dirtyRangesAreACopy() {
+        PagedByteArray data = new PagedByteArray();
+        data.resize(10);
+        try (FileSaver saver = new FileSaver(data, Paths.get("unused"))) {
+            data.set(1L, (byte) 1);
+            RangeSet dirty = saver.getDirtyRanges();
+            dirty.clear();
+            assertTrue(saver.isModified());
+            assertEquals(1, saver.getDirtyRanges().getLength());
+        }
+    }
+
+    @Test
+    public void snapshotsKeepTheirContentAcrossSave() throws IOException {
+        Path file = Files.createTempFile("FileSaverTest", ".bin");
+        try {
+            Files.write(file, new byte[]{1, 2, 3, 4});
+            try (PieceTableByteArray data = new PieceTableByteArray(new MappedFileByteArray(file));
+                 FileSaver saver = new FileSaver(data, file)) {
+                ObservableByteArray snapshot = data.snapshot();
+                data.set(2L, (byte) 99);
+                assertFalse(saver.canSaveInPlace());
+                saver.save(false);
+
+                assertArrayEquals(new byte[]{1, 2, 99, 4}, Files.readAllBytes(file));
+                assertEquals(3, snapshot.get(2L));
+                assertEquals(99, data.get(2L));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the LEB128 and modified UTF-8 accessors of
+ * {@link ObservableByteArray}, on a paged array whose values straddle pages.
+ */
+public class ObservableByteArrayTest {
+
+    @Test
+    public void unsignedLeb128() {
+        ObservableByteArray data = at(3, 0xE5, 0x8E, 0x26, 0x7F);
+        assertEquals(624485, data.getUnsignedLeb128(3));
+        assertEquals(3, data.getLeb128Length(3));
+        assertEquals(127, data.getUnsignedLeb128(6));
+        assertEquals(1, data.getLeb128Length(6));
+    }
+
+    @Test
+    public void signedLeb128() {
+        ObservableByteArray data = at(5, 0xC0, 0xBB, 0x78, 0x7F, 0x3F);
+        assertEquals(-123456, data.getSignedLeb128(5));
+        assertEquals(-1, data.getSignedLeb128(8));
+        assertEquals(63, data.getSignedLeb128(9));
+    }
+
+    @Test
+    public void tenByteLeb128IsTruncatedTo64Bits() {
+        ObservableByteArray min = at(0, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x7F);
+        assertEquals(Long.MIN_VALUE, min.getSignedLeb128(0));
+        assertEquals(ByteHelper.MAX_LEB128_LENGTH, min.getLeb128Length(0));
+
+        ObservableByteArray max = at(0, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01);
+        assertEquals(-1L, max.getUnsignedLeb128(0));
+    }
+
+    @Test
+    public void malformedLeb128() {
+        try {
+            at(0, 0x80, 0x80).getUnsignedLeb128(0);
+            fail("read past the end");
+        } catch (ArrayIndexOutOfBoundsException expected) {
+        }
+        try {
+            at(0, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x00).getLeb128Length(0);
+            fail("read more than " + ByteHelper.MAX_LEB128_LENGTH + " bytes");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void modifiedUtf8MatchesWriteUtf() throws IOException {
+        // NUL, two and three byte characters, and a surrogate pair encoded as two three byte characters
+        String text = "a\u0000\u00e9\u20ac\ud83d\ude00z";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeUTF(text);
+        byte[] encoded = bytes.toByteArray();
+        int[] values = new int[encoded.length];
+        for (int i = 0; i < encoded.length; i++) {
+            values[i] = encoded[i] & 0xFF;
+        }
+        ObservableByteArray data = at(7, values);
+        int length = (int) data.getUnsigned(7, 2, ByteOrder.BIG_ENDIAN);
+        assertEquals(text, data.getModifiedUtf8(9, length));
+    }
+
+    @Test
+    public void malformedModifiedUtf8() {
+        try {
+            // A two byte character cut short
+            at(0, 'a', 0xC3).getModifiedUtf8(0, 2);
+            fail("decoded a truncated character");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * @return a paged array with four byte pages holding {@code values} after {@code offset} zeros
+     */
+    private static ObservableByteArray at(int offset, int... values) {
+        PagedByteArray data = new PagedByteArray(4, false);
+        data.resize(offset);
+        for (int value : values) {
+            data.addAll((byte) value);
+        }
+        return data;
+    }
+}
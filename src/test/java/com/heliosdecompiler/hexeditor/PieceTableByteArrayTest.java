@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that snapshots of a piece table keep their content while the table
+ * keeps being edited.
+ */
+public class PieceTableByteArrayTest {
+    private static final int EDITS = 20000;
+
+    /**
+     * One in this many edits takes a snapshot
+     */
+    private static final int EDITS_PER_SNAPSHOT = 200;
+
+    @Test
+    public void snapshotsKeepTheirContent() {
+        Random random = new Random(0);
+        byte[] initial = new byte[50000];
+        random.nextBytes(initial);
+        PieceTableByteArray table = new PieceTableByteArray(new ObservableByteArrayImpl(initial));
+        ObservableByteArrayImpl expected = new ObservableByteArrayImpl(initial);
+        List<ObservableByteArray> snapshots = new ArrayList<>();
+        List<byte[]> contents = new ArrayList<>();
+
+        for (int i = 0; i < EDITS; i++) {
+            int size = expected.size();
+            int pos = random.nextInt(size + 1);
+            byte[] bytes = new byte[Math.min(1 + random.nextInt(20), size - pos)];
+            random.nextBytes(bytes);
+            switch (random.nextInt(4)) {
+                case 0:
+                    table.insert(pos, bytes, 0, bytes.length);
+                    expected.insert(pos, bytes, 0, bytes.length);
+                    break;
+                case 1:
+                    table.remove(pos, pos + bytes.length);
+                    expected.remove(pos, pos + bytes.length);
+                    break;
+                default:
+                    // Overwrites often hit added bytes, which are changed in place unless a snapshot shares them
+                    table.set((long) pos, bytes, 0, bytes.length);
+                    expected.set((long) pos, bytes, 0, bytes.length);
+                    break;
+            }
+            if (random.nextInt(EDITS_PER_SNAPSHOT) == 0) {
+                snapshots.add(table.snapshot());
+                contents.add(expected.toArray(null));
+            }
+        }
+        // Replacing everything starts a new added buffer instead of reusing the shared one
+        byte[] replacement = new byte[1000];
+        random.nextBytes(replacement);
+        table.setAll(replacement);
+        table.set(0L, initial, 0, 100);
+
+        for (int i = 0; i < snapshots.size(); i++) {
+            ObservableByteArray snapshot = snapshots.get(i);
+            byte[] content = contents.get(i);
+            assertEquals(content.length, snapshot.sizeLong());
+            byte[] actual = new byte[content.length];
+            snapshot.copyTo(0L, actual, 0, actual.length);
+            assertArrayEquals("snapshot " + i, content, actual);
+            for (int j = 0; j < 100; j++) {
+                int index = random.nextInt(content.length);
+                assertEquals(content[index], snapshot.get((long) index));
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a {@link RangeSet} keeps its ranges disjoint and merged, and
+ * compares it to a bit per byte over random additions and removals.
+ */
+public class RangeSetTest {
+    private static final int SPACE = 1000;
+
+    @Test
+    public void adjacentAndOverlappingRangesMerge() {
+        RangeSet set = new RangeSet();
+        set.add(10, 20);
+        set.add(20, 30);
+        set.add(5, 12);
+        set.add(40, 50);
+        assertEquals("[[5, 30), [40, 50)]", set.toString());
+        assertEquals(35, set.getLength());
+        assertEquals(5, set.getStart());
+        assertEquals(50, set.getEnd());
+
+        set.add(0, 100);
+        assertEquals(1, set.getRangeCount());
+        assertEquals(100, set.getLength());
+    }
+
+    @Test
+    public void removeSplitsARange() {
+        RangeSet set = new RangeSet();
+        set.add(0, 100);
+        set.remove(40, 60);
+        assertEquals("[[0, 40), [60, 100)]", set.toString());
+        assertEquals(80, set.getLength());
+        assertTrue(set.contains(39));
+        assertFalse(set.contains(40));
+        assertFalse(set.intersects(40, 60));
+        assertTrue(set.intersects(59, 61));
+
+        set.remove(0, 100);
+        assertTrue(set.isEmpty());
+        assertEquals(-1, set.getStart());
+        assertEquals(-1, set.getEnd());
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        RangeSet set = new RangeSet();
+        set.add(0, 10);
+        RangeSet copy = new RangeSet(set);
+        set.add(20, 30);
+        copy.remove(0, 5);
+        assertEquals("[[0, 10), [20, 30)]", set.toString());
+        assertEquals("[[5, 10)]", copy.toString());
+        assertEquals(5, copy.getLength());
+    }
+
+    @Test
+    public void matchesABitPerByte() {
+        Random random = new Random(0);
+        RangeSet set = new RangeSet();
+        boolean[] expected = new boolean[SPACE];
+        for (int i = 0; i < 5000; i++) {
+            int from = random.nextInt(SPACE);
+            int to = Math.min(SPACE, from + random.nextInt(50));
+            boolean add = random.nextBoolean();
+            if (add) {
+                set.add(from, to);
+            } else {
+                set.remove(from, to);
+            }
+            for (int j = from; j < to; j++) {
+                expected[j] = add;
+            }
+
+            long length = 0;
+            long previousEnd = -1;
+            for (Map.Entry<Long, Long> range : set.getRanges().entrySet()) {
+                assertTrue("ranges " + set + " aren't disjoint and merged", range.getKey() > previousEnd);
+                assertTrue(range.getKey() < range.getValue());
+                length += range.getValue() - range.getKey();
+                previousEnd = range.getValue();
+            }
+            assertEquals(length, set.getLength());
+            int probe = random.nextInt(SPACE);
+            assertEquals("contains " + probe, expected[probe], set.contains(probe));
+        }
+        for (int i = 0; i < SPACE; i++) {
+            assertEquals("contains " + i, expected[i], set.contains(i));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017 Sam Sun <github-contact@samczsun.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.heliosdecompiler.hexeditor;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the run coalescing and the limits of {@link UndoJournal}, and that
+ * its entries undo and redo a random sequence of edits exactly.
+ */
+public class UndoJournalTest {
+
+    @Test
+    public void consecutiveEditsFormOneRun() {
+        UndoJournal journal = new UndoJournal(0, 0);
+        for (int i = 0; i < 10; i++) {
+            journal.recordOverwrite(100 + i, (byte) i, (byte) (i + 1));
+        }
+        assertEquals(1, journal.size());
+        assertEquals(UndoJournal.ENTRY_OVERHEAD + 20, journal.getByteSize());
+
+        // Not adjacent to the run, so it starts another one
+        journal.recordOverwrite(50, (byte) 0, (byte) 1);
+        assertEquals(2, journal.size());
+        journal.undo();
+        DeltaState run = journal.undo();
+        assertEquals(100, run.getFrom());
+        assertEquals(110, run.getTo());
+        assertArrayEquals(new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, run.getBefore());
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, run.getAfter());
+        assertEquals(0, journal.getByteSize());
+    }
+
+    @Test
+    public void forwardDeletesFormOneRun() {
+        ObservableByteArrayImpl data = new ObservableByteArrayImpl(new byte[]{1, 2, 3, 4, 5});
+        UndoJournal journal = new UndoJournal(0, 0);
+        for (int i = 0; i < 3; i++) {
+            journal.recordRemove(1, data.get(1));
+            data.remove(1, 2);
+        }
+        assertEquals(1, journal.size());
+        journal.undo().revert(data);
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, data.toArray(null));
+    }
+
+    @Test
+    public void runsAreSealedAtMaxRunLength() {
+        UndoJournal journal = new UndoJournal(0, 0);
+        for (int i = 0; i <= UndoJournal.MAX_RUN_LENGTH; i++) {
+            journal.recordInsert(i, (byte) i);
+        }
+        assertEquals(2, journal.size());
+        assertEquals(1, journal.undo().getAfter().length);
+        assertEquals(UndoJournal.MAX_RUN_LENGTH, journal.undo().getAfter().length);
+    }
+
+    @Test
+    public void byteLimitDropsTheOldestEntries() {
+        UndoJournal journal = new UndoJournal(0, 1000);
+        long entryCost = UndoJournal.ENTRY_OVERHEAD + 100;
+        for (int i = 0; i < 100; i++) {
+            journal.record(new DeltaState(i, i + 50, new byte[50], new byte[50]));
+        }
+        assertEquals(1000 / entryCost, journal.size());
+        assertEquals(journal.size() * entryCost, journal.getByteSize());
+        assertEquals(99, journal.undo().getFrom());
+
+        // An entry which doesn't fit on its own leaves nothing to undo
+        journal.record(new DeltaState(0, 5000, new byte[5000], new byte[0]));
+        assertFalse(journal.canUndo());
+        assertEquals(0, journal.getByteSize());
+    }
+
+    @Test
+    public void entryLimitEvictsAcrossTheRing() {
+        UndoJournal journal = new UndoJournal(20, 0);
+        // More entries than the initial ring, so it wraps and grows
+        for (int i = 0; i < 50; i++) {
+            journal.record(new DeltaState(i, i + 1, new byte[1], new byte[1]));
+        }
+        assertEquals(20, journal.size());
+        for (int i = 49; i >= 30; i--) {
+            assertEquals(i, journal.undo().getFrom());
+        }
+        assertNull(journal.undo());
+        assertTrue(journal.canRedo());
+
+        journal.setEntryLimit(5);
+        for (int i = 0; i < 20; i++) {
+            journal.redo();
+        }
+        assertEquals(5, journal.size());
+        assertEquals(49, journal.undo().getFrom());
+    }
+
+    @Test
+    public void undoAndRedoRestoreEveryState() {
+        Random random = new Random(0);
+        byte[] initial = new byte[200];
+        random.nextBytes(initial);
+        ObservableByteArrayImpl data = new ObservableByteArrayImpl(initial);
+        UndoJournal journal = new UndoJournal(0, 0);
+        long position = 0;
+        for (int i = 0; i < 2000; i++) {
+            int op = random.nextInt(10);
+            if (op == 0) {
+                position = random.nextInt(data.size());
+            }
+            position = Math.min(position, data.size() - 1);
+            byte value = (byte) random.nextInt();
+            if (op < 5) {
+                journal.recordOverwrite(position, data.get(position), value);
+                data.set(position, value);
+                position++;
+            } else if (op < 8) {
+                journal.recordInsert(position, value);
+                data.insert(position, new byte[]{value}, 0, 1);
+                position++;
+            } else if (data.size() > 1) {
+                journal.recordRemove(position, data.get(position));
+                data.remove(position, position + 1);
+            }
+        }
+        byte[] edited = data.toArray(null);
+
+        DeltaState delta;
+        while ((delta = journal.undo()) != null) {
+            delta.revert(data);
+        }
+        assertArrayEquals(initial, data.toArray(null));
+        while ((delta = journal.redo()) != null) {
+            delta.apply(data);
+        }
+        assertArrayEquals(edited, data.toArray(null));
+    }
+}